@@ -0,0 +1,79 @@
+package ibm.labs.kc.order.command.perf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+
+import ibm.labs.kc.order.command.model.Address;
+import ibm.labs.kc.order.command.model.Order;
+import ibm.labs.kc.order.command.model.events.CreateOrderEvent;
+import ibm.labs.kc.order.command.model.events.EventFormat;
+import ibm.labs.kc.order.command.model.events.OrderEvent;
+
+/**
+ * Deserialization of the order events consumed by the command service, as written by
+ * OrderProducer in both formats and by plain Gson, and the cost of an event type the service ignores.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDeserializationBenchmark {
+
+    private String producerJson;
+    private String gsonJson;
+    private byte[] producerBinary;
+    private byte[] ignoredJson;
+
+    @Setup
+    public void setup() {
+        Order order = new Order("a3d1c5e2-7c53-4b4e-9a0f-0d7d1f6b2c11", "FreshFoodItg", "GoodManuf", 10,
+                new Address("1 Main Street", "Oakland", "USA", "CA", "94607"), "2019-05-25T13:30Z",
+                new Address("Kaiserstrasse 12", "Hamburg", "Germany", "HH", "20457"), "2019-06-25T13:30Z",
+                Order.PENDING_STATUS);
+        CreateOrderEvent event = new CreateOrderEvent(System.currentTimeMillis(), "1", order);
+        producerJson = OrderEvent.serialize(event);
+        gsonJson = new Gson().toJson(event);
+        producerBinary = OrderEvent.serialize(event, EventFormat.BINARY);
+        // OrderRejected is not registered in the command service, only its type is read
+        ignoredJson = producerJson.replace(OrderEvent.TYPE_CREATED, OrderEvent.TYPE_REJECTED)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public OrderEvent createOrderFromProducer() {
+        return OrderEvent.deserialize(producerJson);
+    }
+
+    @Benchmark
+    public OrderEvent createOrderFromGson() {
+        return OrderEvent.deserialize(gsonJson);
+    }
+
+    @Benchmark
+    public OrderEvent createOrderFromProducerBinary() {
+        return OrderEvent.deserialize(producerBinary);
+    }
+
+    @Benchmark
+    public OrderEvent ignoredTypeSkipped() {
+        return OrderEvent.deserialize(ignoredJson);
+    }
+
+}
@@ -0,0 +1,71 @@
+package ibm.labs.kc.order.command.perf;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ibm.labs.kc.order.command.dao.CommandOrder;
+import ibm.labs.kc.order.command.dao.OrderDAO;
+import ibm.labs.kc.order.command.dao.OrderDAOMock;
+import ibm.labs.kc.order.command.model.Address;
+import ibm.labs.kc.order.command.model.Order;
+import ibm.labs.kc.order.command.model.events.UpdateOrderEvent;
+import ibm.labs.kc.order.command.service.OrderAdminService;
+
+/**
+ * Application of one update event by OrderAdminService on a DAO holding an increasing number of orders.
+ *
+ * The service uses the DAO singleton, each forked JVM fills it once.
+ * The 10M orders data set needs the 8 GB heap set below.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn" })
+public class OrderAdminServiceBenchmark {
+
+    private static final Address PICKUP = new Address("1 Main Street", "Oakland", "USA", "CA", "94607");
+    private static final Address DESTINATION = new Address("Kaiserstrasse 12", "Hamburg", "Germany", "HH", "20457");
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int orders;
+
+    private final AtomicLong timestampMillis = new AtomicLong(2_000_000_000_000L);
+    private OrderAdminService service;
+
+    private static Order order(int i) {
+        return new Order("order-" + i, "FreshFoodItg", "customer-" + (i % 1000), 10, PICKUP, "2019-05-25T13:30Z",
+                DESTINATION, "2019-06-25T13:30Z", Order.PENDING_STATUS);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        OrderDAO orderDAO = OrderDAOMock.instance();
+        for (int i = 0; i < orders; i++) {
+            orderDAO.add(CommandOrder.newFromOrder(order(i)));
+        }
+        service = new OrderAdminService();
+    }
+
+    @Benchmark
+    public void handleUpdate() {
+        service.handle(new UpdateOrderEvent(timestampMillis.incrementAndGet(), "1",
+                order(ThreadLocalRandom.current().nextInt(orders))));
+    }
+
+}
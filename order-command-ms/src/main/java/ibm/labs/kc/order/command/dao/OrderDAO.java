@@ -6,8 +6,14 @@ import java.util.Optional;
 public interface OrderDAO {
 
     public void add(CommandOrder order);
+    public void addAll(Collection<CommandOrder> orders);
     public void update(CommandOrder order);
     public Collection<CommandOrder> getAll();
+    /**
+     * @param after an order ID, null to start from the first order
+     * @return a view of the orders with a greater ID, by ascending ID
+     */
+    public Collection<CommandOrder> getAfter(String after);
     public Optional<CommandOrder> getByID(String orderId);
 
 }
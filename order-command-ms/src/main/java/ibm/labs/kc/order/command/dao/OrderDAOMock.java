@@ -4,14 +4,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class OrderDAOMock implements OrderDAO {
     private static final Logger logger = LoggerFactory.getLogger(OrderDAOMock.class);
-    private final Map<String, CommandOrder> orders;
+    // sorted by ID, for the pages of GET /orders
+    private final ConcurrentNavigableMap<String, CommandOrder> orders;
 
     private static OrderDAOMock instance;
 
@@ -23,7 +25,7 @@ public class OrderDAOMock implements OrderDAO {
     }
 
     public OrderDAOMock() {
-        orders = new ConcurrentHashMap<>();
+        orders = new ConcurrentSkipListMap<>();
     }
 
     @Override
@@ -34,11 +36,27 @@ public class OrderDAOMock implements OrderDAO {
         }
     }
 
+    @Override
+    public void addAll(Collection<CommandOrder> all) {
+        logger.info("Adding " + all.size() + " orders");
+        for (CommandOrder order : all) {
+            if (orders.putIfAbsent(order.getOrderID(), order) != null) {
+                throw new IllegalStateException("order already exists " + order.getOrderID());
+            }
+        }
+    }
+
     @Override
     public Collection<CommandOrder> getAll() {
         return Collections.unmodifiableCollection(orders.values());
     }
 
+    @Override
+    public Collection<CommandOrder> getAfter(String after) {
+        Map<String, CommandOrder> tail = after == null ? orders : orders.tailMap(after, false);
+        return Collections.unmodifiableCollection(tail.values());
+    }
+
     @Override
     public void update(CommandOrder order) {
         logger.info("Updating order id " + order.getOrderID());
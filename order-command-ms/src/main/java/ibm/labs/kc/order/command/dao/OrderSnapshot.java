@@ -0,0 +1,182 @@
+package ibm.labs.kc.order.command.dao;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibm.labs.kc.order.command.model.Address;
+
+/**
+ * Point in time copy of the orders, with the offset of the next event to apply on each partition
+ * of the orders topic. Restoring a snapshot and replaying the topic from its offsets gives
+ * the same state as replaying the whole topic.
+ *
+ * The file is a compact binary format: magic, version, partition offsets then orders.
+ * It is written to a temporary file first and moved in place, so a crash never leaves a partial snapshot.
+ */
+public class OrderSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(OrderSnapshot.class);
+
+    private static final int MAGIC = 0x4b434f53;
+    private static final int VERSION = 1;
+
+    private final Map<Integer, Long> offsets;
+    private final Collection<CommandOrder> orders;
+
+    public OrderSnapshot(Map<Integer, Long> offsets, Collection<CommandOrder> orders) {
+        this.offsets = offsets;
+        this.orders = orders;
+    }
+
+    /**
+     * @return next offset to apply, per partition number
+     */
+    public Map<Integer, Long> getOffsets() {
+        return Collections.unmodifiableMap(offsets);
+    }
+
+    public Collection<CommandOrder> getOrders() {
+        return Collections.unmodifiableCollection(orders);
+    }
+
+    /**
+     * Also writes from an interrupted thread, the loop thread on shutdown: the interrupt would close
+     * the file channel, so it is cleared during the write and set again after.
+     */
+    public void writeTo(Path file) throws IOException {
+        boolean interrupted = Thread.interrupted();
+        try {
+            write(file);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(offsets.size());
+            for (Map.Entry<Integer, Long> offset : offsets.entrySet()) {
+                out.writeInt(offset.getKey());
+                out.writeLong(offset.getValue());
+            }
+            out.writeInt(orders.size());
+            for (CommandOrder order : orders) {
+                writeOrder(out, order);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Snapshot of " + orders.size() + " orders written to " + file + " at offsets " + offsets);
+    }
+
+    /**
+     * @return the snapshot, empty when there is no snapshot file or when it cannot be read
+     */
+    public static Optional<OrderSnapshot> readFrom(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                logger.warn("Ignoring snapshot " + file + ": not a snapshot file");
+                return Optional.empty();
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                logger.warn("Ignoring snapshot " + file + ": unsupported version " + version);
+                return Optional.empty();
+            }
+            int partitions = in.readInt();
+            Map<Integer, Long> offsets = new HashMap<>();
+            for (int i = 0; i < partitions; i++) {
+                offsets.put(in.readInt(), in.readLong());
+            }
+            int count = in.readInt();
+            List<CommandOrder> orders = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                orders.add(readOrder(in));
+            }
+            logger.info("Snapshot of " + count + " orders read from " + file + " at offsets " + offsets);
+            return Optional.of(new OrderSnapshot(offsets, orders));
+        } catch (NoSuchFileException e) {
+            logger.info("No snapshot found at " + file);
+            return Optional.empty();
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable snapshot " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    private static void writeOrder(DataOutputStream out, CommandOrder order) throws IOException {
+        writeString(out, order.getOrderID());
+        writeString(out, order.getProductID());
+        writeString(out, order.getCustomerID());
+        out.writeInt(order.getQuantity());
+        writeAddress(out, order.getPickupAddress());
+        writeString(out, order.getPickupDate());
+        writeAddress(out, order.getDestinationAddress());
+        writeString(out, order.getExpectedDeliveryDate());
+        writeString(out, order.getStatus());
+    }
+
+    private static CommandOrder readOrder(DataInputStream in) throws IOException {
+        String orderID = readString(in);
+        String productID = readString(in);
+        String customerID = readString(in);
+        int quantity = in.readInt();
+        Address pickupAddress = readAddress(in);
+        String pickupDate = readString(in);
+        Address destinationAddress = readAddress(in);
+        String expectedDeliveryDate = readString(in);
+        String status = readString(in);
+        return new CommandOrder(orderID, productID, customerID, quantity, pickupAddress, pickupDate,
+                destinationAddress, expectedDeliveryDate, status);
+    }
+
+    private static void writeAddress(DataOutputStream out, Address address) throws IOException {
+        out.writeBoolean(address != null);
+        if (address != null) {
+            writeString(out, address.getStreet());
+            writeString(out, address.getCity());
+            writeString(out, address.getCountry());
+            writeString(out, address.getState());
+            writeString(out, address.getZipcode());
+        }
+    }
+
+    private static Address readAddress(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new Address(readString(in), readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+}
@@ -0,0 +1,39 @@
+package ibm.labs.kc.order.command.dao;
+
+/**
+ * Fixed set of monitors shared by keys with the same hash, to serialize the updates of one
+ * order or container without serializing the updates of all of them.
+ * Keys sharing a stripe wait on each other, which is harmless as long as no thread holds two stripes.
+ */
+public class StripedLocks {
+
+    public static final int DEFAULT_STRIPES = 256;
+
+    private final Object[] stripes;
+
+    public StripedLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public StripedLocks(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Number of stripes must be positive");
+        }
+        stripes = new Object[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * @param key order or container ID, null keys share one stripe
+     * @return the monitor to synchronize on while updating key
+     */
+    public Object lockFor(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        // spread the high bits like HashMap does
+        hash ^= (hash >>> 16);
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+
+}
@@ -1,7 +1,10 @@
 package ibm.labs.kc.order.command.kafka;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 
 import org.apache.kafka.clients.CommonClientConfigs;
@@ -9,9 +12,12 @@ import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.config.SaslConfigs;
 import org.apache.kafka.common.config.SslConfigs;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
+import ibm.labs.kc.order.command.model.events.EventFormat;
+
 /**
  *
  */
@@ -24,6 +30,28 @@ public class ApplicationConfig {
     public static final Duration CONSUMER_POLL_TIMEOUT = Duration.ofSeconds(10);
     public static final Duration CONSUMER_CLOSE_TIMEOUT = Duration.ofSeconds(10);
     public static final long TERMINATION_TIMEOUT_SEC = 10;
+    public static final String SNAPSHOT_FILE = "orders.snapshot";
+
+    /**
+     * Snapshots of the orders are written in SNAPSHOT_DIR when set
+     *
+     * @return the snapshot file, empty when snapshots are disabled
+     */
+    public static Optional<Path> getSnapshotFile() {
+        String dir = System.getenv("SNAPSHOT_DIR");
+        if (dir == null || dir.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(Paths.get(dir.trim(), SNAPSHOT_FILE));
+    }
+
+    /**
+     * @return seconds between two snapshots, from SNAPSHOT_INTERVAL_SEC when set,
+     *      0 or less only writes the snapshot on shutdown
+     */
+    public static long getSnapshotIntervalSec() {
+        return getIntEnv("SNAPSHOT_INTERVAL_SEC", 60);
+    }
 
     public static Properties getProducerProperties(String clientId) {
         Properties properties = buildCommonProperties();
@@ -31,16 +59,68 @@ public class ApplicationConfig {
         properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         properties.put(ProducerConfig.CLIENT_ID_CONFIG, clientId);
         properties.put(ProducerConfig.ACKS_CONFIG, "1");
+
+        // events are sent asynchronously, give the producer some time to batch them
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(getIntEnv("PRODUCER_LINGER_MS", 5)));
+        properties.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(getIntEnv("PRODUCER_BATCH_SIZE", 64 * 1024)));
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, getEnv("PRODUCER_COMPRESSION", "lz4"));
+        // send() blocks when metadata is missing or the buffer is full, never longer than a synchronous emit
+        properties.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, String.valueOf(PRODUCER_TIMEOUT_SECS * 1000));
         return properties;
     }
 
+    /**
+     * Format of the events written to a topic, from EVENT_FORMAT_<TOPIC> (EVENT_FORMAT_ORDERS...) when set.
+     * The consumers read both formats whatever this setting.
+     */
+    public static EventFormat getEventFormat(String topic) {
+        String name = "EVENT_FORMAT_" + topic.toUpperCase();
+        String value = getEnv(name, EventFormat.JSON.name());
+        try {
+            return EventFormat.of(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid value for environment variable " + name + ": " + value);
+        }
+    }
+
+    /**
+     * One handled event out of EVENT_TRACE_SAMPLE_EVERY is kept by the event tracer, 0 disables it
+     */
+    public static int getTraceSampleEvery() {
+        return getIntEnv("EVENT_TRACE_SAMPLE_EVERY", 100);
+    }
+
+    /**
+     * @return number of sampled events kept, from EVENT_TRACE_BUFFER_SIZE when set
+     */
+    public static int getTraceBufferSize() {
+        return getIntEnv("EVENT_TRACE_BUFFER_SIZE", 256);
+    }
+
+    /**
+     * @return milliseconds between two writes of the sampled events to the log, from EVENT_TRACE_FLUSH_MS when set
+     */
+    public static long getTraceFlushIntervalMs() {
+        return getIntEnv("EVENT_TRACE_FLUSH_MS", 1000);
+    }
+
+    /**
+     * Maximum number of records returned by one poll, from CONSUMER_MAX_POLL_RECORDS when set.
+     * Offsets are committed once per batch, so larger batches mean fewer commits.
+     */
+    public static int getMaxPollRecords() {
+        return getIntEnv("CONSUMER_MAX_POLL_RECORDS", 500);
+    }
+
     public static Properties getConsumerProperties(String groupid) {
         Properties properties = buildCommonProperties();
         properties.put(ConsumerConfig.GROUP_ID_CONFIG,  groupid);
-        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG,"true");
+        // offsets are committed by the event loop once a batch has been applied
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(getMaxPollRecords()));
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         properties.put(ConsumerConfig.CLIENT_ID_CONFIG, "order-command-consumer");
         return properties;
     }
@@ -50,13 +130,31 @@ public class ApplicationConfig {
         properties.put(ConsumerConfig.GROUP_ID_CONFIG,  groupid);
         properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(getMaxPollRecords()));
 
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
         properties.put(ConsumerConfig.CLIENT_ID_CONFIG, "order-command-reload");
         return properties;
     }
 
+    private static String getEnv(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private static int getIntEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid value for environment variable " + name + ": " + value);
+        }
+    }
+
     /**
      * Take into account the environment variables if set
      * 
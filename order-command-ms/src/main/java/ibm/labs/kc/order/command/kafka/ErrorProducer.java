@@ -1,19 +1,17 @@
 package ibm.labs.kc.order.command.kafka;
 
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.clients.producer.RecordMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-
 import ibm.labs.kc.order.command.model.events.ErrorEvent;
 import ibm.labs.kc.order.command.model.events.Event;
 import ibm.labs.kc.order.command.model.events.EventEmitter;
@@ -32,13 +30,29 @@ public class ErrorProducer implements EventEmitter {
 
     @Override
     public void emit(Event event) throws InterruptedException, ExecutionException, TimeoutException {
+        emitAsync(event).toCompletableFuture().get(ApplicationConfig.PRODUCER_TIMEOUT_SECS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Void> emitAsync(Event event) {
         ErrorEvent errorEvent = (ErrorEvent) event;
-        String value = new Gson().toJson(errorEvent);
+        String value = ErrorEvent.serialize(errorEvent);
 
         ProducerRecord<String, String> record = new ProducerRecord<>(ApplicationConfig.ERROR_TOPIC, value);
 
-        Future<RecordMetadata> send = kafkaProducer.send(record);
-        send.get(ApplicationConfig.PRODUCER_TIMEOUT_SECS, TimeUnit.SECONDS);
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        try {
+            kafkaProducer.send(record, (metadata, exception) -> {
+                if (exception != null) {
+                    sent.completeExceptionally(exception);
+                } else {
+                    sent.complete(null);
+                }
+            });
+        } catch (Exception e) {
+            sent.completeExceptionally(e);
+        }
+        return sent;
     }
 
     @Override
@@ -0,0 +1,59 @@
+package ibm.labs.kc.order.command.kafka;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import ibm.labs.kc.order.command.model.events.EventTypeFilter;
+
+/**
+ * Reads the events of one family from JSON or binary record values, whatever the format configured
+ * for the topic, so the producers can switch format while the consumers run.
+ * With a type filter, the records whose type header is not accepted are read as null without
+ * looking at their value.
+ */
+public class EventDeserializer<T> implements Deserializer<T> {
+
+    private final Function<byte[], T> reader;
+    private final EventTypeFilter typeFilter;
+
+    /**
+     * @param reader the deserialize method of the event family, OrderEvent::deserialize
+     */
+    public EventDeserializer(Function<byte[], T> reader) {
+        this(reader, null);
+    }
+
+    /**
+     * @param typeFilter the types of the family, OrderEvent.typeFilter()
+     */
+    public EventDeserializer(Function<byte[], T> reader, EventTypeFilter typeFilter) {
+        this.reader = reader;
+        this.typeFilter = typeFilter;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return reader.apply(data);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        byte[] type = EventHeaders.type(headers);
+        if (typeFilter != null && type != null && !typeFilter.acceptsType(type)) {
+            return null;
+        }
+        return reader.apply(data);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
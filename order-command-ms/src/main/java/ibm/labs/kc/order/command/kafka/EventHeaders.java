@@ -0,0 +1,47 @@
+package ibm.labs.kc.order.command.kafka;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import ibm.labs.kc.order.command.model.events.Event;
+
+/**
+ * Record headers copying the header fields of the event, as UTF-8 text, so the consumers can
+ * route and filter the records without reading their value, whatever its format
+ */
+public final class EventHeaders {
+
+    public static final String TYPE = "type";
+    public static final String VERSION = "version";
+    public static final String TIMESTAMP = "timestampMillis";
+
+    private EventHeaders() {
+    }
+
+    public static Headers of(Event event) {
+        Headers headers = new RecordHeaders();
+        if (event.getType() != null) {
+            headers.add(TYPE, event.getType().getBytes(StandardCharsets.UTF_8));
+        }
+        if (event.getVersion() != null) {
+            headers.add(VERSION, event.getVersion().getBytes(StandardCharsets.UTF_8));
+        }
+        headers.add(TIMESTAMP, Long.toString(event.getTimestampMillis()).getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    /**
+     * @return the bytes of the event type header, null when the producer did not set it
+     */
+    public static byte[] type(Headers headers) {
+        if (headers == null) {
+            return null;
+        }
+        Header type = headers.lastHeader(TYPE);
+        return type == null ? null : type.value();
+    }
+
+}
@@ -3,7 +3,9 @@ package ibm.labs.kc.order.command.kafka;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
@@ -20,91 +22,167 @@ import ibm.labs.kc.order.command.model.events.OrderEvent;
 
 public class OrderConsumer {
     private static final Logger logger = LoggerFactory.getLogger(OrderConsumer.class.getName());
-    private final KafkaConsumer<String, String> kafkaConsumer;
-    private final KafkaConsumer<String, String> reloadConsumer;
+    private final KafkaConsumer<String, byte[]> kafkaConsumer;
+    private final KafkaConsumer<String, byte[]> reloadConsumer;
 
-    private boolean initDone = false;
-    private OffsetAndMetadata reloadLimit;
-    private boolean reloadCompleted = false;
+    private final EventDeserializer<OrderEvent> deserializer = new EventDeserializer<>(OrderEvent::deserialize,
+            OrderEvent.typeFilter());
+
+    private PartitionReloader reloader;
+    // next offset to apply per partition, for the events already reflected in the state
+    private final Map<TopicPartition, Long> appliedOffsets = new HashMap<>();
 
     public OrderConsumer() {
         Properties properties = ApplicationConfig.getConsumerProperties("ordercmd-order-consumer");
-        kafkaConsumer = new KafkaConsumer<String, String>(properties);
+        kafkaConsumer = new KafkaConsumer<String, byte[]>(properties);
 
         Properties reloadProperties = ApplicationConfig.getConsumerReloadProperties("ordercmd-order-reload-consumer");
-        reloadConsumer = new KafkaConsumer<String, String>(reloadProperties);
+        reloadConsumer = new KafkaConsumer<String, byte[]>(reloadProperties);
     }
 
-    public List<OrderEvent> pollForReload() {
-        if (!initDone) {
-            reloadConsumer.subscribe(
-                    Collections.singletonList(ApplicationConfig.ORDER_TOPIC),
-                    new ConsumerRebalanceListener() {
-
-                        @Override
-                        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
-                            logger.info("Partitions revoked " + partitions);
-                        }
-
-                        @Override
-                        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-                            logger.info("Partitions assigned " + partitions);
-                        }
-                    });
-
-            kafkaConsumer.subscribe(Collections.singletonList(ApplicationConfig.ORDER_TOPIC), new ConsumerRebalanceListener() {
-                
-                @Override
-                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
-                    logger.info("Partitions revoked " + partitions);
-                }
-                
-                @Override
-                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-                    logger.info("Partitions assigned " + partitions);
+    /**
+     * Prepare the reload of the topic, from the offsets of a snapshot of the orders when there is one.
+     * This is a blocking call.
+     *
+     * @param snapshotOffsets next offset to apply per partition, empty to replay the whole topic
+     * @return false when the snapshot offsets do not match the topic and the whole topic will be replayed
+     */
+    public boolean initReload(Map<Integer, Long> snapshotOffsets) {
+        kafkaConsumer.subscribe(Collections.singletonList(ApplicationConfig.ORDER_TOPIC), new ConsumerRebalanceListener() {
+            
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                logger.info("Partitions revoked " + partitions);
+                // called from poll(), the previous batch is applied: the next owner starts after it
+                commitSync(partitions);
+            }
+            
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                logger.info("Partitions assigned " + partitions);
+                // the state may be ahead of the committed offsets, never apply an event twice
+                for (TopicPartition partition : partitions) {
+                    Long applied = appliedOffsets.get(partition);
+                    if (applied != null && applied > kafkaConsumer.position(partition)) {
+                        logger.info("Skipping " + partition + " to offset " + applied);
+                        kafkaConsumer.seek(partition, applied);
+                    }
                 }
-            });
+            }
+        });
+
+        Map<TopicPartition, Long> startOffsets = new HashMap<>();
+        for (Map.Entry<Integer, Long> offset : snapshotOffsets.entrySet()) {
+            startOffsets.put(new TopicPartition(ApplicationConfig.ORDER_TOPIC, offset.getKey()), offset.getValue());
+        }
+        reloader = new PartitionReloader(ApplicationConfig.ORDER_TOPIC, kafkaConsumer, reloadConsumer, startOffsets);
+        appliedOffsets.putAll(reloader.getReloadedOffsets());
+        return reloader.startOffsetsAccepted();
+    }
 
+    /**
+     * Replay the topic up to the offsets committed by the main consumer, on all partitions.
+     *
+     * @return the next events to replay
+     */
+    public List<OrderEvent> pollForReload() {
+        if (reloader == null) {
             // blocking call !
-            // TODO - need to handle multiple partitions
-            reloadLimit = kafkaConsumer.committed(new TopicPartition(ApplicationConfig.ORDER_TOPIC, 0));
-            logger.info("Reload limit " + reloadLimit);
-            initDone = true;
+            initReload(Collections.emptyMap());
         }
 
         List<OrderEvent> result = new ArrayList<>();
-        if (reloadLimit==null) {
-            // no prior commits found
-            reloadCompleted = true;
-        } else {ConsumerRecords<String, String> recs = reloadConsumer.poll(ApplicationConfig.CONSUMER_POLL_TIMEOUT);
-            for (ConsumerRecord<String, String> rec : recs) {
-                if (rec.offset() <= reloadLimit.offset()) {
-                    OrderEvent event = OrderEvent.deserialize(rec.value());
-                    result.add(event);
-                } else {
-                    logger.info("Reload Completed");
-                    reloadCompleted = true;
-                    break;
-                }
+        for (ConsumerRecord<String, byte[]> rec : reloader.poll()) {
+            OrderEvent event = deserializer.deserialize(rec.topic(), rec.headers(), rec.value());
+            if (event != null) {
+                result.add(event);
             }
         }
         return result;
     }
 
     public boolean reloadCompleted() {
-        return reloadCompleted;
+        return reloader != null && reloader.completed();
     }
 
     public List<OrderEvent> poll() {
-        ConsumerRecords<String, String> recs = kafkaConsumer.poll(ApplicationConfig.CONSUMER_POLL_TIMEOUT);
+        ConsumerRecords<String, byte[]> recs = kafkaConsumer.poll(ApplicationConfig.CONSUMER_POLL_TIMEOUT);
         List<OrderEvent> result = new ArrayList<>();
-        for (ConsumerRecord<String, String> rec : recs) {
-            OrderEvent event = OrderEvent.deserialize(rec.value());
-            result.add(event);
+        for (ConsumerRecord<String, byte[]> rec : recs) {
+            // null for the types this service ignores, still applied as far as the offsets go
+            OrderEvent event = deserializer.deserialize(rec.topic(), rec.headers(), rec.value());
+            if (event != null) {
+                result.add(event);
+            }
+            appliedOffsets.put(new TopicPartition(rec.topic(), rec.partition()), rec.offset() + 1);
         }
         return result;
     }
 
+    /**
+     * Commit the offsets of the events returned by the last poll, once they have been applied,
+     * without waiting for the result: a failed commit is superseded by the next one.
+     */
+    public void commitAsync() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = appliedOffsetsOf(kafkaConsumer.assignment());
+        if (!offsets.isEmpty()) {
+            kafkaConsumer.commitAsync(offsets, (committed, e) -> {
+                if (e != null) {
+                    logger.warn("Failed committing offsets " + committed, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Commit the offsets of the applied events and wait for the result. Called on shutdown, failures are logged.
+     */
+    public void commitSync() {
+        commitSync(kafkaConsumer.assignment());
+    }
+
+    private void commitSync(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = appliedOffsetsOf(partitions);
+        if (offsets.isEmpty()) {
+            return;
+        }
+        // the loop thread is interrupted on shutdown, which would abort the commit
+        boolean interrupted = Thread.interrupted();
+        try {
+            kafkaConsumer.commitSync(offsets, ApplicationConfig.CONSUMER_CLOSE_TIMEOUT);
+        } catch (Exception e) {
+            logger.warn("Failed committing offsets " + offsets, e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> appliedOffsetsOf(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            Long applied = appliedOffsets.get(partition);
+            if (applied != null) {
+                offsets.put(partition, new OffsetAndMetadata(applied));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Only meaningful once the events returned by the last poll have been applied.
+     *
+     * @return next offset to apply per partition number
+     */
+    public Map<Integer, Long> getAppliedOffsets() {
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, Long> offset : appliedOffsets.entrySet()) {
+            offsets.put(offset.getKey().partition(), offset.getValue());
+        }
+        return offsets;
+    }
+
     public void safeClose() {
         try {
             kafkaConsumer.close(ApplicationConfig.CONSUMER_CLOSE_TIMEOUT);
@@ -1,31 +1,28 @@
 package ibm.labs.kc.order.command.kafka;
 
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-
-import ibm.labs.kc.order.command.model.events.CreateOrderEvent;
 import ibm.labs.kc.order.command.model.events.Event;
 import ibm.labs.kc.order.command.model.events.EventEmitter;
 import ibm.labs.kc.order.command.model.events.OrderEvent;
-import ibm.labs.kc.order.command.model.events.UpdateOrderEvent;
 
 public class OrderProducer implements EventEmitter {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderProducer.class);
 
     private static OrderProducer instance;
-    private KafkaProducer<String, String> kafkaProducer;
+    private KafkaProducer<String, OrderEvent> kafkaProducer;
 
     public synchronized static EventEmitter instance() {
         if (instance == null) {
@@ -36,28 +33,38 @@ public class OrderProducer implements EventEmitter {
 
     public OrderProducer() {
         Properties properties = ApplicationConfig.getProducerProperties("order-command-producer");
-        kafkaProducer = new KafkaProducer<String, String>(properties);
+        // the value serializer replaces the one of the properties
+        kafkaProducer = new KafkaProducer<>(properties, new StringSerializer(),
+                new EventSerializer<>(OrderEvent::serialize, ApplicationConfig.getEventFormat(ApplicationConfig.ORDER_TOPIC)));
     }
 
     @Override
     public void emit(Event event) throws InterruptedException, ExecutionException, TimeoutException {
+        emitAsync(event).toCompletableFuture().get(ApplicationConfig.PRODUCER_TIMEOUT_SECS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Void> emitAsync(Event event) {
         OrderEvent orderEvent = (OrderEvent)event;
-        String key;
-        switch (orderEvent.getType()) {
-        case OrderEvent.TYPE_CREATED:
-            key = ((CreateOrderEvent)orderEvent).getPayload().getOrderID();
-            break;
-        case OrderEvent.TYPE_UPDATED:
-            key = ((UpdateOrderEvent)orderEvent).getPayload().getOrderID();
-            break;
-        default:
-            key = null;
-        }
-        String value = new Gson().toJson(orderEvent);
-        ProducerRecord<String, String> record = new ProducerRecord<>(ApplicationConfig.ORDER_TOPIC, key, value);
+        // all the events of an order go to one partition, in sequence
+        ProducerRecord<String, OrderEvent> record = new ProducerRecord<>(ApplicationConfig.ORDER_TOPIC, null,
+                orderEvent.getOrderID(), orderEvent, EventHeaders.of(orderEvent));
 
-        Future<RecordMetadata> send = kafkaProducer.send(record);
-        send.get(ApplicationConfig.PRODUCER_TIMEOUT_SECS, TimeUnit.SECONDS);
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        try {
+            // the callback runs on the producer I/O thread, it must stay short
+            kafkaProducer.send(record, (metadata, exception) -> {
+                if (exception != null) {
+                    sent.completeExceptionally(exception);
+                } else {
+                    sent.complete(null);
+                }
+            });
+        } catch (Exception e) {
+            // metadata not available within max.block.ms, serialization error...
+            sent.completeExceptionally(e);
+        }
+        return sent;
     }
 
     @Override
@@ -0,0 +1,166 @@
+package ibm.labs.kc.order.command.kafka;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays a topic from the beginning up to the offsets committed by the main consumer group,
+ * so the in-memory state is rebuilt before the main consumer resumes from those offsets.
+ *
+ * Every partition of the topic is replayed at once and tracked against its own limit:
+ * a partition is paused once it reaches its limit, and the reload is completed
+ * when all the partitions have reached theirs.
+ */
+public class PartitionReloader {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionReloader.class.getName());
+
+    private final Consumer<String, byte[]> reloadConsumer;
+    private final Map<TopicPartition, Long> limits = new HashMap<>();
+    private final Map<TopicPartition, Long> reloadedOffsets = new HashMap<>();
+    private boolean startOffsetsAccepted;
+
+    /**
+     * Compute the reload limit of each partition and assign the partitions to replay to the reload consumer.
+     * This is a blocking call.
+     *
+     * @param topic the topic to reload
+     * @param mainConsumer consumer of the group whose committed offsets are the reload limits
+     * @param reloadConsumer consumer replaying the topic, its partitions are assigned manually
+     */
+    public PartitionReloader(String topic, Consumer<String, byte[]> mainConsumer,
+            Consumer<String, byte[]> reloadConsumer) {
+        this(topic, mainConsumer, reloadConsumer, Collections.emptyMap());
+    }
+
+    /**
+     * Same as above, but replay each partition from a start offset rather than from the beginning,
+     * when the state already reflects the events before that offset (restored from a snapshot).
+     * Start offsets beyond the end of a partition mean the topic changed since they were taken:
+     * they are ignored and the whole topic is replayed, see {@link #startOffsetsAccepted()}.
+     *
+     * @param startOffsets next offset to replay per partition, missing partitions start from the beginning
+     */
+    public PartitionReloader(String topic, Consumer<String, byte[]> mainConsumer,
+            Consumer<String, byte[]> reloadConsumer, Map<TopicPartition, Long> startOffsets) {
+        this.reloadConsumer = reloadConsumer;
+
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (PartitionInfo info : mainConsumer.partitionsFor(topic)) {
+            partitions.add(new TopicPartition(topic, info.partition()));
+        }
+        Map<TopicPartition, Long> endOffsets = reloadConsumer.endOffsets(partitions);
+
+        startOffsetsAccepted = true;
+        for (Map.Entry<TopicPartition, Long> start : startOffsets.entrySet()) {
+            Long end = endOffsets.get(start.getKey());
+            if (end == null || start.getValue() > end) {
+                logger.warn("Ignoring start offsets " + startOffsets + ", end offsets are " + endOffsets);
+                startOffsetsAccepted = false;
+                break;
+            }
+        }
+        Map<TopicPartition, Long> starts = startOffsetsAccepted ? startOffsets : Collections.emptyMap();
+
+        for (TopicPartition partition : partitions) {
+            long start = starts.getOrDefault(partition, 0L);
+            OffsetAndMetadata committed = mainConsumer.committed(partition);
+            // no prior commits found, nothing to replay
+            long committedOffset = committed == null ? 0 : committed.offset();
+            // never wait for records that are not in the log anymore
+            long limit = Math.min(committedOffset, endOffsets.getOrDefault(partition, 0L));
+            if (limit > start) {
+                limits.put(partition, limit);
+            }
+            if (Math.max(start, limit) > 0) {
+                reloadedOffsets.put(partition, Math.max(start, limit));
+            }
+        }
+        logger.info("Reload limits " + limits + " from " + starts);
+
+        if (!limits.isEmpty()) {
+            reloadConsumer.assign(limits.keySet());
+            List<TopicPartition> fromBeginning = new ArrayList<>();
+            for (TopicPartition partition : limits.keySet()) {
+                Long start = starts.get(partition);
+                if (start == null || start == 0) {
+                    fromBeginning.add(partition);
+                } else {
+                    reloadConsumer.seek(partition, start);
+                }
+            }
+            reloadConsumer.seekToBeginning(fromBeginning);
+        }
+    }
+
+    public boolean startOffsetsAccepted() {
+        return startOffsetsAccepted;
+    }
+
+    /**
+     * @return for each partition, the offset of the next event to apply once the reload is completed
+     */
+    public Map<TopicPartition, Long> getReloadedOffsets() {
+        return Collections.unmodifiableMap(reloadedOffsets);
+    }
+
+    /**
+     * @return the next records to replay, on all the partitions not yet completed
+     */
+    public ConsumerRecords<String, byte[]> poll() {
+        if (limits.isEmpty()) {
+            return ConsumerRecords.empty();
+        }
+
+        ConsumerRecords<String, byte[]> recs = reloadConsumer.poll(ApplicationConfig.CONSUMER_POLL_TIMEOUT);
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> result = new HashMap<>();
+        for (TopicPartition partition : recs.partitions()) {
+            Long limit = limits.get(partition);
+            if (limit == null) {
+                continue;
+            }
+            List<ConsumerRecord<String, byte[]>> toReplay = new ArrayList<>();
+            for (ConsumerRecord<String, byte[]> rec : recs.records(partition)) {
+                if (rec.offset() < limit) {
+                    toReplay.add(rec);
+                }
+            }
+            if (!toReplay.isEmpty()) {
+                result.put(partition, toReplay);
+            }
+        }
+
+        // check positions rather than record offsets: compaction or retention
+        // may have removed the record just before the limit
+        List<TopicPartition> done = new ArrayList<>();
+        for (Iterator<Map.Entry<TopicPartition, Long>> it = limits.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<TopicPartition, Long> entry = it.next();
+            if (reloadConsumer.position(entry.getKey()) >= entry.getValue()) {
+                done.add(entry.getKey());
+                it.remove();
+            }
+        }
+        if (!done.isEmpty()) {
+            reloadConsumer.pause(done);
+            logger.info("Reload completed for " + done + ", " + limits.size() + " partitions remaining");
+        }
+        return new ConsumerRecords<>(result);
+    }
+
+    public boolean completed() {
+        return limits.isEmpty();
+    }
+
+}
@@ -23,4 +23,9 @@ public class AssignOrderEvent extends OrderEvent {
         this.payload = payload;
     }
 
+    @Override
+    public String getOrderID() {
+        return payload == null ? null : payload.getOrderID();
+    }
+
 }
@@ -22,4 +22,9 @@ public class CreateOrderEvent extends OrderEvent {
         this.payload = payload;
     }
 
+    @Override
+    public String getOrderID() {
+        return payload == null ? null : payload.getOrderID();
+    }
+
 }
@@ -0,0 +1,29 @@
+package ibm.labs.kc.order.command.model.events;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Helper of the listeners applying the events of one poll together, see EventListener.handleBatch()
+ */
+public final class EventBatches {
+
+    private EventBatches() {
+    }
+
+    /**
+     * @param key entity key of an event, the events without key are grouped under null
+     * @return the events grouped by key, in their original sequence, the groups in the order of their first event
+     */
+    public static <E> Map<String, List<E>> groupBy(List<? extends E> events, Function<E, String> key) {
+        Map<String, List<E>> groups = new LinkedHashMap<>();
+        for (E event : events) {
+            groups.computeIfAbsent(key.apply(event), k -> new ArrayList<>()).add(event);
+        }
+        return groups;
+    }
+
+}
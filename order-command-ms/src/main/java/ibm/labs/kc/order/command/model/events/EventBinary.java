@@ -0,0 +1,141 @@
+package ibm.labs.kc.order.command.model.events;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import ibm.labs.kc.order.command.model.Address;
+import ibm.labs.kc.order.command.model.Cancellation;
+import ibm.labs.kc.order.command.model.ContainerAssignment;
+import ibm.labs.kc.order.command.model.Order;
+import ibm.labs.kc.order.command.model.VoyageAssignment;
+import ibm.labs.kc.order.command.model.events.EventBinaryCodec.PayloadCodec;
+
+/**
+ * Compact binary format of the events, the payload codecs shared by the event families.
+ *
+ * A JSON event starts with '{' or whitespace, a binary one with MAGIC which cannot start a JSON
+ * text, so both can be read from the same topic. FORMAT_VERSION is bumped whenever a payload
+ * codec changes: fields are written by position and a reader only knows its own version.
+ */
+public final class EventBinary {
+
+    public static final byte MAGIC = 0;
+    public static final byte FORMAT_VERSION = 2;
+
+    public static final PayloadCodec<Address> ADDRESS = new PayloadCodec<Address>() {
+        @Override
+        public void write(DataOutput out, Address address) throws IOException {
+            writeString(out, address.getStreet());
+            writeString(out, address.getCity());
+            writeString(out, address.getCountry());
+            writeString(out, address.getState());
+            writeString(out, address.getZipcode());
+        }
+
+        @Override
+        public Address read(DataInput in) throws IOException {
+            return new Address(readString(in), readString(in), readString(in), readString(in), readString(in));
+        }
+    };
+
+    public static final PayloadCodec<Order> ORDER = new PayloadCodec<Order>() {
+        @Override
+        public void write(DataOutput out, Order order) throws IOException {
+            writeString(out, order.getOrderID());
+            writeString(out, order.getProductID());
+            writeString(out, order.getCustomerID());
+            out.writeInt(order.getQuantity());
+            writeNullable(out, ADDRESS, order.getPickupAddress());
+            writeString(out, order.getPickupDate());
+            writeNullable(out, ADDRESS, order.getDestinationAddress());
+            writeString(out, order.getExpectedDeliveryDate());
+            writeString(out, order.getStatus());
+            // voyageID and containerID of the order layout shared with the query service, never set here
+            writeString(out, null);
+            writeString(out, null);
+        }
+
+        @Override
+        public Order read(DataInput in) throws IOException {
+            Order order = new Order(readString(in), readString(in), readString(in), in.readInt(),
+                    readNullable(in, ADDRESS), readString(in), readNullable(in, ADDRESS), readString(in),
+                    readString(in));
+            readString(in);
+            readString(in);
+            return order;
+        }
+    };
+
+    public static final PayloadCodec<VoyageAssignment> VOYAGE_ASSIGNMENT = new PayloadCodec<VoyageAssignment>() {
+        @Override
+        public void write(DataOutput out, VoyageAssignment assignment) throws IOException {
+            writeString(out, assignment.getOrderID());
+            writeString(out, assignment.getVoyageID());
+        }
+
+        @Override
+        public VoyageAssignment read(DataInput in) throws IOException {
+            return new VoyageAssignment(readString(in), readString(in));
+        }
+    };
+
+    public static final PayloadCodec<Cancellation> CANCELLATION = new PayloadCodec<Cancellation>() {
+        @Override
+        public void write(DataOutput out, Cancellation cancellation) throws IOException {
+            writeString(out, cancellation.getOrderID());
+            writeString(out, cancellation.getReason());
+        }
+
+        @Override
+        public Cancellation read(DataInput in) throws IOException {
+            return new Cancellation(readString(in), readString(in));
+        }
+    };
+
+    public static final PayloadCodec<ContainerAssignment> CONTAINER_ASSIGNMENT = new PayloadCodec<ContainerAssignment>() {
+        @Override
+        public void write(DataOutput out, ContainerAssignment assignment) throws IOException {
+            writeString(out, assignment.getOrderID());
+            writeString(out, assignment.getContainerID());
+        }
+
+        @Override
+        public ContainerAssignment read(DataInput in) throws IOException {
+            return new ContainerAssignment(readString(in), readString(in));
+        }
+    };
+
+    private EventBinary() {
+    }
+
+    /**
+     * @return true when the record value is in the binary format
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static <P> void writeNullable(DataOutput out, PayloadCodec<P> codec, P value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            codec.write(out, value);
+        }
+    }
+
+    private static <P> P readNullable(DataInput in, PayloadCodec<P> codec) throws IOException {
+        return in.readBoolean() ? codec.read(in) : null;
+    }
+
+}
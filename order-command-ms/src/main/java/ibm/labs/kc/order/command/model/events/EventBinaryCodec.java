@@ -0,0 +1,112 @@
+package ibm.labs.kc.order.command.model.events;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import ibm.labs.kc.order.command.model.events.EventTypeAdapterFactory.EventCreator;
+
+/**
+ * Binary encoding of the events of one family, the counterpart of EventTypeAdapterFactory.
+ *
+ * A record starts with EventBinary.MAGIC and the format version, then the event type, timestamp
+ * and version, then the payload fields in the order of its PayloadCodec, without any field name.
+ * Unknown types are read as null.
+ */
+public class EventBinaryCodec<T extends AbstractEvent> {
+
+    public interface PayloadCodec<P> {
+        void write(DataOutput out, P payload) throws IOException;
+
+        P read(DataInput in) throws IOException;
+    }
+
+    private static class Subtype<P, T> {
+        private final PayloadCodec<P> payloadCodec;
+        private final EventCreator<P, T> creator;
+
+        private Subtype(PayloadCodec<P> payloadCodec, EventCreator<P, T> creator) {
+            this.payloadCodec = payloadCodec;
+            this.creator = creator;
+        }
+
+        private T read(DataInput in, long timestampMillis, String version) throws IOException {
+            P payload = in.readBoolean() ? payloadCodec.read(in) : null;
+            return creator.create(timestampMillis, version, payload);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void write(DataOutput out, Object payload) throws IOException {
+            out.writeBoolean(payload != null);
+            if (payload != null) {
+                payloadCodec.write(out, (P) payload);
+            }
+        }
+    }
+
+    private final Map<String, Subtype<?, T>> subtypes = new HashMap<>();
+
+    public <P> EventBinaryCodec<T> register(String type, PayloadCodec<P> payloadCodec, EventCreator<P, T> creator) {
+        subtypes.put(type, new Subtype<>(payloadCodec, creator));
+        return this;
+    }
+
+    /**
+     * @return the registered event types
+     */
+    public Set<String> types() {
+        return Collections.unmodifiableSet(subtypes.keySet());
+    }
+
+    public byte[] write(T event) {
+        Subtype<?, T> subtype = subtypes.get(event.getType());
+        if (subtype == null) {
+            throw new IllegalArgumentException("No binary encoding for event type " + event.getType());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(EventBinary.MAGIC);
+            out.writeByte(EventBinary.FORMAT_VERSION);
+            out.writeUTF(event.getType());
+            out.writeLong(event.getTimestampMillis());
+            EventBinary.writeString(out, event.getVersion());
+            subtype.write(out, event.getPayload());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed encoding " + event.getType(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public T read(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != EventBinary.MAGIC) {
+                throw new IllegalArgumentException("Not a binary event");
+            }
+            int formatVersion = in.readUnsignedByte();
+            if (formatVersion != EventBinary.FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported binary event format version " + formatVersion);
+            }
+            String type = in.readUTF();
+            long timestampMillis = in.readLong();
+            String version = EventBinary.readString(in);
+            Subtype<?, T> subtype = subtypes.get(type);
+            if (subtype == null) {
+                return null;
+            }
+            T event = subtype.read(in, timestampMillis, version);
+            event.setType(type);
+            return event;
+        } catch (IOException e) {
+            throw new IllegalStateException("Truncated binary event", e);
+        }
+    }
+
+}
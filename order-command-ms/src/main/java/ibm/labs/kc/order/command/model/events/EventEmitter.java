@@ -1,8 +1,16 @@
 package ibm.labs.kc.order.command.model.events;
 
+import java.util.concurrent.CompletionStage;
+
 public interface EventEmitter {
 
     public void emit(Event event) throws Exception;
+    /**
+     * Publish the event without waiting for the broker acknowledgement
+     *
+     * @return completed once the event is acknowledged, or exceptionally when it cannot be published
+     */
+    public CompletionStage<Void> emitAsync(Event event);
     public void safeClose();
 
 }
@@ -0,0 +1,21 @@
+package ibm.labs.kc.order.command.model.events;
+
+/**
+ * Encoding of the events written to a topic. Consumers read both, see EventBinary.
+ */
+public enum EventFormat {
+    JSON, BINARY;
+
+    /**
+     * @param name "json" or "binary", case insensitive
+     */
+    public static EventFormat of(String name) {
+        for (EventFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name.trim())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown event format " + name);
+    }
+
+}
@@ -0,0 +1,242 @@
+package ibm.labs.kc.order.command.model.events;
+
+import java.io.IOException;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import ibm.labs.kc.order.command.model.Address;
+import ibm.labs.kc.order.command.model.Order;
+
+/**
+ * The Gson instance of the service, shared by the producers, the consumers and the tracer.
+ *
+ * Gson is thread safe and caches its adapters, so none is rebuilt per message. The types on the
+ * write path (Order, Address, the order events and ErrorEvent) have hand-written adapters that
+ * stream their fields without reflection. Events are written with their header fields first.
+ */
+public final class EventJson {
+
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Address.class, new AddressAdapter().nullSafe())
+            .registerTypeAdapter(Order.class, new OrderAdapter().nullSafe())
+            .registerTypeAdapterFactory(OrderEvent.adapterFactory)
+            .registerTypeAdapterFactory(new ErrorEventAdapterFactory())
+            .create();
+
+    private EventJson() {
+    }
+
+    public static Gson gson() {
+        return gson;
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static class AddressAdapter extends TypeAdapter<Address> {
+
+        @Override
+        public void write(JsonWriter out, Address value) throws IOException {
+            out.beginObject();
+            out.name("street").value(value.getStreet());
+            out.name("city").value(value.getCity());
+            out.name("country").value(value.getCountry());
+            out.name("state").value(value.getState());
+            out.name("zipcode").value(value.getZipcode());
+            out.endObject();
+        }
+
+        @Override
+        public Address read(JsonReader in) throws IOException {
+            Address address = new Address();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case "street":
+                    address.setStreet(nextString(in));
+                    break;
+                case "city":
+                    address.setCity(nextString(in));
+                    break;
+                case "country":
+                    address.setCountry(nextString(in));
+                    break;
+                case "state":
+                    address.setState(nextString(in));
+                    break;
+                case "zipcode":
+                    address.setZipcode(nextString(in));
+                    break;
+                default:
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return address;
+        }
+    }
+
+    private static class OrderAdapter extends TypeAdapter<Order> {
+        private final TypeAdapter<Address> addressAdapter = new AddressAdapter().nullSafe();
+
+        @Override
+        public void write(JsonWriter out, Order value) throws IOException {
+            out.beginObject();
+            out.name("orderID").value(value.getOrderID());
+            out.name("productID").value(value.getProductID());
+            out.name("customerID").value(value.getCustomerID());
+            out.name("quantity").value(value.getQuantity());
+            out.name("pickupAddress");
+            addressAdapter.write(out, value.getPickupAddress());
+            out.name("pickupDate").value(value.getPickupDate());
+            out.name("destinationAddress");
+            addressAdapter.write(out, value.getDestinationAddress());
+            out.name("expectedDeliveryDate").value(value.getExpectedDeliveryDate());
+            out.name("status").value(value.getStatus());
+            out.endObject();
+        }
+
+        @Override
+        public Order read(JsonReader in) throws IOException {
+            String orderID = null;
+            String productID = null;
+            String customerID = null;
+            int quantity = 0;
+            Address pickupAddress = null;
+            String pickupDate = null;
+            Address destinationAddress = null;
+            String expectedDeliveryDate = null;
+            String status = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case "orderID":
+                    orderID = nextString(in);
+                    break;
+                case "productID":
+                    productID = nextString(in);
+                    break;
+                case "customerID":
+                    customerID = nextString(in);
+                    break;
+                case "quantity":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        quantity = in.nextInt();
+                    }
+                    break;
+                case "pickupAddress":
+                    pickupAddress = addressAdapter.read(in);
+                    break;
+                case "pickupDate":
+                    pickupDate = nextString(in);
+                    break;
+                case "destinationAddress":
+                    destinationAddress = addressAdapter.read(in);
+                    break;
+                case "expectedDeliveryDate":
+                    expectedDeliveryDate = nextString(in);
+                    break;
+                case "status":
+                    status = nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Order(orderID, productID, customerID, quantity, pickupAddress, pickupDate,
+                    destinationAddress, expectedDeliveryDate, status);
+        }
+    }
+
+    /**
+     * Writes the failed event with the adapter of its family, header fields first
+     */
+    private static class ErrorEventAdapterFactory implements TypeAdapterFactory {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            if (typeToken.getRawType() != ErrorEvent.class) {
+                return null;
+            }
+            return (TypeAdapter<T>) new ErrorEventAdapter(gson).nullSafe();
+        }
+    }
+
+    private static class ErrorEventAdapter extends TypeAdapter<ErrorEvent> {
+        private final Gson gson;
+        private final TypeAdapter<OrderEvent> orderEventAdapter;
+
+        private ErrorEventAdapter(Gson gson) {
+            this.gson = gson;
+            this.orderEventAdapter = gson.getAdapter(OrderEvent.class);
+        }
+
+        @Override
+        public void write(JsonWriter out, ErrorEvent value) throws IOException {
+            out.beginObject();
+            out.name("timestampMillis").value(value.getTimestampMillis());
+            out.name("type").value(value.getType());
+            out.name("version").value(value.getVersion());
+            out.name("errorMessage").value(value.getErrorMessage());
+            Event payload = value.getPayload();
+            if (payload instanceof OrderEvent) {
+                out.name("payload");
+                orderEventAdapter.write(out, (OrderEvent) payload);
+            } else if (payload != null) {
+                out.name("payload");
+                gson.toJson(payload, payload.getClass(), out);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public ErrorEvent read(JsonReader in) throws IOException {
+            ErrorEvent event = new ErrorEvent();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case "timestampMillis":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        event.setTimestampMillis(in.nextLong());
+                    }
+                    break;
+                case "type":
+                    event.setType(nextString(in));
+                    break;
+                case "version":
+                    event.setVersion(nextString(in));
+                    break;
+                case "errorMessage":
+                    event.setErrorMessage(nextString(in));
+                    break;
+                case "payload":
+                    event.setPayload(orderEventAdapter.read(in));
+                    break;
+                default:
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return event;
+        }
+    }
+
+}
@@ -1,7 +1,25 @@
 package ibm.labs.kc.order.command.model.events;
 
+import java.util.List;
+import java.util.function.BiConsumer;
+
 public interface EventListener {
 
     public void handle(Event event);
 
+    /**
+     * Apply the events of one poll, in sequence for the events of one order.
+     * Listeners override it to apply the events of one order under a single lock.
+     * An event which fails is passed to failed, with its exception, and the next events are still applied.
+     */
+    public default void handleBatch(List<? extends Event> events, BiConsumer<Event, Exception> failed) {
+        for (Event event : events) {
+            try {
+                handle(event);
+            } catch (Exception e) {
+                failed.accept(event, e);
+            }
+        }
+    }
+
 }
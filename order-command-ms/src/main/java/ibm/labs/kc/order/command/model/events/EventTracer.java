@@ -0,0 +1,154 @@
+package ibm.labs.kc.order.command.model.events;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibm.labs.kc.order.command.kafka.ApplicationConfig;
+
+/**
+ * Keeps a sample of the events handled by the listeners, for debugging.
+ *
+ * trace() only keeps a reference to one event out of sampleEvery in a ring buffer of the last
+ * capacity samples. The events are serialized later: by the flusher thread which periodically logs
+ * the new samples, or when the samples are read from the trace endpoint.
+ * A sampleEvery of 0 disables tracing.
+ */
+public class EventTracer {
+    private static final Logger logger = LoggerFactory.getLogger(EventTracer.class);
+
+    private static EventTracer instance;
+
+    private final int sampleEvery;
+    private final AtomicReferenceArray<Trace> traces;
+    private final AtomicLong sequence = new AtomicLong();
+    // only used by the flusher thread
+    private long flushed;
+
+    public synchronized static EventTracer instance() {
+        if (instance == null) {
+            instance = new EventTracer(ApplicationConfig.getTraceSampleEvery(), ApplicationConfig.getTraceBufferSize());
+            instance.startFlusher(ApplicationConfig.getTraceFlushIntervalMs());
+        }
+        return instance;
+    }
+
+    EventTracer(int sampleEvery, int capacity) {
+        if (sampleEvery < 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Invalid tracer configuration " + sampleEvery + "/" + capacity);
+        }
+        this.sampleEvery = sampleEvery;
+        this.traces = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Called for every event handled, keeps a sample of them
+     *
+     * @param source the listener handling the event
+     */
+    public void trace(String source, Event event) {
+        if (sampleEvery == 0 || event == null
+                || (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0)) {
+            return;
+        }
+        long seq = sequence.getAndIncrement();
+        traces.set((int) (seq % traces.length()), new Trace(seq, System.currentTimeMillis(), source, event));
+    }
+
+    /**
+     * @return the samples kept, oldest first
+     */
+    public List<Trace> recent() {
+        return since(0);
+    }
+
+    /**
+     * @return the recent samples as a JSON array
+     */
+    public String recentAsJson() {
+        return EventJson.gson().toJson(recent());
+    }
+
+    private List<Trace> since(long seq) {
+        List<Trace> result = new ArrayList<>(traces.length());
+        for (int i = 0; i < traces.length(); i++) {
+            Trace trace = traces.get(i);
+            if (trace != null && trace.getSequence() >= seq) {
+                result.add(trace);
+            }
+        }
+        result.sort(Comparator.comparingLong(Trace::getSequence));
+        return result;
+    }
+
+    void flush() {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        for (Trace trace : since(flushed)) {
+            if (trace.getSequence() > flushed) {
+                logger.info("Dropped " + (trace.getSequence() - flushed) + " traces");
+            }
+            logger.info("@@@@ " + trace.getSource() + " " + EventJson.gson().toJson(trace.getEvent()));
+            flushed = trace.getSequence() + 1;
+        }
+    }
+
+    private void startFlusher(long intervalMs) {
+        if (sampleEvery == 0) {
+            return;
+        }
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "event-tracer");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                logger.warn("Failed flushing traces", e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static class Trace {
+        private final long sequence;
+        private final long timestampMillis;
+        private final String source;
+        private final Event event;
+
+        Trace(long sequence, long timestampMillis, String source, Event event) {
+            this.sequence = sequence;
+            this.timestampMillis = timestampMillis;
+            this.source = source;
+            this.event = event;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+    }
+
+}
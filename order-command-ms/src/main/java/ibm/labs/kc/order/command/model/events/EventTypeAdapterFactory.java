@@ -0,0 +1,181 @@
+package ibm.labs.kc.order.command.model.events;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads an event of the given base type in a single pass over the JSON, creating the
+ * concrete event registered for its "type" field.
+ *
+ * When "type" comes before "payload" the payload is bound directly to its class. Plain Gson
+ * writes the payload first: the payload is then kept as a JSON tree until the type is known.
+ * Events are written with their header fields first so that records produced with this
+ * adapter never need the tree. Unknown types are read as null.
+ */
+public class EventTypeAdapterFactory<T extends AbstractEvent> implements TypeAdapterFactory {
+
+    @FunctionalInterface
+    public interface EventCreator<P, T> {
+        T create(long timestampMillis, String version, P payload);
+    }
+
+    private static class Subtype<P, T> {
+        private final Class<P> payloadClass;
+        private final EventCreator<P, T> creator;
+
+        private Subtype(Class<P> payloadClass, EventCreator<P, T> creator) {
+            this.payloadClass = payloadClass;
+            this.creator = creator;
+        }
+    }
+
+    private final Class<T> baseType;
+    private final Map<String, Subtype<?, T>> subtypes = new HashMap<>();
+
+    public EventTypeAdapterFactory(Class<T> baseType) {
+        this.baseType = baseType;
+    }
+
+    public <P> EventTypeAdapterFactory<T> register(String type, Class<P> payloadClass, EventCreator<P, T> creator) {
+        subtypes.put(type, new Subtype<>(payloadClass, creator));
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> typeToken) {
+        if (typeToken.getRawType() != baseType) {
+            return null;
+        }
+        return (TypeAdapter<R>) new EventAdapter(gson);
+    }
+
+    /**
+     * Payload adapter and creator of one event type, bound to a Gson instance.
+     */
+    private class Binding<P> {
+        private final TypeAdapter<P> payloadAdapter;
+        private final EventCreator<P, T> creator;
+
+        private Binding(Gson gson, Subtype<P, T> subtype) {
+            this.payloadAdapter = gson.getAdapter(subtype.payloadClass);
+            this.creator = subtype.creator;
+        }
+
+        private T create(long timestampMillis, String type, String version, Object payload) {
+            @SuppressWarnings("unchecked")
+            T event = creator.create(timestampMillis, version, (P) payload);
+            event.setType(type);
+            return event;
+        }
+    }
+
+    private class EventAdapter extends TypeAdapter<T> {
+        private final Gson gson;
+        private final TypeAdapter<JsonElement> treeAdapter;
+        private final Map<String, Binding<?>> bindings = new HashMap<>();
+
+        private EventAdapter(Gson gson) {
+            this.gson = gson;
+            this.treeAdapter = gson.getAdapter(JsonElement.class);
+            for (Map.Entry<String, Subtype<?, T>> subtype : subtypes.entrySet()) {
+                bindings.put(subtype.getKey(), bind(gson, subtype.getValue()));
+            }
+        }
+
+        private <P> Binding<P> bind(Gson gson, Subtype<P, T> subtype) {
+            return new Binding<>(gson, subtype);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            long timestampMillis = 0;
+            String type = null;
+            String version = null;
+            Binding<?> binding = null;
+            Object payload = null;
+            JsonElement pendingPayload = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case "timestampMillis":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        timestampMillis = in.nextLong();
+                    }
+                    break;
+                case "type":
+                    type = nextString(in);
+                    binding = type == null ? null : bindings.get(type);
+                    break;
+                case "version":
+                    version = nextString(in);
+                    break;
+                case "payload":
+                    if (binding != null) {
+                        payload = binding.payloadAdapter.read(in);
+                    } else if (type != null) {
+                        in.skipValue();
+                    } else {
+                        pendingPayload = treeAdapter.read(in);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (binding == null) {
+                return null;
+            }
+            if (pendingPayload != null) {
+                payload = binding.payloadAdapter.fromJsonTree(pendingPayload);
+            }
+            return binding.create(timestampMillis, type, version, payload);
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("timestampMillis").value(value.getTimestampMillis());
+            out.name("type").value(value.getType());
+            out.name("version").value(value.getVersion());
+            Object payload = value.getPayload();
+            if (payload != null) {
+                out.name("payload");
+                gson.toJson(payload, payload.getClass(), out);
+            }
+            out.endObject();
+        }
+
+        private String nextString(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextString();
+        }
+    }
+
+}
@@ -1,6 +1,11 @@
 package ibm.labs.kc.order.command.model.events;
 
-import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+
+import ibm.labs.kc.order.command.model.Cancellation;
+import ibm.labs.kc.order.command.model.ContainerAssignment;
+import ibm.labs.kc.order.command.model.Order;
+import ibm.labs.kc.order.command.model.VoyageAssignment;
 
 public class OrderEvent extends AbstractEvent {
 
@@ -19,7 +24,21 @@ public class OrderEvent extends AbstractEvent {
     public static final String TYPE_CONTAINER_OFF_SHIP = "ContainerOffShip";
     public static final String TYPE_CONTAINER_DELIVERED = "ContainerDelivered";
 
-    private static final Gson gson = new Gson();
+    // registered in the Gson of EventJson
+    static final EventTypeAdapterFactory<OrderEvent> adapterFactory = new EventTypeAdapterFactory<>(OrderEvent.class)
+            .register(TYPE_CREATED, Order.class, CreateOrderEvent::new)
+            .register(TYPE_UPDATED, Order.class, UpdateOrderEvent::new)
+            .register(TYPE_ASSIGNED, VoyageAssignment.class, AssignOrderEvent::new)
+            .register(TYPE_CANCELLED, Cancellation.class, CancelOrderEvent::new)
+            .register(TYPE_CONTAINER_ALLOCATED, ContainerAssignment.class, AssignContainerEvent::new);
+    private static final EventBinaryCodec<OrderEvent> binaryCodec = new EventBinaryCodec<OrderEvent>()
+            .register(TYPE_CREATED, EventBinary.ORDER, CreateOrderEvent::new)
+            .register(TYPE_UPDATED, EventBinary.ORDER, UpdateOrderEvent::new)
+            .register(TYPE_ASSIGNED, EventBinary.VOYAGE_ASSIGNMENT, AssignOrderEvent::new)
+            .register(TYPE_CANCELLED, EventBinary.CANCELLATION, CancelOrderEvent::new)
+            .register(TYPE_CONTAINER_ALLOCATED, EventBinary.CONTAINER_ASSIGNMENT, AssignContainerEvent::new);
+    // the types skipped by deserialize(byte[]) before decoding
+    private static final EventTypeFilter typeFilter = new EventTypeFilter(binaryCodec.types());
 
     public OrderEvent(long timestampMillis, String type, String version) {
         super(timestampMillis, type, version);
@@ -28,24 +47,42 @@ public class OrderEvent extends AbstractEvent {
     public OrderEvent() {}
 
     public static OrderEvent deserialize(String json) {
-        // OrderEvent is a concrete class just to find the type of the event
-        // We could do a "normal" JSON deserialization instead
-        OrderEvent orderEvent = gson.fromJson(json, OrderEvent.class);
-        switch (orderEvent.type) {
-        case TYPE_CREATED:
-            return gson.fromJson(json, CreateOrderEvent.class);
-        case TYPE_UPDATED:
-            return gson.fromJson(json, UpdateOrderEvent.class);
-        case TYPE_ASSIGNED:
-            return gson.fromJson(json, AssignOrderEvent.class);
-        case TYPE_CANCELLED:
-            return gson.fromJson(json, CancelOrderEvent.class);
-        case TYPE_CONTAINER_ALLOCATED:
-        	return gson.fromJson(json, AssignContainerEvent.class);
-        default:
-            //TODO handle
+        return EventJson.gson().fromJson(json, OrderEvent.class);
+    }
+
+    /**
+     * @return the event as JSON, with its header fields before the payload
+     */
+    public static String serialize(OrderEvent event) {
+        return EventJson.gson().toJson(event, OrderEvent.class);
+    }
+
+    /**
+     * @param data a record value, in either format
+     * @return null for the types not registered, most of them skipped without decoding the record
+     */
+    public static OrderEvent deserialize(byte[] data) {
+        if (!typeFilter.accepts(data)) {
             return null;
         }
+        if (EventBinary.isBinary(data)) {
+            return binaryCodec.read(data);
+        }
+        return data == null ? null : deserialize(new String(data, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the filter of the types read by deserialize(byte[])
+     */
+    public static EventTypeFilter typeFilter() {
+        return typeFilter;
+    }
+
+    public static byte[] serialize(OrderEvent event, EventFormat format) {
+        if (format == EventFormat.BINARY) {
+            return binaryCodec.write(event);
+        }
+        return serialize(event).getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
@@ -53,4 +90,12 @@ public class OrderEvent extends AbstractEvent {
         return null;
     }
 
+    /**
+     * @return the ID of the order this event applies to, null when unknown.
+     * Events sharing an order ID must be applied in sequence.
+     */
+    public String getOrderID() {
+        return null;
+    }
+
 }
@@ -1,5 +1,8 @@
 package ibm.labs.kc.order.command.model.events;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import ibm.labs.kc.order.command.model.Order;
 
 public class UpdateOrderEvent extends OrderEvent {
@@ -22,4 +25,70 @@ public class UpdateOrderEvent extends OrderEvent {
         this.payload = payload;
     }
 
+    @Override
+    public String getOrderID() {
+        return payload == null ? null : payload.getOrderID();
+    }
+
+    /**
+     * Merges the updates following each other in the events of one order. An update only sets
+     * the fields present in its payload and never the status, so the merged update has the same
+     * effect as the updates applied in sequence.
+     *
+     * @return the events with each run of updates replaced by a single update
+     */
+    public static List<OrderEvent> coalesce(List<OrderEvent> events) {
+        List<OrderEvent> result = new ArrayList<>(events.size());
+        for (List<OrderEvent> run : runs(events)) {
+            result.add(merge(run));
+        }
+        return result;
+    }
+
+    /**
+     * Splits the events of one order in the runs of updates following each other, any other event
+     * in a run of its own. A listener applying the merged runs reports a failure for each event of the run.
+     */
+    public static List<List<OrderEvent>> runs(List<OrderEvent> events) {
+        List<List<OrderEvent>> runs = new ArrayList<>();
+        List<OrderEvent> run = null;
+        for (OrderEvent event : events) {
+            if (run == null || payloadOf(event) == null || payloadOf(run.get(run.size() - 1)) == null) {
+                run = new ArrayList<>(1);
+                runs.add(run);
+            }
+            run.add(event);
+        }
+        return runs;
+    }
+
+    /**
+     * @return the event of a run of one, else an update with the effect of the updates of the run
+     */
+    public static OrderEvent merge(List<OrderEvent> run) {
+        OrderEvent result = run.get(0);
+        for (int i = 1; i < run.size(); i++) {
+            OrderEvent event = run.get(i);
+            result = new UpdateOrderEvent(event.getTimestampMillis(), event.getVersion(),
+                    merge(payloadOf(result), payloadOf(event)));
+        }
+        return result;
+    }
+
+    private static Order payloadOf(OrderEvent event) {
+        return event instanceof UpdateOrderEvent ? ((UpdateOrderEvent) event).getPayload() : null;
+    }
+
+    private static Order merge(Order earlier, Order later) {
+        return new Order(later.getOrderID(),
+                later.getProductID() != null ? later.getProductID() : earlier.getProductID(),
+                later.getCustomerID() != null ? later.getCustomerID() : earlier.getCustomerID(),
+                later.getQuantity() != 0 ? later.getQuantity() : earlier.getQuantity(),
+                later.getPickupAddress() != null ? later.getPickupAddress() : earlier.getPickupAddress(),
+                later.getPickupDate() != null ? later.getPickupDate() : earlier.getPickupDate(),
+                later.getDestinationAddress() != null ? later.getDestinationAddress() : earlier.getDestinationAddress(),
+                later.getExpectedDeliveryDate() != null ? later.getExpectedDeliveryDate() : earlier.getExpectedDeliveryDate(),
+                later.getStatus() != null ? later.getStatus() : earlier.getStatus());
+    }
+
 }
@@ -0,0 +1,23 @@
+package ibm.labs.kc.order.command.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import ibm.labs.kc.order.command.model.events.EventTracer;
+
+/**
+ * Sample of the last events handled, see EventTracer
+ */
+@Path("trace")
+public class TraceEndpoint {
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response recentEvents() {
+        return Response.ok(EventTracer.instance().recentAsJson()).build();
+    }
+
+}
@@ -1,6 +1,9 @@
 package ibm.labs.kc.order.command.service;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -13,6 +16,8 @@ import org.apache.kafka.common.KafkaException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibm.labs.kc.order.command.dao.OrderDAOMock;
+import ibm.labs.kc.order.command.dao.OrderSnapshot;
 import ibm.labs.kc.order.command.kafka.ApplicationConfig;
 import ibm.labs.kc.order.command.kafka.ErrorProducer;
 import ibm.labs.kc.order.command.kafka.OrderConsumer;
@@ -28,11 +33,16 @@ public class EventLoop implements ServletContextListener{
     private volatile boolean running = true;
     private OrderConsumer consumer;
     private ExecutorService executor;
+    private Optional<Path> snapshotFile;
+    private OrderSnapshot snapshot;
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         logger.info("@@@ Order Consumer Loop contextInitialized v0.0.4");
 
+        snapshotFile = ApplicationConfig.getSnapshotFile();
+        snapshot = snapshotFile.flatMap(OrderSnapshot::readFrom).orElse(null);
+
         consumer = new OrderConsumer();
         executor = Executors.newFixedThreadPool(1);
         executor.execute(newReloadRunnable());
@@ -46,16 +56,23 @@ public class EventLoop implements ServletContextListener{
                 logger.info("Reload Order State started");
                 EventListener listener = new OrderAdminService();
 
+                if (snapshot != null) {
+                    // only the events after the snapshot are replayed
+                    if (consumer.initReload(snapshot.getOffsets())) {
+                        OrderDAOMock.instance().addAll(snapshot.getOrders());
+                    }
+                    snapshot = null;
+                }
                 while (!consumer.reloadCompleted()) {
                     List<OrderEvent> events = consumer.pollForReload();
-                    for (OrderEvent event : events) {
-                        try {
-                            listener.handle(event);
-                        } catch (Exception e) {
-                            e.printStackTrace();
+                    try {
+                        listener.handleBatch(events, (event, e) -> {
+                            logger.error("Failed reloading event " + event, e);
                             // TODO fail to restart would be the correct handling
                             // mark the app as unhealthy
-                        }
+                        });
+                    } catch (Exception e) {
+                        logger.error("Failed reloading a batch of " + events.size() + " events", e);
                     }
                 }
                 logger.info("ReloadState completed");
@@ -71,15 +88,21 @@ public class EventLoop implements ServletContextListener{
                 logger.info("ConsumerLoop thread started");
                 EventListener listener = new OrderAdminService();
                 EventEmitter emitter = new ErrorProducer();
+                long snapshotIntervalMs = ApplicationConfig.getSnapshotIntervalSec() * 1000;
+                long nextSnapshot = System.currentTimeMillis() + snapshotIntervalMs;
                 boolean ok = true;
                 try {
                     while (running && ok) {
+                        if (snapshotFile.isPresent() && snapshotIntervalMs > 0
+                                && System.currentTimeMillis() >= nextSnapshot) {
+                            saveSnapshot(snapshotFile.get());
+                            nextSnapshot = System.currentTimeMillis() + snapshotIntervalMs;
+                        }
                         try {
                             List<OrderEvent> events = consumer.poll();
-                            for (OrderEvent event : events) {
-                                try {
-                                    listener.handle(event);
-                                } catch (Exception e) {
+                            try {
+                                // the whole poll at once, each order locked once
+                                listener.handleBatch(events, (event, e) -> {
                                     ErrorEvent errorEvent = new ErrorEvent(System.currentTimeMillis(),
                                             ErrorEvent.TYPE_ERROR, "1", event, e.getMessage());
                                     try {
@@ -87,8 +110,12 @@ public class EventLoop implements ServletContextListener{
                                     } catch (Exception e1) {
                                         logger.error("Failed emitting Error event " + errorEvent, e1);
                                     }
-                                }
+                                });
+                            } catch (Exception e) {
+                                logger.error("Failed applying a batch of " + events.size() + " events", e);
                             }
+                            // failed events went to the error topic, the whole batch is handled
+                            consumer.commitAsync();
                         } catch (KafkaException ke) {
                             // Treat a Kafka exception as unrecoverable
                             // stop this task and queue a new one
@@ -97,6 +124,10 @@ public class EventLoop implements ServletContextListener{
                         }
                     }
                 } finally {
+                    if (!running && snapshotFile.isPresent()) {
+                        saveSnapshot(snapshotFile.get());
+                    }
+                    consumer.commitSync();
                     consumer.safeClose();
                     emitter.safeClose();
                 }
@@ -104,6 +135,18 @@ public class EventLoop implements ServletContextListener{
         };
     }
 
+    /**
+     * Called between two polls on the loop thread, the only one updating the orders,
+     * so the snapshot matches the applied offsets.
+     */
+    private void saveSnapshot(Path file) {
+        try {
+            new OrderSnapshot(consumer.getAppliedOffsets(), OrderDAOMock.instance().getAll()).writeTo(file);
+        } catch (IOException e) {
+            logger.warn("Failed writing snapshot " + file, e);
+        }
+    }
+
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         logger.info("Order ConsumerLoop contextDestroyed");
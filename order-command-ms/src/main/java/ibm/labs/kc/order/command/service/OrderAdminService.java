@@ -1,16 +1,26 @@
 package ibm.labs.kc.order.command.service;
 
-import java.util.Collection;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
@@ -19,11 +29,10 @@ import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-
 import ibm.labs.kc.order.command.dao.CommandOrder;
 import ibm.labs.kc.order.command.dao.OrderDAO;
 import ibm.labs.kc.order.command.dao.OrderDAOMock;
+import ibm.labs.kc.order.command.dao.StripedLocks;
 import ibm.labs.kc.order.command.model.Cancellation;
 import ibm.labs.kc.order.command.model.ContainerAssignment;
 import ibm.labs.kc.order.command.model.Order;
@@ -33,7 +42,10 @@ import ibm.labs.kc.order.command.model.events.AssignOrderEvent;
 import ibm.labs.kc.order.command.model.events.CancelOrderEvent;
 import ibm.labs.kc.order.command.model.events.CreateOrderEvent;
 import ibm.labs.kc.order.command.model.events.Event;
+import ibm.labs.kc.order.command.model.events.EventBatches;
+import ibm.labs.kc.order.command.model.events.EventJson;
 import ibm.labs.kc.order.command.model.events.EventListener;
+import ibm.labs.kc.order.command.model.events.EventTracer;
 import ibm.labs.kc.order.command.model.events.OrderEvent;
 import ibm.labs.kc.order.command.model.events.UpdateOrderEvent;
 
@@ -41,100 +53,191 @@ import ibm.labs.kc.order.command.model.events.UpdateOrderEvent;
 public class OrderAdminService implements EventListener {
 
     static final Logger logger = LoggerFactory.getLogger(OrderAdminService.class);
+    // shared by all the instances, events of different orders are applied in parallel
+    private static final StripedLocks orderLocks = new StripedLocks();
+    static final String NDJSON = "application/x-ndjson";
+    // response header of a full page, the ID to pass as the after parameter of the next page
+    static final String NEXT_AFTER_HEADER = "X-Next-After";
+    static final int MAX_LIMIT = 1000;
     private OrderDAO orderDAO;
+    private EventTracer tracer;
 
     public OrderAdminService() {
         orderDAO = OrderDAOMock.instance();
+        tracer = EventTracer.instance();
     }
 
     @Override
     public void handle(Event event) {
-        String orderID;
-        Optional<CommandOrder> oco;
         try {
-            OrderEvent orderEvent = (OrderEvent) event;
-            System.out.println("@@@@ in handle " + new Gson().toJson(orderEvent));
-            switch (orderEvent.getType()) {
-            case OrderEvent.TYPE_CREATED:
-                synchronized (orderDAO) {
-                    Order o1 = ((CreateOrderEvent) orderEvent).getPayload();
-                    orderDAO.add(CommandOrder.newFromOrder(o1));
-                }
-                break;
-            case OrderEvent.TYPE_UPDATED:
-                synchronized (orderDAO) {
-                    Order o2 = ((UpdateOrderEvent) orderEvent).getPayload();
-                    orderID = o2.getOrderID();
-                    oco = orderDAO.getByID(orderID);
-                    if (oco.isPresent()) {
-                        CommandOrder co = oco.get();
-                        co.update(o2);
-                        orderDAO.update(co);
-                    } else {
-                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
+            apply(event);
+        } catch (Exception e) {
+            logger.error((new Date()).toString() + " " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The events of each order are applied holding the order lock once, successive updates merged.
+     * The lock blocks of apply() then only re-enter the monitor held.
+     */
+    @Override
+    public void handleBatch(List<? extends Event> events, BiConsumer<Event, Exception> failed) {
+        List<OrderEvent> orderEvents = new ArrayList<>(events.size());
+        for (Event event : events) {
+            orderEvents.add((OrderEvent) event);
+        }
+        for (Map.Entry<String, List<OrderEvent>> order : EventBatches.groupBy(orderEvents, OrderEvent::getOrderID).entrySet()) {
+            synchronized (orderLocks.lockFor(order.getKey())) {
+                for (List<OrderEvent> run : UpdateOrderEvent.runs(order.getValue())) {
+                    try {
+                        apply(UpdateOrderEvent.merge(run));
+                    } catch (Exception e) {
+                        // the merged updates failed together
+                        for (OrderEvent event : run) {
+                            failed.accept(event, e);
+                        }
                     }
                 }
-                break;
-            case OrderEvent.TYPE_ASSIGNED:
-                synchronized (orderDAO) {
-                    VoyageAssignment voyageAssignment = ((AssignOrderEvent) orderEvent).getPayload();
-                    orderID = voyageAssignment.getOrderID();
-                    oco = orderDAO.getByID(orderID);
-                    if (oco.isPresent()) {
-                        CommandOrder co = oco.get();
-                        co.assign(voyageAssignment);
-                        orderDAO.update(co);
-                    } else {
-                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                    }
+            }
+        }
+    }
+
+    // throws when the event cannot be applied: handle() logs it, handleBatch() reports it
+    private void apply(Event event) {
+        String orderID;
+        Optional<CommandOrder> oco;
+        tracer.trace("OrderAdminService", event);
+        OrderEvent orderEvent = (OrderEvent) event;
+        Object lock = orderLocks.lockFor(orderEvent.getOrderID());
+        switch (orderEvent.getType()) {
+        case OrderEvent.TYPE_CREATED:
+            synchronized (lock) {
+                Order o1 = ((CreateOrderEvent) orderEvent).getPayload();
+                orderDAO.add(CommandOrder.newFromOrder(o1));
+            }
+            break;
+        case OrderEvent.TYPE_UPDATED:
+            synchronized (lock) {
+                Order o2 = ((UpdateOrderEvent) orderEvent).getPayload();
+                orderID = o2.getOrderID();
+                oco = orderDAO.getByID(orderID);
+                if (oco.isPresent()) {
+                    CommandOrder co = oco.get();
+                    co.update(o2);
+                    orderDAO.update(co);
+                } else {
+                    throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                 }
-                break;
-            case OrderEvent.TYPE_CANCELLED:
-                synchronized (orderDAO) {
-                    Cancellation cancellation = ((CancelOrderEvent) orderEvent).getPayload();
-                    orderID = cancellation.getOrderID();
-                    oco = orderDAO.getByID(orderID);
-                    if (oco.isPresent()) {
-                        CommandOrder co = oco.get();
-                        co.cancel(cancellation);
-                        orderDAO.update(co);
-                    } else {
-                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                    }
+            }
+            break;
+        case OrderEvent.TYPE_ASSIGNED:
+            synchronized (lock) {
+                VoyageAssignment voyageAssignment = ((AssignOrderEvent) orderEvent).getPayload();
+                orderID = voyageAssignment.getOrderID();
+                oco = orderDAO.getByID(orderID);
+                if (oco.isPresent()) {
+                    CommandOrder co = oco.get();
+                    co.assign(voyageAssignment);
+                    orderDAO.update(co);
+                } else {
+                    throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                 }
-                break;
-            case OrderEvent.TYPE_CONTAINER_ALLOCATED:
-            	synchronized (orderDAO) {
-	            	ContainerAssignment ca = ((AssignContainerEvent) orderEvent).getPayload();
-	            	orderID = ca.getOrderID();
-	            	 oco = orderDAO.getByID(orderID);
-	            	 if (oco.isPresent()) {
-	                     CommandOrder co = oco.get();
-	                     co.assignContainer(ca);
-	                     orderDAO.update(co);
-	                 } else {
-	                     throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-	                 }
-            	}
-            	break;
-            default:
-                logger.warn("Unknown event type: " + orderEvent);
             }
-        } catch (Exception e) {
-            logger.error((new Date()).toString() + " " + e.getMessage(), e);
+            break;
+        case OrderEvent.TYPE_CANCELLED:
+            synchronized (lock) {
+                Cancellation cancellation = ((CancelOrderEvent) orderEvent).getPayload();
+                orderID = cancellation.getOrderID();
+                oco = orderDAO.getByID(orderID);
+                if (oco.isPresent()) {
+                    CommandOrder co = oco.get();
+                    co.cancel(cancellation);
+                    orderDAO.update(co);
+                } else {
+                    throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
+                }
+            }
+            break;
+        case OrderEvent.TYPE_CONTAINER_ALLOCATED:
+        	synchronized (lock) {
+            	ContainerAssignment ca = ((AssignContainerEvent) orderEvent).getPayload();
+            	orderID = ca.getOrderID();
+            	 oco = orderDAO.getByID(orderID);
+            	 if (oco.isPresent()) {
+                     CommandOrder co = oco.get();
+                     co.assignContainer(ca);
+                     orderDAO.update(co);
+                 } else {
+                     throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
+                 }
+        	}
+        	break;
+        default:
+            logger.warn("Unknown event type: " + orderEvent);
         }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    @Operation(summary = "Returns all orders", description = "")
+    @Operation(summary = "Returns all orders, or one page of them by ascending ID", description = "")
     @APIResponses(value = {
+            @APIResponse(responseCode = "400", description = "Invalid limit", content = @Content(mediaType = "text/plain")),
             @APIResponse(responseCode = "200", description = "OK", content = @Content(mediaType = "application/json")) })
-    public Response getAll() {
-        logger.info("OrderAdminService.getAll()");
+    public Response getAll(@QueryParam("limit") Integer limit, @QueryParam("after") String after) {
+        logger.info("OrderAdminService.getAll(" + limit + ", " + after + ")");
+
+        if (limit == null && after == null) {
+            return Response.ok().entity(orderDAO.getAll()).build();
+        }
+        int pageSize = checkLimit(limit == null ? MAX_LIMIT : limit);
+        List<CommandOrder> page = new ArrayList<>(Math.min(pageSize, 64));
+        for (CommandOrder order : orderDAO.getAfter(after)) {
+            if (page.size() == pageSize) {
+                break;
+            }
+            page.add(order);
+        }
+        ResponseBuilder response = Response.ok().entity(page);
+        if (page.size() == pageSize) {
+            // the after parameter of the next page
+            response.header(NEXT_AFTER_HEADER, page.get(pageSize - 1).getOrderID());
+        }
+        return response.build();
+    }
+
+    /**
+     * One JSON order per line, written as the orders are iterated, for the exports of all the orders
+     */
+    @GET
+    @Produces(NDJSON)
+    @Operation(summary = "Streams the orders by ascending ID, one JSON document per line", description = "")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "400", description = "Invalid limit", content = @Content(mediaType = "text/plain")),
+            @APIResponse(responseCode = "200", description = "OK", content = @Content(mediaType = NDJSON)) })
+    public Response streamAll(@QueryParam("limit") Integer limit, @QueryParam("after") String after) {
+        logger.info("OrderAdminService.streamAll(" + limit + ", " + after + ")");
 
-        Collection<CommandOrder> orders = orderDAO.getAll();
-        return Response.ok().entity(orders).build();
+        long max = limit == null ? Long.MAX_VALUE : checkLimit(limit);
+        StreamingOutput stream = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            long count = 0;
+            for (CommandOrder order : orderDAO.getAfter(after)) {
+                if (count++ == max) {
+                    break;
+                }
+                EventJson.gson().toJson(order, CommandOrder.class, writer);
+                writer.write('\n');
+            }
+            writer.flush();
+        };
+        return Response.ok(stream).build();
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
     }
 
 
@@ -3,6 +3,7 @@ package ibm.labs.kc.order.command.service;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -10,6 +11,8 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -26,6 +29,7 @@ import ibm.labs.kc.order.command.dao.OrderDAO;
 import ibm.labs.kc.order.command.dao.OrderDAOMock;
 import ibm.labs.kc.order.command.dto.OrderCreate;
 import ibm.labs.kc.order.command.dto.OrderUpdate;
+import ibm.labs.kc.order.command.kafka.ApplicationConfig;
 import ibm.labs.kc.order.command.kafka.OrderProducer;
 import ibm.labs.kc.order.command.model.Order;
 import ibm.labs.kc.order.command.model.events.CreateOrderEvent;
@@ -52,7 +56,7 @@ public class OrderCRUDService {
     @APIResponses(value = {
             @APIResponse(responseCode = "400", description = "Bad create order request", content = @Content(mediaType = "text/plain")),
             @APIResponse(responseCode = "200", description = "Order created", content = @Content(mediaType = "application/json")) })
-    public Response create(OrderCreate dto) {
+    public void create(OrderCreate dto, @Suspended AsyncResponse response) {
 
         OrderCreate.validate(dto);
 
@@ -66,14 +70,8 @@ public class OrderCRUDService {
 
         OrderEvent orderEvent = new CreateOrderEvent(System.currentTimeMillis(), "1", order);
 
-        try {
-            emitter.emit(orderEvent);
-        } catch (Exception e) {
-            logger.error("Fail to publish order created event", e);
-            return Response.serverError().build();
-        }
-
-        return Response.ok().entity(order).build();
+        // the request thread is released while the event is sent
+        publish(orderEvent, order, "Fail to publish order created event", response);
     }
 
     @PUT
@@ -85,7 +83,7 @@ public class OrderCRUDService {
             @APIResponse(responseCode = "404", description = "Unknown order ID", content = @Content(mediaType = "text/plain")),
             @APIResponse(responseCode = "400", description = "Bad update order request", content = @Content(mediaType = "text/plain")),
             @APIResponse(responseCode = "200", description = "Order updated", content = @Content(mediaType = "application/json")) })
-    public Response update(@PathParam("Id") String orderID, OrderUpdate dto) {
+    public void update(@PathParam("Id") String orderID, OrderUpdate dto, @Suspended AsyncResponse response) {
 
         if(! Objects.equals(orderID, dto.getOrderID())) {
             throw new IllegalArgumentException("OrderID in body does not match PUT path");
@@ -105,17 +103,30 @@ public class OrderCRUDService {
 
             OrderEvent orderEvent = new UpdateOrderEvent(System.currentTimeMillis(), "1", updatedOrder);
 
-            try {
-                emitter.emit(orderEvent);
-            } catch (Exception e) {
-                logger.error("Fail to publish order updated event", e);
-                return Response.serverError().build();
-            }
-
-            return Response.ok().entity(updatedOrder).build();
+            publish(orderEvent, updatedOrder, "Fail to publish order updated event", response);
         } else {
-            return Response.status(Status.NOT_FOUND).build();
+            response.resume(Response.status(Status.NOT_FOUND).build());
         }
     }
 
+    /**
+     * Resume the response with the order once the event is acknowledged, with a server error otherwise
+     */
+    private void publish(OrderEvent orderEvent, Order order, String failure, AsyncResponse response) {
+        response.setTimeoutHandler(r -> {
+            logger.error(failure + ": timed out");
+            r.resume(Response.serverError().build());
+        });
+        response.setTimeout(ApplicationConfig.PRODUCER_TIMEOUT_SECS, TimeUnit.SECONDS);
+
+        emitter.emitAsync(orderEvent).whenComplete((sent, e) -> {
+            if (e != null) {
+                logger.error(failure, e);
+                response.resume(Response.serverError().build());
+            } else {
+                response.resume(Response.ok().entity(order).build());
+            }
+        });
+    }
+
 }
\ No newline at end of file
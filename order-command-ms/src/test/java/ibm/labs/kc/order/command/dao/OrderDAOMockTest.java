@@ -6,8 +6,11 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -76,4 +79,22 @@ public class OrderDAOMockTest {
         assertTrue(orders.contains(co2Clone));
     }
 
+    @Test
+    public void testGetAfterIsOrderedByID() {
+        OrderDAO dao = new OrderDAOMock();
+        for (String orderID : new String[] { "c", "a", "d", "b" }) {
+            dao.add(new CommandOrder(orderID, "productID", "customerID", 1, null, null, null, null,
+                    Order.PENDING_STATUS));
+        }
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(dao.getAfter(null)));
+        assertEquals(Arrays.asList("c", "d"), ids(dao.getAfter("b")));
+        assertEquals(Arrays.asList("c", "d"), ids(dao.getAfter("bb")));
+        assertTrue(dao.getAfter("d").isEmpty());
+    }
+
+    private static List<String> ids(Collection<CommandOrder> orders) {
+        return orders.stream().map(CommandOrder::getOrderID).collect(Collectors.toList());
+    }
+
 }
@@ -0,0 +1,111 @@
+package ibm.labs.kc.order.command.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ibm.labs.kc.order.command.model.Address;
+import ibm.labs.kc.order.command.model.Order;
+
+public class OrderSnapshotTest {
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void createDir() throws Exception {
+        dir = Files.createTempDirectory("snapshot");
+        file = dir.resolve("orders.snapshot");
+    }
+
+    @After
+    public void deleteDir() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        Address address = new Address("street", "city", "county", "state", "zipcode");
+        CommandOrder co1 = CommandOrder.newFromOrder(new Order(UUID.randomUUID().toString(),
+                "productID", "customerID", 1,
+                address, "2019-01-10T13:30Z",
+                address, "2019-01-10T13:30Z",
+                Order.PENDING_STATUS));
+        // partially filled order
+        CommandOrder co2 = new CommandOrder(UUID.randomUUID().toString(), "productID", null, 0,
+                null, null, address, null, Order.ASSIGNED_STATUS);
+        Map<Integer, Long> offsets = new HashMap<>();
+        offsets.put(0, 42L);
+        offsets.put(3, 7L);
+
+        new OrderSnapshot(offsets, Arrays.asList(co1, co2)).writeTo(file);
+        Optional<OrderSnapshot> read = OrderSnapshot.readFrom(file);
+
+        assertTrue(read.isPresent());
+        assertEquals(offsets, read.get().getOffsets());
+        assertEquals(new HashSet<>(Arrays.asList(co1, co2)), new HashSet<>(read.get().getOrders()));
+        assertFalse(Files.exists(dir.resolve("orders.snapshot.tmp")));
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        new OrderSnapshot(new HashMap<>(), new ArrayList<>()).writeTo(file);
+        Map<Integer, Long> offsets = new HashMap<>();
+        offsets.put(0, 1L);
+        new OrderSnapshot(offsets, new ArrayList<>()).writeTo(file);
+
+        assertEquals(offsets, OrderSnapshot.readFrom(file).get().getOffsets());
+    }
+
+    @Test
+    public void testWriteFromInterruptedThread() throws Exception {
+        Map<Integer, Long> offsets = new HashMap<>();
+        offsets.put(0, 1L);
+        // as the loop thread on shutdown
+        Thread.currentThread().interrupt();
+        try {
+            new OrderSnapshot(offsets, new ArrayList<>()).writeTo(file);
+        } finally {
+            // cleared for the next tests
+            assertTrue(Thread.interrupted());
+        }
+
+        assertEquals(offsets, OrderSnapshot.readFrom(file).get().getOffsets());
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        assertFalse(OrderSnapshot.readFrom(file).isPresent());
+    }
+
+    @Test
+    public void testInvalidSnapshot() throws Exception {
+        Files.write(file, "{\"orders\":[]}".getBytes("UTF-8"));
+        assertFalse(OrderSnapshot.readFrom(file).isPresent());
+
+        // truncated file
+        List<CommandOrder> orders = new ArrayList<>();
+        orders.add(new CommandOrder("id", null, null, 0, null, null, null, null, Order.PENDING_STATUS));
+        new OrderSnapshot(new HashMap<>(), orders).writeTo(file);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 4));
+        assertFalse(OrderSnapshot.readFrom(file).isPresent());
+    }
+
+}
@@ -0,0 +1,159 @@
+package ibm.labs.kc.order.command.kafka;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartitionReloaderTest {
+
+    private static final String TOPIC = "orders";
+    private final TopicPartition p0 = new TopicPartition(TOPIC, 0);
+    private final TopicPartition p1 = new TopicPartition(TOPIC, 1);
+    private final TopicPartition p2 = new TopicPartition(TOPIC, 2);
+
+    private MockConsumer<String, byte[]> mainConsumer;
+    private MockConsumer<String, byte[]> reloadConsumer;
+
+    @Before
+    public void setup() {
+        mainConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        reloadConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        mainConsumer.updatePartitions(TOPIC, Arrays.asList(
+                new PartitionInfo(TOPIC, 0, null, null, null),
+                new PartitionInfo(TOPIC, 1, null, null, null),
+                new PartitionInfo(TOPIC, 2, null, null, null)));
+
+        Map<TopicPartition, Long> beginning = new HashMap<>();
+        Map<TopicPartition, Long> end = new HashMap<>();
+        for (TopicPartition p : Arrays.asList(p0, p1, p2)) {
+            beginning.put(p, 0L);
+            end.put(p, 5L);
+        }
+        reloadConsumer.updateBeginningOffsets(beginning);
+        reloadConsumer.updateEndOffsets(end);
+    }
+
+    private void committed(long off0, long off1, long off2) {
+        mainConsumer.assign(Arrays.asList(p0, p1, p2));
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        offsets.put(p0, new OffsetAndMetadata(off0));
+        offsets.put(p1, new OffsetAndMetadata(off1));
+        offsets.put(p2, new OffsetAndMetadata(off2));
+        mainConsumer.commitSync(offsets);
+    }
+
+    private void fill(TopicPartition p, int from) {
+        for (int i = from; i < 5; i++) {
+            reloadConsumer.addRecord(new ConsumerRecord<>(TOPIC, p.partition(), i, null, (p.partition() + ":" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static List<String> values(Iterable<ConsumerRecord<String, byte[]>> records) {
+        List<String> values = new ArrayList<>();
+        for (ConsumerRecord<String, byte[]> rec : records) {
+            values.add(new String(rec.value(), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    @Test
+    public void testEachPartitionStopsAtItsOwnLimit() {
+        committed(2, 5, 0);
+        PartitionReloader reloader = new PartitionReloader(TOPIC, mainConsumer, reloadConsumer);
+        assertFalse(reloader.completed());
+        // nothing to replay on partition 2
+        assertEquals(2, reloadConsumer.assignment().size());
+        fill(p0, 0);
+        fill(p1, 0);
+
+        List<String> replayed = values(reloader.poll());
+
+        assertTrue(reloader.completed());
+        assertEquals(7, replayed.size());
+        assertTrue(replayed.containsAll(Arrays.asList("0:0", "0:1", "1:0", "1:4")));
+        assertFalse(replayed.contains("0:2"));
+    }
+
+    @Test
+    public void testEachPartitionIsPausedAtItsLimit() {
+        committed(3, 3, 3);
+        PartitionReloader reloader = new PartitionReloader(TOPIC, mainConsumer, reloadConsumer);
+        fill(p0, 0);
+        assertEquals(3, reloader.poll().count());
+        assertFalse(reloader.completed());
+        assertEquals(1, reloadConsumer.paused().size());
+        assertTrue(reloadConsumer.paused().contains(p0));
+
+        fill(p1, 0);
+        fill(p2, 0);
+        assertEquals(6, reloader.poll().count());
+        assertTrue(reloader.completed());
+        assertTrue(reloadConsumer.paused().containsAll(Arrays.asList(p0, p1, p2)));
+    }
+
+    @Test
+    public void testLimitIsCappedByEndOffset() {
+        committed(10, 0, 0);
+        PartitionReloader reloader = new PartitionReloader(TOPIC, mainConsumer, reloadConsumer);
+        fill(p0, 0);
+        assertEquals(5, reloader.poll().count());
+        assertTrue(reloader.completed());
+        assertEquals(Long.valueOf(5), reloader.getReloadedOffsets().get(p0));
+    }
+
+    @Test
+    public void testReplayStartsAtTheStartOffsets() {
+        committed(4, 4, 0);
+        Map<TopicPartition, Long> startOffsets = new HashMap<>();
+        startOffsets.put(p0, 2L);
+        PartitionReloader reloader = new PartitionReloader(TOPIC, mainConsumer, reloadConsumer, startOffsets);
+        assertTrue(reloader.startOffsetsAccepted());
+        fill(p0, 2);
+        fill(p1, 0);
+
+        List<String> replayed = values(reloader.poll());
+
+        assertTrue(reloader.completed());
+        assertEquals(6, replayed.size());
+        assertTrue(replayed.containsAll(Arrays.asList("0:2", "0:3", "1:0", "1:3")));
+        assertEquals(Long.valueOf(4), reloader.getReloadedOffsets().get(p0));
+    }
+
+    @Test
+    public void testStartOffsetBeyondEndIsIgnored() {
+        committed(4, 0, 0);
+        Map<TopicPartition, Long> startOffsets = new HashMap<>();
+        startOffsets.put(p0, 2L);
+        startOffsets.put(p1, 8L);
+        PartitionReloader reloader = new PartitionReloader(TOPIC, mainConsumer, reloadConsumer, startOffsets);
+        assertFalse(reloader.startOffsetsAccepted());
+        // the whole topic is replayed up to the committed offsets
+        fill(p0, 0);
+
+        assertEquals(Arrays.asList("0:0", "0:1", "0:2", "0:3"), values(reloader.poll()));
+        assertTrue(reloader.completed());
+    }
+
+    @Test
+    public void testNoCommittedOffsets() {
+        mainConsumer.assign(Arrays.asList(p0, p1, p2));
+        PartitionReloader reloader = new PartitionReloader(TOPIC, mainConsumer, reloadConsumer);
+        assertTrue(reloader.completed());
+        assertTrue(reloader.poll().isEmpty());
+    }
+
+}
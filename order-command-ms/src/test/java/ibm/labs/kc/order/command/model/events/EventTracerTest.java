@@ -0,0 +1,41 @@
+package ibm.labs.kc.order.command.model.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ibm.labs.kc.order.command.model.Cancellation;
+
+public class EventTracerTest {
+
+    private CancelOrderEvent event(int i) {
+        return new CancelOrderEvent(i, "1", new Cancellation("order" + i, "reason"));
+    }
+
+    @Test
+    public void testKeepsTheLastSamples() {
+        EventTracer tracer = new EventTracer(1, 4);
+        for (int i = 0; i < 6; i++) {
+            tracer.trace("test", event(i));
+        }
+
+        List<EventTracer.Trace> traces = tracer.recent();
+        assertEquals(4, traces.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 2, traces.get(i).getSequence());
+            assertEquals(i + 2, traces.get(i).getEvent().getTimestampMillis());
+        }
+        assertTrue(tracer.recentAsJson().contains("\"orderID\":\"order5\""));
+    }
+
+    @Test
+    public void testDisabled() {
+        EventTracer tracer = new EventTracer(0, 4);
+        tracer.trace("test", event(0));
+        assertTrue(tracer.recent().isEmpty());
+    }
+
+}
@@ -0,0 +1,84 @@
+package ibm.labs.kc.order.command.model.events;
+
+import static ibm.labs.kc.order.command.kafka.ApplicationConfig.ORDER_TOPIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import ibm.labs.kc.order.command.kafka.EventDeserializer;
+import ibm.labs.kc.order.command.kafka.EventHeaders;
+import ibm.labs.kc.order.command.model.Cancellation;
+import ibm.labs.kc.order.command.model.Order;
+
+public class EventTypeFilterTest {
+
+    private final EventTypeFilter filter = new EventTypeFilter(
+            Arrays.asList(OrderEvent.TYPE_CREATED, OrderEvent.TYPE_CANCELLED));
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testJsonTypeAnywhereAtTopLevel() {
+        assertTrue(filter.accepts(bytes("{\"timestampMillis\":1,\"type\":\"OrderCreated\",\"payload\":{}}")));
+        assertFalse(filter.accepts(bytes("{\"timestampMillis\":1,\"type\":\"OrderRejected\",\"payload\":{}}")));
+        assertFalse(filter.accepts(bytes(" {\n \"payload\" : {\"type\":\"OrderCreated\",\"a\":[\"type\"]},"
+                + " \"note\":\"\\\"type\\\"\", \"type\" : \"OrderBooked\" }")));
+        assertTrue(filter.accepts(bytes(new Gson().toJson(
+                new CancelOrderEvent(1L, "1", new Cancellation("orderID", "reason"))))));
+    }
+
+    @Test
+    public void testUndecidedRecordsAreAccepted() {
+        assertTrue(filter.accepts(null));
+        assertTrue(filter.accepts(bytes("{\"payload\":{\"type\":\"OrderBooked\"}}")));
+        assertTrue(filter.accepts(bytes("{\"type\":null}")));
+        assertTrue(filter.accepts(bytes("{\"type\":\"Order\\u0042ooked\"}")));
+        assertTrue(filter.accepts(bytes("{\"type\":\"OrderBook")));
+        assertTrue(filter.accepts(bytes("[\"type\",\"OrderBooked\"]")));
+    }
+
+    @Test
+    public void testBinaryType() {
+        Order order = new Order("orderID", "productId", "custId", 2, null, null, null, null, "pending");
+        assertTrue(filter.accepts(OrderEvent.serialize(new CreateOrderEvent(1L, "1", order), EventFormat.BINARY)));
+        assertFalse(filter.accepts(OrderEvent.serialize(new UpdateOrderEvent(1L, "1", order), EventFormat.BINARY)));
+    }
+
+    @Test
+    public void testIgnoredTypesAreSkipped() {
+        assertNull(OrderEvent.deserialize(bytes("{\"type\":\"OrderRejected\",\"payload\":{\"orderID\":\"o\"}}")));
+        assertTrue(OrderEvent.deserialize(bytes("{\"payload\":{\"orderID\":\"o\",\"reason\":\"r\"},"
+                + "\"type\":\"OrderCancelled\"}")) instanceof CancelOrderEvent);
+    }
+
+    @Test
+    public void testTypeHeaderSkipsTheValue() {
+        EventDeserializer<OrderEvent> deserializer = new EventDeserializer<>(OrderEvent::deserialize,
+                OrderEvent.typeFilter());
+        Order order = new Order("orderID", "productId", "custId", 2, null, null, null, null, "pending");
+        CreateOrderEvent created = new CreateOrderEvent(1L, "1", order);
+
+        // the value is not read at all for an ignored type
+        assertNull(deserializer.deserialize(ORDER_TOPIC, EventHeaders.of(new RejectedEvent()), bytes("not json")));
+        OrderEvent event = deserializer.deserialize(ORDER_TOPIC, EventHeaders.of(created),
+                OrderEvent.serialize(created, EventFormat.BINARY));
+        assertEquals(order, event.getPayload());
+    }
+
+    private static class RejectedEvent extends OrderEvent {
+        RejectedEvent() {
+            super(1L, OrderEvent.TYPE_REJECTED, "1");
+        }
+    }
+
+}
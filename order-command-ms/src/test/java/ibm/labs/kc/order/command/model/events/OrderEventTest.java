@@ -0,0 +1,150 @@
+package ibm.labs.kc.order.command.model.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import ibm.labs.kc.order.command.model.Address;
+import ibm.labs.kc.order.command.model.Cancellation;
+import ibm.labs.kc.order.command.model.Order;
+
+public class OrderEventTest {
+
+    private final Order order = new Order("orderID", "productId", "custId", 2,
+            new Address("myStreet", "myCity", "myCountry", "myState", "myZipcode"), "2019-01-10T13:30Z",
+            null, "2019-01-10T13:30Z", "pending");
+
+    @Test
+    public void testSerializeWritesTypeFirst() {
+        String json = OrderEvent.serialize(new UpdateOrderEvent(1234L, "1", order));
+        assertTrue(json.indexOf("\"type\"") < json.indexOf("\"payload\""));
+
+        OrderEvent event = OrderEvent.deserialize(json);
+        assertTrue(event instanceof UpdateOrderEvent);
+        assertEquals(OrderEvent.TYPE_UPDATED, event.getType());
+        assertEquals(1234L, event.getTimestampMillis());
+        assertEquals("1", event.getVersion());
+        assertEquals(order, event.getPayload());
+    }
+
+    @Test
+    public void testDeserializePlainGson() {
+        String json = new Gson().toJson(new CreateOrderEvent(1234L, "1", order));
+
+        OrderEvent event = OrderEvent.deserialize(json);
+        assertTrue(event instanceof CreateOrderEvent);
+        assertEquals(order, event.getPayload());
+    }
+
+    @Test
+    public void testCoalesceMergesSuccessiveUpdates() {
+        Order quantity = new Order("orderID", null, null, 5, null, null, null, null, null);
+        Order dates = new Order("orderID", null, null, 0, null, "2019-02-10T13:30Z", null, null, null);
+        CancelOrderEvent cancel = new CancelOrderEvent(4L, "1", new Cancellation("orderID", "reason"));
+        UpdateOrderEvent after = new UpdateOrderEvent(5L, "1", quantity);
+
+        List<OrderEvent> events = UpdateOrderEvent.coalesce(Arrays.asList(new UpdateOrderEvent(1L, "1", order),
+                new UpdateOrderEvent(2L, "1", quantity), new UpdateOrderEvent(3L, "1", dates), cancel, after));
+
+        assertEquals(3, events.size());
+        Order merged = ((UpdateOrderEvent) events.get(0)).getPayload();
+        assertEquals(3L, events.get(0).getTimestampMillis());
+        assertEquals("productId", merged.getProductID());
+        assertEquals(5, merged.getQuantity());
+        assertEquals("2019-02-10T13:30Z", merged.getPickupDate());
+        assertEquals("pending", merged.getStatus());
+        assertEquals(cancel, events.get(1));
+        assertEquals(after, events.get(2));
+    }
+
+    @Test
+    public void testRunsKeepTheEventsMergedTogether() {
+        UpdateOrderEvent first = new UpdateOrderEvent(1L, "1", order);
+        UpdateOrderEvent second = new UpdateOrderEvent(2L, "1", order);
+        CancelOrderEvent cancel = new CancelOrderEvent(3L, "1", new Cancellation("orderID", "reason"));
+        UpdateOrderEvent after = new UpdateOrderEvent(4L, "1", order);
+
+        List<List<OrderEvent>> runs = UpdateOrderEvent.runs(Arrays.asList(first, second, cancel, after));
+
+        assertEquals(Arrays.asList(Arrays.asList(first, second), Arrays.asList(cancel), Arrays.asList(after)), runs);
+        assertEquals(after, UpdateOrderEvent.merge(runs.get(2)));
+        assertEquals(2L, UpdateOrderEvent.merge(runs.get(0)).getTimestampMillis());
+    }
+
+    @Test
+    public void testFailedEventsAreReportedAlone() {
+        List<Event> applied = new ArrayList<>();
+        List<Event> failed = new ArrayList<>();
+        EventListener listener = event -> {
+            if (event.getTimestampMillis() == 2L) {
+                throw new IllegalStateException("Cannot update - Unknown order Id");
+            }
+            applied.add(event);
+        };
+        UpdateOrderEvent first = new UpdateOrderEvent(1L, "1", order);
+        UpdateOrderEvent second = new UpdateOrderEvent(2L, "1", order);
+        UpdateOrderEvent third = new UpdateOrderEvent(3L, "1", order);
+
+        listener.handleBatch(Arrays.asList(first, second, third), (event, e) -> failed.add(event));
+
+        assertEquals(Arrays.asList(first, third), applied);
+        assertEquals(Arrays.asList(second), failed);
+    }
+
+    @Test
+    public void testErrorEventRoundTrip() {
+        ErrorEvent error = new ErrorEvent(5678L, ErrorEvent.TYPE_ERROR, "1", new CreateOrderEvent(1234L, "1", order),
+                "failed");
+        String json = ErrorEvent.serialize(error);
+        assertEquals(new Gson().fromJson(json, JsonObject.class),
+                new Gson().toJsonTree(error).getAsJsonObject());
+
+        ErrorEvent read = EventJson.gson().fromJson(json, ErrorEvent.class);
+        assertEquals("failed", read.getErrorMessage());
+        assertTrue(read.getPayload() instanceof CreateOrderEvent);
+        assertEquals(order, read.getPayload().getPayload());
+    }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        byte[] data = OrderEvent.serialize(new UpdateOrderEvent(1234L, "1", order), EventFormat.BINARY);
+        assertTrue(EventBinary.isBinary(data));
+        assertTrue(data.length < OrderEvent.serialize(new UpdateOrderEvent(1234L, "1", order)).length());
+
+        OrderEvent event = OrderEvent.deserialize(data);
+        assertTrue(event instanceof UpdateOrderEvent);
+        assertEquals(OrderEvent.TYPE_UPDATED, event.getType());
+        assertEquals(1234L, event.getTimestampMillis());
+        assertEquals("1", event.getVersion());
+        assertEquals(order, event.getPayload());
+
+        // JSON values are still read from the same topic
+        OrderEvent json = OrderEvent.deserialize(OrderEvent.serialize(event, EventFormat.JSON));
+        assertEquals(order, json.getPayload());
+    }
+
+    /**
+     * The order layout is shared with the query service: EventDeserializationTest in the query
+     * service decodes the same bytes, both tests change together with EventBinary.FORMAT_VERSION.
+     */
+    @Test
+    public void testBinaryWireFormat() {
+        Address addr = new Address("myStreet", "myCity", "myCountry", "myState", "myZipcode");
+        Order created = new Order("orderID", "productId", "custId", 2, addr, "2019-01-10T13:30Z", null,
+                "2019-01-10T13:30Z", "pending");
+        byte[] data = OrderEvent.serialize(new CreateOrderEvent(1234L, "1", created), EventFormat.BINARY);
+        assertEquals(BINARY_ORDER_CREATED, Base64.getEncoder().encodeToString(data));
+    }
+
+    static final String BINARY_ORDER_CREATED = "AAIADE9yZGVyQ3JlYXRlZAAAAAAAAATSAQABMQEBAAdvcmRlcklEAQAJcHJvZHVjdElkAQAGY3VzdElkAAAAAgEBAAhteVN0cmVldAEABm15Q2l0eQEACW15Q291bnRyeQEAB215U3RhdGUBAAlteVppcGNvZGUBABEyMDE5LTAxLTEwVDEzOjMwWgABABEyMDE5LTAxLTEwVDEzOjMwWgEAB3BlbmRpbmcAAA==";
+
+}
@@ -0,0 +1,42 @@
+package ibm.labs.kc.order.command.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import ibm.labs.kc.order.command.dao.OrderDAOMock;
+import ibm.labs.kc.order.command.model.Order;
+import ibm.labs.kc.order.command.model.events.CreateOrderEvent;
+import ibm.labs.kc.order.command.model.events.Event;
+import ibm.labs.kc.order.command.model.events.UpdateOrderEvent;
+
+public class OrderAdminServiceTest {
+
+    @Test
+    public void testUpdateOfUnknownOrderFailsAlone() {
+        String known = UUID.randomUUID().toString();
+        String unknown = UUID.randomUUID().toString();
+        CreateOrderEvent created = new CreateOrderEvent(1L, "1", new Order(known, "productID", "customerID", 1,
+                null, null, null, null, Order.PENDING_STATUS));
+        UpdateOrderEvent update1 = new UpdateOrderEvent(2L, "1", new Order(unknown, null, null, 3,
+                null, null, null, null, null));
+        UpdateOrderEvent update2 = new UpdateOrderEvent(3L, "1", new Order(unknown, null, null, 4,
+                null, null, null, null, null));
+        UpdateOrderEvent knownUpdate = new UpdateOrderEvent(4L, "1", new Order(known, null, null, 5,
+                null, null, null, null, null));
+        List<Event> failed = new ArrayList<>();
+
+        new OrderAdminService().handleBatch(Arrays.asList(created, update1, update2, knownUpdate),
+                (event, e) -> failed.add(event));
+
+        // the two updates of the unknown order are merged, both are reported
+        assertEquals(Arrays.asList(update1, update2), failed);
+        assertEquals(5, OrderDAOMock.instance().getByID(known).get().getQuantity());
+    }
+
+}
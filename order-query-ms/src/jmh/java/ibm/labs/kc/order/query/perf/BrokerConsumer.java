@@ -0,0 +1,110 @@
+package ibm.labs.kc.order.query.perf;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * MockConsumer reading one topic of the in-memory broker. Like KafkaConsumer, poll() waits for
+ * new records on the assigned partitions and returns at most MAX_POLL_RECORDS of them.
+ *
+ * The harness runs a single member per consumer group: subscribing assigns all the partitions
+ * of the topic on the next poll.
+ */
+class BrokerConsumer extends MockConsumer<String, byte[]> {
+
+    static final int MAX_POLL_RECORDS = 500;
+
+    private final InMemoryBroker broker;
+    private final List<TopicPartition> partitions = new ArrayList<>();
+    // next offset to copy from the broker, ahead of the position until the records are polled
+    private final Map<TopicPartition, Long> fetched = new HashMap<>();
+    private int nextPartition;
+
+    BrokerConsumer(InMemoryBroker broker, String topic) {
+        super(OffsetResetStrategy.EARLIEST);
+        this.broker = broker;
+
+        List<PartitionInfo> infos = new ArrayList<>();
+        Map<TopicPartition, Long> beginning = new HashMap<>();
+        Map<TopicPartition, Long> end = new HashMap<>();
+        for (int i = 0; i < broker.partitions(); i++) {
+            TopicPartition partition = new TopicPartition(topic, i);
+            partitions.add(partition);
+            infos.add(new PartitionInfo(topic, i, null, null, null));
+            beginning.put(partition, 0L);
+            end.put(partition, broker.endOffset(partition));
+        }
+        updatePartitions(topic, infos);
+        updateBeginningOffsets(beginning);
+        updateEndOffsets(end);
+    }
+
+    @Override
+    public ConsumerRecords<String, byte[]> poll(Duration timeout) {
+        if (!subscription().isEmpty() && assignment().isEmpty()) {
+            rebalance(partitions);
+        }
+
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            if (assignment().contains(partition) && !paused().contains(partition)) {
+                offsets.put(partition, Math.max(position(partition), fetched.getOrDefault(partition, 0L)));
+            }
+        }
+        try {
+            broker.await(offsets, timeout.toMillis());
+        } catch (InterruptedException e) {
+            // the event loop is being stopped, it exits on the next check of its running flag
+            Thread.currentThread().interrupt();
+            return ConsumerRecords.empty();
+        }
+
+        // start from a different partition on each poll, so none is starved when the consumer lags
+        int room = MAX_POLL_RECORDS;
+        for (int i = 0; i < partitions.size() && room > 0; i++) {
+            TopicPartition partition = partitions.get((nextPartition + i) % partitions.size());
+            Long offset = offsets.get(partition);
+            if (offset == null) {
+                continue;
+            }
+            List<ConsumerRecord<String, byte[]>> records = broker.fetch(partition, offset, room);
+            for (ConsumerRecord<String, byte[]> rec : records) {
+                addRecord(rec);
+            }
+            if (!records.isEmpty()) {
+                fetched.put(partition, offset + records.size());
+                room -= records.size();
+            }
+        }
+        nextPartition = (nextPartition + 1) % partitions.size();
+        return super.poll(Duration.ZERO);
+    }
+
+    /**
+     * Can be called while another thread polls
+     *
+     * @return the sum of the offsets committed on all the partitions
+     */
+    long committedTotal() {
+        long total = 0;
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata committed = committed(partition);
+            if (committed != null) {
+                total += committed.offset();
+            }
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,132 @@
+package ibm.labs.kc.order.query.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import ibm.labs.kc.order.query.model.Address;
+import ibm.labs.kc.order.query.model.Container;
+import ibm.labs.kc.order.query.model.Order;
+import ibm.labs.kc.order.query.model.events.ContainerAtLocationEvent;
+import ibm.labs.kc.order.query.model.events.ContainerEvent;
+import ibm.labs.kc.order.query.model.events.CreateOrderEvent;
+import ibm.labs.kc.order.query.model.events.EventFormat;
+import ibm.labs.kc.order.query.model.events.OrderEvent;
+
+/**
+ * Compares the single pass event deserialization with the former one, which parsed every
+ * record once into the base class to find its type and then again into the concrete class.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * The "layout" parameter selects records written by plain Gson (payload before type)
+ * or by the event adapter (type before payload). The binary benchmarks read the same events
+ * in the binary format, they do not depend on the layout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDeserializationBenchmark {
+
+    private static final Gson gson = new Gson();
+
+    @Param({ "payloadFirst", "headerFirst" })
+    public String layout;
+
+    private String createOrderJson;
+    private String containerAtLocationJson;
+    private byte[] createOrderBinary;
+    private byte[] containerAtLocationBinary;
+
+    @Setup
+    public void setup() {
+        Address pickup = new Address("1 Main Street", "Oakland", "USA", "CA", "94607");
+        Address destination = new Address("Kaiserstrasse 12", "Hamburg", "Germany", "HH", "20457");
+        Order order = new Order("a3d1c5e2-7c53-4b4e-9a0f-0d7d1f6b2c11", "FreshFoodItg", "GoodManuf", 10,
+                pickup, "2019-05-25T13:30Z", destination, "2019-06-25T13:30Z", Order.PENDING_STATUS);
+        Container container = new Container("c-0a9b8c7d", "itgtests-brand", "Reefer", 20,
+                37.8000, -122.2500, "atDock");
+
+        CreateOrderEvent createOrder = new CreateOrderEvent(System.currentTimeMillis(), "1", order);
+        ContainerAtLocationEvent containerAtLocation = new ContainerAtLocationEvent(System.currentTimeMillis(), "1",
+                container);
+        createOrderJson = layout(gson.toJson(createOrder));
+        containerAtLocationJson = layout(gson.toJson(containerAtLocation));
+        createOrderBinary = OrderEvent.serialize(createOrder, EventFormat.BINARY);
+        containerAtLocationBinary = ContainerEvent.serialize(containerAtLocation, EventFormat.BINARY);
+    }
+
+    private String layout(String json) {
+        if ("payloadFirst".equals(layout)) {
+            return json;
+        }
+        JsonObject source = gson.fromJson(json, JsonObject.class);
+        JsonObject headerFirst = new JsonObject();
+        for (String field : new String[] { "timestampMillis", "type", "version", "payload" }) {
+            JsonElement value = source.get(field);
+            if (value != null) {
+                headerFirst.add(field, value);
+            }
+        }
+        return gson.toJson(headerFirst);
+    }
+
+    @Benchmark
+    public OrderEvent createOrderDoubleParse() {
+        OrderEvent header = gson.fromJson(createOrderJson, OrderEvent.class);
+        switch (header.getType()) {
+        case OrderEvent.TYPE_CREATED:
+            return gson.fromJson(createOrderJson, CreateOrderEvent.class);
+        default:
+            return null;
+        }
+    }
+
+    @Benchmark
+    public OrderEvent createOrderSinglePass() {
+        return OrderEvent.deserialize(createOrderJson);
+    }
+
+    @Benchmark
+    public ContainerEvent containerAtLocationDoubleParse() {
+        ContainerEvent header = gson.fromJson(containerAtLocationJson, ContainerEvent.class);
+        switch (header.getType()) {
+        case ContainerEvent.TYPE_CONTAINER_AT_LOCATION:
+            return gson.fromJson(containerAtLocationJson, ContainerAtLocationEvent.class);
+        default:
+            return null;
+        }
+    }
+
+    @Benchmark
+    public ContainerEvent containerAtLocationSinglePass() {
+        return ContainerEvent.deserialize(containerAtLocationJson);
+    }
+
+    @Benchmark
+    public OrderEvent createOrderBinary() {
+        return OrderEvent.deserialize(createOrderBinary);
+    }
+
+    @Benchmark
+    public ContainerEvent containerAtLocationBinary() {
+        return ContainerEvent.deserialize(containerAtLocationBinary);
+    }
+
+}
@@ -0,0 +1,87 @@
+package ibm.labs.kc.order.query.perf;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ibm.labs.kc.order.query.action.OrderActionDAOImpl;
+import ibm.labs.kc.order.query.action.OrderActionService;
+import ibm.labs.kc.order.query.dao.OrderDAOMock;
+import ibm.labs.kc.order.query.model.events.ContainerAtLocationEvent;
+import ibm.labs.kc.order.query.model.events.UpdateOrderEvent;
+import ibm.labs.kc.order.query.service.QueryService;
+
+/**
+ * Application of one event by the query listeners, on DAOs holding an increasing number of orders.
+ *
+ * The listeners use the DAO singletons, each forked JVM fills them once. Every event gets a new
+ * timestamp so it is not dropped as a duplicate, the histories keep growing during the run
+ * as they do in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms16g", "-Xmx16g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn" })
+public class EventHandlerBenchmark {
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int orders;
+
+    private final AtomicLong timestampMillis = new AtomicLong(2_000_000_000_000L);
+    private QueryService queryService;
+    private OrderActionService orderActionService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        OrderFixtures.populate(OrderDAOMock.instance(), OrderActionDAOImpl.instance(), orders);
+        queryService = new QueryService();
+        orderActionService = new OrderActionService();
+    }
+
+    private int pendingOrder() {
+        int i;
+        do {
+            i = ThreadLocalRandom.current().nextInt(orders);
+        } while (!OrderFixtures.isPending(i));
+        return i;
+    }
+
+    private int orderWithContainer() {
+        int i = ThreadLocalRandom.current().nextInt(orders);
+        return i - i % OrderFixtures.CONTAINER_EVERY;
+    }
+
+    @Benchmark
+    public void queryServiceUpdate() {
+        queryService.handle(new UpdateOrderEvent(timestampMillis.incrementAndGet(), "1",
+                OrderFixtures.order(pendingOrder())), "order");
+    }
+
+    @Benchmark
+    public void orderActionServiceUpdate() {
+        orderActionService.handle(new UpdateOrderEvent(timestampMillis.incrementAndGet(), "1",
+                OrderFixtures.order(pendingOrder())), "order");
+    }
+
+    @Benchmark
+    public void orderActionServiceContainerAtLocation() {
+        orderActionService.handle(new ContainerAtLocationEvent(timestampMillis.incrementAndGet(), "1",
+                OrderFixtures.container(orderWithContainer())), "container");
+    }
+
+}
@@ -0,0 +1,112 @@
+package ibm.labs.kc.order.query.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Stand-in for the Kafka cluster of the load harness: one in-memory log per topic partition.
+ *
+ * Records are partitioned by the hash of their key, so the events of one order or one container
+ * stay in sequence on one partition as they do with the Kafka producer. Nothing is ever removed.
+ */
+class InMemoryBroker {
+
+    private final int partitions;
+    private final Map<String, List<List<ConsumerRecord<String, byte[]>>>> logs = new HashMap<>();
+    private long sent;
+
+    InMemoryBroker(int partitions, String... topics) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Partition count must be positive");
+        }
+        this.partitions = partitions;
+        for (String topic : topics) {
+            List<List<ConsumerRecord<String, byte[]>>> log = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                log.add(new ArrayList<>());
+            }
+            logs.put(topic, log);
+        }
+    }
+
+    int partitions() {
+        return partitions;
+    }
+
+    synchronized void send(String topic, String key, byte[] value, Headers headers) {
+        int partition = Math.floorMod(key.hashCode(), partitions);
+        List<ConsumerRecord<String, byte[]>> log = partitionLog(new TopicPartition(topic, partition));
+        ConsumerRecord<String, byte[]> rec = new ConsumerRecord<>(topic, partition, log.size(), key, value);
+        for (Header header : headers) {
+            rec.headers().add(header);
+        }
+        log.add(rec);
+        sent++;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of records sent to all the topics
+     */
+    synchronized long sent() {
+        return sent;
+    }
+
+    synchronized long endOffset(TopicPartition partition) {
+        return partitionLog(partition).size();
+    }
+
+    /**
+     * @return at most max records of the partition, from the given offset
+     */
+    synchronized List<ConsumerRecord<String, byte[]>> fetch(TopicPartition partition, long offset, int max) {
+        List<ConsumerRecord<String, byte[]>> log = partitionLog(partition);
+        if (offset >= log.size() || max <= 0) {
+            return Collections.emptyList();
+        }
+        int end = (int) Math.min(log.size(), offset + max);
+        return new ArrayList<>(log.subList((int) offset, end));
+    }
+
+    /**
+     * Waits until one of the partitions has a record at or after its offset, or the timeout expires.
+     *
+     * @param offsets next offset to fetch per partition
+     */
+    synchronized void await(Map<TopicPartition, Long> offsets, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!available(offsets)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return;
+            }
+            wait(remaining);
+        }
+    }
+
+    private boolean available(Map<TopicPartition, Long> offsets) {
+        for (Map.Entry<TopicPartition, Long> offset : offsets.entrySet()) {
+            if (partitionLog(offset.getKey()).size() > offset.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<ConsumerRecord<String, byte[]>> partitionLog(TopicPartition partition) {
+        List<List<ConsumerRecord<String, byte[]>>> log = logs.get(partition.topic());
+        if (log == null) {
+            throw new IllegalStateException("Unknown topic " + partition.topic());
+        }
+        return log.get(partition.partition());
+    }
+
+}
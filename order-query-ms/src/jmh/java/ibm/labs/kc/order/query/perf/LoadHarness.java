@@ -0,0 +1,299 @@
+package ibm.labs.kc.order.query.perf;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ibm.labs.kc.order.query.dao.OrderDAO;
+import ibm.labs.kc.order.query.dao.OrderDAOMock;
+import ibm.labs.kc.order.query.kafka.ApplicationConfig;
+import ibm.labs.kc.order.query.kafka.ContainerConsumer;
+import ibm.labs.kc.order.query.kafka.EventHeaders;
+import ibm.labs.kc.order.query.kafka.OrderConsumer;
+import ibm.labs.kc.order.query.model.ContainerAssignment;
+import ibm.labs.kc.order.query.model.Order;
+import ibm.labs.kc.order.query.model.events.AssignContainerEvent;
+import ibm.labs.kc.order.query.model.events.ContainerAddedEvent;
+import ibm.labs.kc.order.query.model.events.ContainerAtLocationEvent;
+import ibm.labs.kc.order.query.model.events.ContainerEvent;
+import ibm.labs.kc.order.query.model.events.CreateOrderEvent;
+import ibm.labs.kc.order.query.model.events.Event;
+import ibm.labs.kc.order.query.model.events.EventEmitter;
+import ibm.labs.kc.order.query.model.events.EventFormat;
+import ibm.labs.kc.order.query.model.events.OrderEvent;
+import ibm.labs.kc.order.query.service.EventLoop;
+
+/**
+ * End to end load test of the command to query path, without a Kafka cluster.
+ *
+ * Orders are created as POST /orders does it and sent, with container events, at fixed rates to an
+ * in-memory broker. The query EventLoop consumes it through its usual consumers and worker lanes.
+ * A reader looks each new order up in the query DAO, as GET /orders/{id} does, which gives the
+ * create to queryable latency. The sustained rate is the number of events committed by the loop.
+ * One order in OrderFixtures.CONTAINER_EVERY gets a container, moved around by the container events.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec@load -Dload.args="--orders-per-sec 2000 --duration-sec 60"
+ * Options: --orders-per-sec, --container-events-per-sec, --duration-sec, --warmup-sec, --partitions,
+ * --format json|binary for the record values of both topics.
+ * The number of worker lanes comes from CONSUMER_WORKERS, as in the deployed service.
+ */
+public class LoadHarness {
+
+    private static final long DRAIN_TIMEOUT_MS = 60_000;
+
+    private int ordersPerSec = 1000;
+    private int containerEventsPerSec = 1000;
+    private int durationSec = 60;
+    private int warmupSec = 10;
+    private int partitions = 8;
+    private EventFormat format = EventFormat.JSON;
+
+    private InMemoryBroker broker;
+    private final List<BrokerConsumer> mainConsumers = new ArrayList<>();
+    private final AtomicLong errors = new AtomicLong();
+
+    // creation time of the orders not yet found in the query DAO
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    // containers added so far, only the sending thread uses it
+    private int containers;
+    private volatile long measureFromNanos = Long.MAX_VALUE;
+    private final List<Long> latencies = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadHarness harness = new LoadHarness();
+        harness.parse(args);
+        harness.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            if ("--format".equals(args[i])) {
+                format = EventFormat.of(args[++i]);
+                continue;
+            }
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+            case "--orders-per-sec":
+                ordersPerSec = value;
+                break;
+            case "--container-events-per-sec":
+                containerEventsPerSec = value;
+                break;
+            case "--duration-sec":
+                durationSec = value;
+                break;
+            case "--warmup-sec":
+                warmupSec = value;
+                break;
+            case "--partitions":
+                partitions = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i] + ", see " + LoadHarness.class.getName());
+            }
+            i++;
+        }
+    }
+
+    private void run() throws InterruptedException {
+        PrintStream report = System.out;
+
+        broker = new InMemoryBroker(partitions, ApplicationConfig.ORDER_TOPIC, ApplicationConfig.CONTAINER_TOPIC);
+        EventLoop loop = new EventLoop(
+                () -> new OrderConsumer(mainConsumer(ApplicationConfig.ORDER_TOPIC),
+                        new BrokerConsumer(broker, ApplicationConfig.ORDER_TOPIC)),
+                () -> new ContainerConsumer(mainConsumer(ApplicationConfig.CONTAINER_TOPIC),
+                        new BrokerConsumer(broker, ApplicationConfig.CONTAINER_TOPIC)),
+                ErrorCounter::new);
+        loop.start();
+
+        Thread reader = new Thread(this::readOrders, "load-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        report.println("Sending " + ordersPerSec + " orders/s and " + containerEventsPerSec
+                + " container events/s for " + durationSec + "s, " + warmupSec + "s of warmup, "
+                + partitions + " partitions, " + format + " format");
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSec);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSec);
+        long ordersSent = 0;
+        long containerEventsSent = 0;
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        long lastSent = 0;
+        long lastApplied = 0;
+        long appliedAtMeasureFrom = -1;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            if (appliedAtMeasureFrom < 0 && now >= measureFrom) {
+                measureFromNanos = measureFrom;
+                appliedAtMeasureFrom = applied();
+            }
+            double elapsedSec = (now - start) / 1e9;
+            // open loop: catch up with the schedule whatever the consumers do
+            for (; ordersSent < (long) (elapsedSec * ordersPerSec); ordersSent++) {
+                createOrder((int) ordersSent);
+            }
+            for (; containerEventsSent < (long) (elapsedSec * containerEventsPerSec); containerEventsSent++) {
+                moveContainer();
+            }
+            if (now >= nextReport) {
+                long sent = broker.sent();
+                long applied = applied();
+                report.println(String.format("%4ds sent %7d/s applied %7d/s backlog %7d pending orders %6d",
+                        TimeUnit.NANOSECONDS.toSeconds(now - start), sent - lastSent, applied - lastApplied,
+                        sent - applied, pending.size()));
+                lastSent = sent;
+                lastApplied = applied;
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        long appliedAtEnd = applied();
+        long sentAtEnd = broker.sent();
+
+        long drainStart = System.nanoTime();
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while ((applied() < sentAtEnd || !pending.isEmpty()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        long drainMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart);
+        long appliedAfterDrain = applied();
+        loop.stop();
+
+        report.println();
+        report.println(String.format("Sustained rate    %.0f events/s applied over %ds (%d events sent)",
+                (appliedAtEnd - appliedAtMeasureFrom) / (double) durationSec, durationSec, sentAtEnd));
+        report.println(String.format("Backlog at end    %d events, drained in %dms%s", sentAtEnd - appliedAtEnd,
+                drainMs, appliedAfterDrain < sentAtEnd ? " (NOT DRAINED)" : ""));
+        report.println("Handler errors    " + errors.get());
+        reportLatencies(report);
+    }
+
+    private BrokerConsumer mainConsumer(String topic) {
+        BrokerConsumer consumer = new BrokerConsumer(broker, topic);
+        synchronized (mainConsumers) {
+            mainConsumers.add(consumer);
+        }
+        return consumer;
+    }
+
+    /**
+     * @return the number of events applied and committed by the event loop
+     */
+    private long applied() {
+        long applied = 0;
+        synchronized (mainConsumers) {
+            for (BrokerConsumer consumer : mainConsumers) {
+                applied += consumer.committedTotal();
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Same order and event as OrderCRUDService.create() of the command service
+     */
+    private void createOrder(int i) {
+        Order order = OrderFixtures.order(i);
+        order.setStatus(Order.PENDING_STATUS);
+        pending.put(order.getOrderID(), System.nanoTime());
+        send(new CreateOrderEvent(System.currentTimeMillis(), "1", order));
+
+        if (OrderFixtures.hasContainer(i)) {
+            String containerID = OrderFixtures.containerID(containers);
+            send(new ContainerAddedEvent(System.currentTimeMillis(), "1", OrderFixtures.container(containers)));
+            send(new AssignContainerEvent(System.currentTimeMillis(), "1",
+                    new ContainerAssignment(order.getOrderID(), containerID)));
+            containers++;
+        }
+    }
+
+    private void moveContainer() {
+        if (containers == 0) {
+            return;
+        }
+        int i = ThreadLocalRandom.current().nextInt(containers);
+        send(new ContainerAtLocationEvent(System.currentTimeMillis(), "1", OrderFixtures.container(i)));
+    }
+
+    /**
+     * Same key and headers as OrderProducer
+     */
+    private void send(OrderEvent event) {
+        broker.send(ApplicationConfig.ORDER_TOPIC, event.getOrderID(), OrderEvent.serialize(event, format),
+                EventHeaders.of(event));
+    }
+
+    private void send(ContainerEvent event) {
+        broker.send(ApplicationConfig.CONTAINER_TOPIC, event.getContainerID(), ContainerEvent.serialize(event, format),
+                EventHeaders.of(event));
+    }
+
+    /**
+     * Looks up the pending orders until the query service knows them
+     */
+    private void readOrders() {
+        OrderDAO orderDAO = OrderDAOMock.instance();
+        while (true) {
+            for (Map.Entry<String, Long> order : pending.entrySet()) {
+                if (orderDAO.getById(order.getKey()).isPresent()) {
+                    long now = System.nanoTime();
+                    pending.remove(order.getKey());
+                    if (order.getValue() >= measureFromNanos) {
+                        synchronized (latencies) {
+                            latencies.add(now - order.getValue());
+                        }
+                    }
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    private void reportLatencies(PrintStream report) {
+        long[] sorted;
+        synchronized (latencies) {
+            sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        }
+        if (sorted.length == 0) {
+            report.println("Create to query   no order measured");
+            return;
+        }
+        Arrays.sort(sorted);
+        StringBuilder line = new StringBuilder("Create to query   ").append(sorted.length).append(" orders, ms:");
+        for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            line.append(String.format(" p%s=%.2f", percentile == 99.9 ? "99.9" : String.valueOf((int) percentile),
+                    sorted[Math.max(index, 0)] / 1e6));
+        }
+        line.append(String.format(" max=%.2f", sorted[sorted.length - 1] / 1e6));
+        report.println(line);
+    }
+
+    /**
+     * Counts the events the listeners failed to apply, instead of sending them to the error topic
+     */
+    private class ErrorCounter implements EventEmitter {
+
+        @Override
+        public void emit(Event event) {
+            errors.incrementAndGet();
+        }
+
+        @Override
+        public void safeClose() {
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package ibm.labs.kc.order.query.perf;
+
+import ibm.labs.kc.order.query.action.OrderAction;
+import ibm.labs.kc.order.query.action.OrderActionDAO;
+import ibm.labs.kc.order.query.action.OrderActionInfo;
+import ibm.labs.kc.order.query.dao.OrderDAO;
+import ibm.labs.kc.order.query.dao.QueryOrder;
+import ibm.labs.kc.order.query.model.Address;
+import ibm.labs.kc.order.query.model.Container;
+import ibm.labs.kc.order.query.model.ContainerAssignment;
+import ibm.labs.kc.order.query.model.Order;
+import ibm.labs.kc.order.query.model.events.ContainerEvent;
+import ibm.labs.kc.order.query.model.events.OrderEvent;
+
+/**
+ * Deterministic data set shared by the benchmarks: order i belongs to one of CUSTOMERS customers,
+ * one order in REJECTED_EVERY is rejected, the others are pending, and one order in
+ * CONTAINER_EVERY has a container with a short history.
+ */
+final class OrderFixtures {
+
+    static final int CUSTOMERS = 1000;
+    static final int REJECTED_EVERY = 100;
+    static final int CONTAINER_EVERY = 10;
+
+    private static final Address PICKUP = new Address("1 Main Street", "Oakland", "USA", "CA", "94607");
+    private static final Address DESTINATION = new Address("Kaiserstrasse 12", "Hamburg", "Germany", "HH", "20457");
+
+    private OrderFixtures() {
+    }
+
+    static String orderID(int i) {
+        return "order-" + i;
+    }
+
+    static String customerID(int i) {
+        return "customer-" + (i % CUSTOMERS);
+    }
+
+    static String containerID(int i) {
+        return "container-" + i;
+    }
+
+    static boolean isPending(int i) {
+        return i % REJECTED_EVERY != 0;
+    }
+
+    static boolean hasContainer(int i) {
+        return i % CONTAINER_EVERY == 0;
+    }
+
+    static Order order(int i) {
+        return new Order(orderID(i), "FreshFoodItg", customerID(i), 10, PICKUP, "2019-05-25T13:30Z",
+                DESTINATION, "2019-06-25T13:30Z", isPending(i) ? Order.PENDING_STATUS : Order.REJECTED_STATUS);
+    }
+
+    static Container container(int i) {
+        return new Container(containerID(i), "itgtests-brand", "Reefer", 20, 37.8000, -122.2500, "atDock");
+    }
+
+    /**
+     * Adds the orders and their actions directly to the DAOs, without going through the event handlers.
+     */
+    static void populate(OrderDAO orderDAO, OrderActionDAO orderActionDAO, int orders) {
+        long timestampMillis = 1_500_000_000_000L;
+        for (int i = 0; i < orders; i++) {
+            Order order = order(i);
+            orderDAO.add(QueryOrder.newFromOrder(order));
+
+            OrderActionInfo orderInfo = OrderActionInfo.newFromOrder(order);
+            OrderAction created = OrderAction.newFromOrder(orderInfo, timestampMillis++, OrderEvent.TYPE_CREATED);
+            orderActionDAO.addOrder(created);
+            orderActionDAO.orderHistory(created);
+
+            if (hasContainer(i)) {
+                OrderActionInfo containerInfo = OrderActionInfo.newFromContainer(container(i));
+                OrderAction added = OrderAction.newFromContainer(containerInfo, timestampMillis++,
+                        ContainerEvent.TYPE_CONTAINER_ADDED);
+                orderActionDAO.addContainer(added);
+                orderActionDAO.containerHistory(added);
+
+                orderInfo.assignContainer(new ContainerAssignment(orderID(i), containerID(i)));
+                OrderAction allocated = OrderAction.newFromOrder(orderInfo, timestampMillis++,
+                        OrderEvent.TYPE_CONTAINER_ALLOCATED);
+                orderActionDAO.updateOrder(allocated);
+                orderActionDAO.orderHistory(allocated);
+
+                OrderAction atLocation = OrderAction.newFromContainer(containerInfo, timestampMillis++,
+                        ContainerEvent.TYPE_CONTAINER_AT_LOCATION);
+                orderActionDAO.updateContainer(atLocation);
+                orderActionDAO.containerHistory(atLocation);
+            }
+        }
+    }
+
+}
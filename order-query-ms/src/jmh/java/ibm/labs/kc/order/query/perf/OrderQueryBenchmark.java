@@ -0,0 +1,67 @@
+package ibm.labs.kc.order.query.perf;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ibm.labs.kc.order.query.action.OrderAction;
+import ibm.labs.kc.order.query.action.OrderActionDAOImpl;
+import ibm.labs.kc.order.query.dao.OrderDAOMock;
+import ibm.labs.kc.order.query.dao.QueryOrder;
+import ibm.labs.kc.order.query.model.Order;
+
+/**
+ * Read paths of the query REST endpoints at increasing numbers of orders.
+ *
+ * getByStatus returns 1% of the orders, getByManuf 0.1%, getOrderStatus the history of one order,
+ * with a container for one order in ten. The 10M orders data set needs the 16 GB heap set below.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms16g", "-Xmx16g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn" })
+public class OrderQueryBenchmark {
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int orders;
+
+    private OrderDAOMock orderDAO;
+    private OrderActionDAOImpl orderActionDAO;
+
+    @Setup
+    public void setup() {
+        orderDAO = new OrderDAOMock();
+        orderActionDAO = new OrderActionDAOImpl();
+        OrderFixtures.populate(orderDAO, orderActionDAO, orders);
+    }
+
+    @Benchmark
+    public Collection<QueryOrder> getByStatus() {
+        return orderDAO.getByStatus(Order.REJECTED_STATUS);
+    }
+
+    @Benchmark
+    public Collection<QueryOrder> getByManuf() {
+        return orderDAO.getByManuf(OrderFixtures.customerID(ThreadLocalRandom.current().nextInt(orders)));
+    }
+
+    @Benchmark
+    public Collection<OrderAction> getOrderStatus() {
+        return orderActionDAO.getOrderStatus(OrderFixtures.orderID(ThreadLocalRandom.current().nextInt(orders)));
+    }
+
+}
@@ -1,6 +1,8 @@
 package ibm.labs.kc.order.query.action;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface OrderActionDAO {
@@ -14,5 +16,17 @@ public interface OrderActionDAO {
 	public void orderHistory(OrderAction orderAction);
 	public void containerHistory(OrderAction orderAction);
 	public Collection<OrderAction> getOrderStatus(String orderID);
+	// Increases with every action added to the result of getOrderStatus, read it before the history
+	public long getOrderStatusVersion(String orderID);
+	// The orders whose history includes the history of the container
+	public Collection<String> getOrdersOfContainer(String containerID);
+	
+	// Snapshot support, the history lists are in the order the actions were added
+	public Map<String, OrderAction> getOrderActions();
+	public Map<String, OrderAction> getContainerActions();
+	public List<OrderAction> getOrderHistory();
+	public List<OrderAction> getContainerHistory();
+	public void restore(Map<String, OrderAction> orderActions, Map<String, OrderAction> containerActions,
+			List<OrderAction> orderHistory, List<OrderAction> containerHistory);
 
 }
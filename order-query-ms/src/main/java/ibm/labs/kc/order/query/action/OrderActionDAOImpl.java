@@ -4,23 +4,73 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Current order and container actions, with their history.
+ *
+ * The history is kept twice: in the order the actions were added, for snapshots, and per order ID
+ * and per container ID, sorted by timestamp, so the history of one order is read without scanning
+ * the whole fleet.
+ */
 public class OrderActionDAOImpl implements OrderActionDAO{
 	
 	private static final Logger logger = LoggerFactory.getLogger(OrderActionDAOImpl.class);
 	
+	private static final String CONTAINER_ALLOCATED = "ContainerAllocated";
+	
+	/**
+	 * Idempotency key of a container history entry: the same action on the same container
+	 * at the same time is a redelivery of the same event.
+	 */
+	private static final class HistoryKey {
+		private final String containerID;
+		private final long timestampMillis;
+		private final String action;
+		
+		private HistoryKey(OrderAction orderAction) {
+			this.containerID = orderAction.getOrderActionItem().getContainerID();
+			this.timestampMillis = orderAction.getTimestampMillis();
+			this.action = orderAction.getAction();
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(containerID, timestampMillis, action);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof HistoryKey)) {
+				return false;
+			}
+			HistoryKey other = (HistoryKey) obj;
+			return timestampMillis == other.timestampMillis && Objects.equals(containerID, other.containerID)
+					&& Objects.equals(action, other.action);
+		}
+	}
+	
 	private final Map<String, OrderAction> orderEvents;
 	private final Map<String, OrderAction> containerEvents;
-	private ArrayList<OrderAction> orderHistory = new ArrayList<>();
-	private ArrayList<OrderAction> containerHistory = new ArrayList<>();
-	private ArrayList<OrderAction> ordHistory;
-	private ArrayList<OrderAction> contHistory;
+	// appended by the handlers of different orders and containers at the same time
+	private final List<OrderAction> orderHistory = Collections.synchronizedList(new ArrayList<>());
+	private final List<OrderAction> containerHistory = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, List<OrderAction>> orderHistoryById;
+	private final Map<String, List<OrderAction>> containerHistoryById;
+	private final Set<HistoryKey> containerHistoryKeys;
+	// the orders a container was allocated to
+	private final Map<String, Set<String>> ordersByContainer;
 	
 	private static OrderActionDAOImpl instance;
 
@@ -35,10 +85,12 @@ public class OrderActionDAOImpl implements OrderActionDAO{
     public OrderActionDAOImpl() {
     	
     	orderEvents = new ConcurrentHashMap<>();
-    	ordHistory = new ArrayList<>();
+    	orderHistoryById = new ConcurrentHashMap<>();
     	
     	containerEvents = new ConcurrentHashMap<>();
-    	contHistory = new ArrayList<>();
+    	containerHistoryById = new ConcurrentHashMap<>();
+    	containerHistoryKeys = ConcurrentHashMap.newKeySet();
+    	ordersByContainer = new ConcurrentHashMap<>();
     	
     }
 
@@ -108,7 +160,8 @@ public class OrderActionDAOImpl implements OrderActionDAO{
 				modifiedOrderAction.getAction(),modifiedOrderAction.getType());
 		
 		orderHistory.add(modifiedOrderAction);
-		ordHistory.add(modifiedOrderAction);
+		appendHistory(orderHistoryById, modifiedOrderAction.getOrderActionItem().getOrderID(), modifiedOrderAction);
+		indexAllocation(modifiedOrderAction);
     		
 	}
 	
@@ -126,51 +179,202 @@ public class OrderActionDAOImpl implements OrderActionDAO{
 		logger.info("Adding to container events history " + modifiedOrderAction.getOrderActionItem().getContainerID() + modifiedOrderAction.getTimestampMillis()+
 				modifiedOrderAction.getAction(),modifiedOrderAction.getType());
 		
-		if(!containerHistory.contains(modifiedOrderAction)){
+		// container events are delivered at least once, keep the first one
+		if(containerHistoryKeys.add(new HistoryKey(modifiedOrderAction))){
+			appendHistory(containerHistoryById, modifiedOrderAction.getOrderActionItem().getContainerID(), modifiedOrderAction);
 			containerHistory.add(modifiedOrderAction);
 		}
-		
-		if(!contHistory.contains(modifiedOrderAction)){
-			contHistory.add(modifiedOrderAction);
-		}
 			
 	}
 
 	// Getting the history based on the orderID
+	// The order actions and the actions of each allocated container are merged by timestamp,
+	// on equal timestamps the order actions come first then the containers in allocation order
 	@Override
 	public Collection<OrderAction> getOrderStatus(String orderID) {
-		ArrayList<OrderAction> result = new ArrayList<>();
-        for (OrderAction orderAction : orderHistory) {
-            if (orderID.equals(orderAction.getOrderActionItem().getOrderID())) {
-            	logger.info("Getting order status "+orderAction.getTimestampMillis() + orderAction.getAction() + orderAction.getType());
-            	OrderAction reqOrder = new OrderAction(orderAction.getTimestampMillis(), orderAction.getAction(), orderAction.getType());
-                result.add(reqOrder);
-                if(orderAction.getAction().equals("ContainerAllocated")){
-                	String containerID = orderAction.getOrderActionItem().getContainerID();
-                	System.out.println("I am geting called here");
-                	result.addAll(getContainerStatusforOrder(containerID));
-                }
-            }
-        }
-        Comparator<OrderAction> compareByTimeStamp = (OrderAction oa1, OrderAction oa2) ->
-        Long.compare(oa1.getTimestampMillis(), oa2.getTimestampMillis());
-        Collections.sort(result, compareByTimeStamp);
-        return Collections.unmodifiableCollection(result);
+		// the histories may grow while merged, merge copies
+		List<OrderAction> orderActions = historyOf(orderHistoryById, orderID);
+		List<List<OrderAction>> sources = new ArrayList<>();
+		sources.add(orderActions);
+		for (OrderAction orderAction : orderActions) {
+			if (CONTAINER_ALLOCATED.equals(orderAction.getAction())) {
+				sources.add(historyOf(containerHistoryById, orderAction.getOrderActionItem().getContainerID()));
+			}
+		}
+		List<OrderAction> result = merge(sources);
+		logger.info("Getting order status " + orderID + ": " + result.size() + " actions from " + sources.size() + " histories");
+		return Collections.unmodifiableCollection(result);
+	}
+	
+	// The histories only grow, the number of actions in the merged histories is their version
+	@Override
+	public long getOrderStatusVersion(String orderID) {
+		long version = 0;
+		for (OrderAction orderAction : historyOf(orderHistoryById, orderID)) {
+			version++;
+			if (CONTAINER_ALLOCATED.equals(orderAction.getAction())) {
+				version += sizeOf(containerHistoryById, orderAction.getOrderActionItem().getContainerID());
+			}
+		}
+		return version;
+	}
+	
+	@Override
+	public Collection<String> getOrdersOfContainer(String containerID) {
+		Set<String> orderIDs = containerID == null ? null : ordersByContainer.get(containerID);
+		return orderIDs == null ? Collections.emptySet() : Collections.unmodifiableSet(orderIDs);
+	}
+	
+	private void indexAllocation(OrderAction orderAction) {
+		String containerID = orderAction.getOrderActionItem().getContainerID();
+		if (CONTAINER_ALLOCATED.equals(orderAction.getAction()) && containerID != null) {
+			ordersByContainer.computeIfAbsent(containerID, k -> ConcurrentHashMap.newKeySet())
+					.add(orderAction.getOrderActionItem().getOrderID());
+		}
 	}
 	
 	// Getting the container details based on the containerID
 	public ArrayList<OrderAction> getContainerStatusforOrder(String containerID){
-		System.out.println("Entered the getcontstatus");
 		ArrayList<OrderAction> result = new ArrayList<>();
-		for(OrderAction oa: containerHistory){
-			if (containerID.equals(oa.getOrderActionItem().getContainerID())) {
-				logger.info("Getting container status "+oa.getTimestampMillis() + oa.getAction() + oa.getType());
-				OrderAction reqContainer = new OrderAction(oa.getTimestampMillis(), oa.getAction(), oa.getType());
-	            result.add(reqContainer);
+		for(OrderAction oa: historyOf(containerHistoryById, containerID)){
+			result.add(new OrderAction(oa.getTimestampMillis(), oa.getAction(), oa.getType()));
+		}
+		return result;
+	}
+	
+	/**
+	 * The history lists are only read or changed holding their monitor, readers get a copy.
+	 */
+	private static List<OrderAction> historyOf(Map<String, List<OrderAction>> histories, String key) {
+		List<OrderAction> history = key == null ? null : histories.get(key);
+		if (history == null) {
+			return Collections.emptyList();
+		}
+		synchronized (history) {
+			return new ArrayList<>(history);
+		}
+	}
+	
+	private static int sizeOf(Map<String, List<OrderAction>> histories, String key) {
+		List<OrderAction> history = key == null ? null : histories.get(key);
+		if (history == null) {
+			return 0;
+		}
+		synchronized (history) {
+			return history.size();
+		}
+	}
+	
+	/**
+	 * Inserts the action in the history of key, after the actions with the same or an earlier timestamp.
+	 * Actions mostly arrive in timestamp order, so this is an amortized constant time append.
+	 */
+	private static void appendHistory(Map<String, List<OrderAction>> histories, String key, OrderAction orderAction) {
+		if (key == null) {
+			return;
+		}
+		List<OrderAction> history = histories.computeIfAbsent(key, k -> new ArrayList<>());
+		synchronized (history) {
+			int i = history.size();
+			while (i > 0 && history.get(i - 1).getTimestampMillis() > orderAction.getTimestampMillis()) {
+				i--;
+			}
+			history.add(i, orderAction);
+		}
+	}
+	
+	/**
+	 * Builds the history of every key at once, each list sorted by timestamp once. The sort is stable,
+	 * the actions with the same timestamp stay in the order they were added, as with appendHistory.
+	 */
+	private static Map<String, List<OrderAction>> historiesBy(List<OrderAction> actions, Function<OrderAction, String> key) {
+		Map<String, List<OrderAction>> histories = new HashMap<>();
+		for (OrderAction orderAction : actions) {
+			String k = key.apply(orderAction);
+			if (k != null) {
+				histories.computeIfAbsent(k, x -> new ArrayList<>()).add(orderAction);
 			}
-    	}
+		}
+		for (List<OrderAction> history : histories.values()) {
+			history.sort(Comparator.comparingLong(OrderAction::getTimestampMillis));
+		}
+		return histories;
+	}
+	
+	/**
+	 * k-way merge of the histories, each sorted by timestamp. Equal timestamps keep the order of the sources.
+	 */
+	private static List<OrderAction> merge(List<List<OrderAction>> sources) {
+		int total = 0;
+		PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sources.size()), (h1, h2) -> {
+			int byTime = Long.compare(sources.get(h1[0]).get(h1[1]).getTimestampMillis(),
+					sources.get(h2[0]).get(h2[1]).getTimestampMillis());
+			return byTime != 0 ? byTime : Integer.compare(h1[0], h2[0]);
+		});
+		for (int s = 0; s < sources.size(); s++) {
+			total += sources.get(s).size();
+			if (!sources.get(s).isEmpty()) {
+				heads.add(new int[] { s, 0 });
+			}
+		}
+		List<OrderAction> result = new ArrayList<>(total);
+		while (!heads.isEmpty()) {
+			int[] head = heads.poll();
+			List<OrderAction> source = sources.get(head[0]);
+			OrderAction oa = source.get(head[1]);
+			result.add(new OrderAction(oa.getTimestampMillis(), oa.getAction(), oa.getType()));
+			if (++head[1] < source.size()) {
+				heads.add(head);
+			}
+		}
 		return result;
 	}
 
-}
+	@Override
+	public Map<String, OrderAction> getOrderActions() {
+		return Collections.unmodifiableMap(orderEvents);
+	}
+
+	@Override
+	public Map<String, OrderAction> getContainerActions() {
+		return Collections.unmodifiableMap(containerEvents);
+	}
 
+	@Override
+	public List<OrderAction> getOrderHistory() {
+		return Collections.unmodifiableList(orderHistory);
+	}
+
+	@Override
+	public List<OrderAction> getContainerHistory() {
+		return Collections.unmodifiableList(containerHistory);
+	}
+
+	// Restoring the state saved in a snapshot, replaces the current state
+	@Override
+	public void restore(Map<String, OrderAction> orderActions, Map<String, OrderAction> containerActions,
+			List<OrderAction> orderHistory, List<OrderAction> containerHistory) {
+		logger.info("Restoring " + orderActions.size() + " orders and " + containerActions.size() + " containers");
+		orderEvents.clear();
+		orderEvents.putAll(orderActions);
+		containerEvents.clear();
+		containerEvents.putAll(containerActions);
+		this.orderHistory.clear();
+		this.orderHistory.addAll(orderHistory);
+		this.containerHistory.clear();
+		this.containerHistory.addAll(containerHistory);
+		orderHistoryById.clear();
+		orderHistoryById.putAll(historiesBy(orderHistory, orderAction -> orderAction.getOrderActionItem().getOrderID()));
+		ordersByContainer.clear();
+		for (OrderAction orderAction : orderHistory) {
+			indexAllocation(orderAction);
+		}
+		containerHistoryById.clear();
+		containerHistoryById.putAll(historiesBy(containerHistory, orderAction -> orderAction.getOrderActionItem().getContainerID()));
+		containerHistoryKeys.clear();
+		for (OrderAction orderAction : containerHistory) {
+			containerHistoryKeys.add(new HistoryKey(orderAction));
+		}
+	}
+
+}
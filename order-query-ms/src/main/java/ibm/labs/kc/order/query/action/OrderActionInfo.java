@@ -273,6 +273,10 @@ public class OrderActionInfo {
 		this.voyageID = voyageID;
 	}
 
+	public void setReason(String reason) {
+		this.reason = reason;
+	}
+
 	public String getBrand() {
 		return brand;
 	}
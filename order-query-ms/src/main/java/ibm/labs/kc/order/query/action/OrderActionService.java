@@ -1,14 +1,21 @@
 package ibm.labs.kc.order.query.action;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
@@ -18,11 +25,12 @@ import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-
+import ibm.labs.kc.order.query.dao.StripedLocks;
 import ibm.labs.kc.order.query.model.Order;
 import ibm.labs.kc.order.query.model.events.Event;
+import ibm.labs.kc.order.query.model.events.EventBatches;
 import ibm.labs.kc.order.query.model.events.EventListener;
+import ibm.labs.kc.order.query.model.events.EventTracer;
 import ibm.labs.kc.order.query.model.events.OrderEvent;
 import ibm.labs.kc.order.query.model.Cancellation;
 import ibm.labs.kc.order.query.model.Container;
@@ -51,16 +59,26 @@ import ibm.labs.kc.order.query.model.events.CreateOrderEvent;
 import ibm.labs.kc.order.query.model.events.OrderCompletedEvent;
 import ibm.labs.kc.order.query.model.events.RejectOrderEvent;
 import ibm.labs.kc.order.query.model.events.UpdateOrderEvent;
+import ibm.labs.kc.order.query.rest.ETags;
+import ibm.labs.kc.order.query.service.OrderChange;
+import ibm.labs.kc.order.query.service.OrderChangeNotifier;
 
 @Path("orders")
 public class OrderActionService implements EventListener{
 	
 	static final Logger logger = LoggerFactory.getLogger(OrderActionService.class);
+	// shared by all the instances, events of different orders or containers are applied in parallel
+	private static final StripedLocks orderLocks = new StripedLocks();
+	private static final StripedLocks containerLocks = new StripedLocks();
 
     private OrderActionDAO orderActionDAO;
+    private EventTracer tracer;
+    private OrderChangeNotifier notifier;
 
     public OrderActionService() {
     	orderActionDAO = OrderActionDAOImpl.instance();
+    	tracer = EventTracer.instance();
+    	notifier = OrderChangeNotifier.instance();
     }
 	
 	@GET
@@ -68,410 +86,460 @@ public class OrderActionService implements EventListener{
     @Produces(MediaType.APPLICATION_JSON)
     @Operation(summary = "Order history by order ID", description = "")
     @APIResponses(value = {
+            @APIResponse(responseCode = "304", description = "Order history not modified since the If-None-Match ETag"),
             @APIResponse(responseCode = "200", description = "Order history found", content = @Content(mediaType = "application/json")) })
-    public Response getOrderHistory(@PathParam("orderId") String orderId) {
+    public Response getOrderHistory(@PathParam("orderId") String orderId, @Context Request request) {
         logger.info("OrderActionService.getOrderHistory(" + orderId + ")");
+        // the version is read first, an action added in between only makes the tag older than the history
+        EntityTag tag = ETags.of(orderActionDAO.getOrderStatusVersion(orderId));
+        ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
         Collection<OrderAction> orderAction = orderActionDAO.getOrderStatus(orderId);
-        return Response.ok(orderAction, MediaType.APPLICATION_JSON).build();
+        return Response.ok(orderAction, MediaType.APPLICATION_JSON).tag(tag).build();
     }
 
 	@Override
 	public void handle(Event event, String event_type) {
+		try {
+			apply(event, event_type);
+		} catch (Exception e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * The events of each order or container are applied holding its lock once, in sequence:
+	 * every event is an entry of the history. The lock blocks of apply() then only re-enter the monitor held.
+	 */
+	@Override
+	public void handleBatch(List<? extends Event> events, String event_type, BiConsumer<Event, Exception> failed) {
+		boolean orders = "order".equals(event_type);
+		StripedLocks locks = orders ? orderLocks : containerLocks;
+		Map<String, List<Event>> groups = EventBatches.groupBy(events,
+				event -> orders ? ((OrderEvent) event).getOrderID() : ((ContainerEvent) event).getContainerID());
+		for (Map.Entry<String, List<Event>> group : groups.entrySet()) {
+			synchronized (locks.lockFor(group.getKey())) {
+				for (Event event : group.getValue()) {
+					try {
+						apply(event, event_type);
+					} catch (Exception e) {
+						failed.accept(event, e);
+					}
+				}
+			}
+		}
+	}
+
+	// throws when the event cannot be applied: handle() logs it, handleBatch() reports it
+	private void apply(Event event, String event_type) {
 		String orderID;
         Optional<OrderActionInfo> oqo;
         
         String containerID;
         Optional<OrderActionInfo> oqc;
         
-        try {
-        	if(event_type.equals("order")){
-        		OrderEvent orderEvent = (OrderEvent) event;
-                if(orderEvent!=null){
-                	System.out.println("@@@@ in handle order action handling order" + new Gson().toJson(orderEvent));
-                    switch (orderEvent.getType()) {
-                    case OrderEvent.TYPE_CREATED:
-                        synchronized (orderActionDAO) {
-                            Order o1 = ((CreateOrderEvent) orderEvent).getPayload();
-                            long timestampMillis = ((CreateOrderEvent) orderEvent).getTimestampMillis();
-                            String action = ((CreateOrderEvent) orderEvent).getType();
-                            OrderActionInfo orderActionItem = OrderActionInfo.newFromOrder(o1);
-                            OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                            orderActionDAO.addOrder(orderAction);
-                            orderActionDAO.orderHistory(orderAction);
-                        }
-                        break;
-                    case OrderEvent.TYPE_UPDATED:
-                        synchronized (orderActionDAO) {
-                            Order o2 = ((UpdateOrderEvent) orderEvent).getPayload();
-                            long timestampMillis = ((UpdateOrderEvent) orderEvent).getTimestampMillis();
-                            String action = ((UpdateOrderEvent) orderEvent).getType();
-                            orderID = o2.getOrderID();
-                            oqo = orderActionDAO.getByOrderId(orderID);
-                            if (oqo.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqo.get();
-                            	orderActionItem.update(o2);
-                            	OrderAction cqo = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateOrder(cqo);
-                            	orderActionDAO.orderHistory(cqo);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                            }
+        tracer.trace("OrderActionService/" + event_type, event);
+    	if(event_type.equals("order")){
+    		OrderEvent orderEvent = (OrderEvent) event;
+            if(orderEvent!=null){
+                Object lock = orderLocks.lockFor(orderEvent.getOrderID());
+                switch (orderEvent.getType()) {
+                case OrderEvent.TYPE_CREATED:
+                    synchronized (lock) {
+                        Order o1 = ((CreateOrderEvent) orderEvent).getPayload();
+                        long timestampMillis = ((CreateOrderEvent) orderEvent).getTimestampMillis();
+                        String action = ((CreateOrderEvent) orderEvent).getType();
+                        OrderActionInfo orderActionItem = OrderActionInfo.newFromOrder(o1);
+                        OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                        orderActionDAO.addOrder(orderAction);
+                        orderActionDAO.orderHistory(orderAction);
+                    }
+                    break;
+                case OrderEvent.TYPE_UPDATED:
+                    synchronized (lock) {
+                        Order o2 = ((UpdateOrderEvent) orderEvent).getPayload();
+                        long timestampMillis = ((UpdateOrderEvent) orderEvent).getTimestampMillis();
+                        String action = ((UpdateOrderEvent) orderEvent).getType();
+                        orderID = o2.getOrderID();
+                        oqo = orderActionDAO.getByOrderId(orderID);
+                        if (oqo.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqo.get();
+                        	orderActionItem.update(o2);
+                        	OrderAction cqo = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateOrder(cqo);
+                        	orderActionDAO.orderHistory(cqo);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                         }
-                        break;
-                    case OrderEvent.TYPE_ASSIGNED:
-                        synchronized (orderActionDAO) {
-                            VoyageAssignment voyageAssignment = ((AssignOrderEvent) orderEvent).getPayload();
-                            long timestampMillis = ((AssignOrderEvent) orderEvent).getTimestampMillis();
-                            String action = ((AssignOrderEvent) orderEvent).getType();
-                            orderID = voyageAssignment.getOrderID();
-                            oqo = orderActionDAO.getByOrderId(orderID);
-                            if (oqo.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqo.get();
-                            	orderActionItem.assign(voyageAssignment);
-                            	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                                orderActionDAO.updateOrder(orderAction);
-                                orderActionDAO.orderHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                            }
+                    }
+                    break;
+                case OrderEvent.TYPE_ASSIGNED:
+                    synchronized (lock) {
+                        VoyageAssignment voyageAssignment = ((AssignOrderEvent) orderEvent).getPayload();
+                        long timestampMillis = ((AssignOrderEvent) orderEvent).getTimestampMillis();
+                        String action = ((AssignOrderEvent) orderEvent).getType();
+                        orderID = voyageAssignment.getOrderID();
+                        oqo = orderActionDAO.getByOrderId(orderID);
+                        if (oqo.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqo.get();
+                        	orderActionItem.assign(voyageAssignment);
+                        	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                            orderActionDAO.updateOrder(orderAction);
+                            orderActionDAO.orderHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                         }
-                        break;
-                    case OrderEvent.TYPE_REJECTED:
-                        synchronized (orderActionDAO) {
-                            Rejection rejection = ((RejectOrderEvent) orderEvent).getPayload();
-                            long timestampMillis = ((RejectOrderEvent) orderEvent).getTimestampMillis();
-                            String action = ((RejectOrderEvent) orderEvent).getType();
-                            orderID = rejection.getOrderID();
-                            oqo = orderActionDAO.getByOrderId(orderID);
-                            if (oqo.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqo.get();
-                            	orderActionItem.reject(rejection);
-                            	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateOrder(orderAction);
-                            	orderActionDAO.orderHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                            }
+                    }
+                    break;
+                case OrderEvent.TYPE_REJECTED:
+                    synchronized (lock) {
+                        Rejection rejection = ((RejectOrderEvent) orderEvent).getPayload();
+                        long timestampMillis = ((RejectOrderEvent) orderEvent).getTimestampMillis();
+                        String action = ((RejectOrderEvent) orderEvent).getType();
+                        orderID = rejection.getOrderID();
+                        oqo = orderActionDAO.getByOrderId(orderID);
+                        if (oqo.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqo.get();
+                        	orderActionItem.reject(rejection);
+                        	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateOrder(orderAction);
+                        	orderActionDAO.orderHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                         }
-                        break;
-                    case OrderEvent.TYPE_CONTAINER_ALLOCATED:
-                        synchronized (orderActionDAO) {
-                        	ContainerAssignment container = ((AssignContainerEvent) orderEvent).getPayload();
-                        	long timestampMillis = ((AssignContainerEvent) orderEvent).getTimestampMillis();
-                        	String action = ((AssignContainerEvent) orderEvent).getType();
-                            orderID = container.getOrderID();
-                            oqo = orderActionDAO.getByOrderId(orderID);
-                            if (oqo.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqo.get();
-                            	orderActionItem.assignContainer(container);
-                            	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateOrder(orderAction);
-                            	orderActionDAO.orderHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                            }
+                    }
+                    break;
+                case OrderEvent.TYPE_CONTAINER_ALLOCATED:
+                    synchronized (lock) {
+                    	ContainerAssignment container = ((AssignContainerEvent) orderEvent).getPayload();
+                    	long timestampMillis = ((AssignContainerEvent) orderEvent).getTimestampMillis();
+                    	String action = ((AssignContainerEvent) orderEvent).getType();
+                        orderID = container.getOrderID();
+                        oqo = orderActionDAO.getByOrderId(orderID);
+                        if (oqo.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqo.get();
+                        	orderActionItem.assignContainer(container);
+                        	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateOrder(orderAction);
+                        	orderActionDAO.orderHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                         }
-                        break;
-                    case OrderEvent.TYPE_CONTAINER_DELIVERED:
-                        synchronized (orderActionDAO) {
-                        	ContainerAssignment container = ((ContainerDeliveredEvent) orderEvent).getPayload();
-                        	long timestampMillis = ((ContainerDeliveredEvent) orderEvent).getTimestampMillis();
-                        	String action = ((ContainerDeliveredEvent) orderEvent).getType();
-                            orderID = container.getOrderID();
-                            oqo = orderActionDAO.getByOrderId(orderID);
-                            if (oqo.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqo.get();
-                            	orderActionItem.containerDelivered(container);
-                            	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateOrder(orderAction);
-                            	orderActionDAO.orderHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                            }
+                    }
+                    break;
+                case OrderEvent.TYPE_CONTAINER_DELIVERED:
+                    synchronized (lock) {
+                    	ContainerAssignment container = ((ContainerDeliveredEvent) orderEvent).getPayload();
+                    	long timestampMillis = ((ContainerDeliveredEvent) orderEvent).getTimestampMillis();
+                    	String action = ((ContainerDeliveredEvent) orderEvent).getType();
+                        orderID = container.getOrderID();
+                        oqo = orderActionDAO.getByOrderId(orderID);
+                        if (oqo.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqo.get();
+                        	orderActionItem.containerDelivered(container);
+                        	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateOrder(orderAction);
+                        	orderActionDAO.orderHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                         }
-                        break;
-                    case OrderEvent.TYPE_CANCELLED:
-                        synchronized (orderActionDAO) {
-                            Cancellation cancellation = ((CancelOrderEvent) orderEvent).getPayload();
-                            long timestampMillis = ((CancelOrderEvent) orderEvent).getTimestampMillis();
-                            String action = ((CancelOrderEvent) orderEvent).getType();
-                            orderID = cancellation.getOrderID();
-                            oqo = orderActionDAO.getByOrderId(orderID);
-                            if (oqo.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqo.get();
-                            	orderActionItem.cancel(cancellation);
-                            	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateOrder(orderAction);
-                            	orderActionDAO.orderHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                            }
+                    }
+                    break;
+                case OrderEvent.TYPE_CANCELLED:
+                    synchronized (lock) {
+                        Cancellation cancellation = ((CancelOrderEvent) orderEvent).getPayload();
+                        long timestampMillis = ((CancelOrderEvent) orderEvent).getTimestampMillis();
+                        String action = ((CancelOrderEvent) orderEvent).getType();
+                        orderID = cancellation.getOrderID();
+                        oqo = orderActionDAO.getByOrderId(orderID);
+                        if (oqo.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqo.get();
+                        	orderActionItem.cancel(cancellation);
+                        	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateOrder(orderAction);
+                        	orderActionDAO.orderHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                         }
-                        break;
-                    case OrderEvent.TYPE_COMPLETED:
-                        synchronized (orderActionDAO) {
-                            Order order = ((OrderCompletedEvent) orderEvent).getPayload();
-                            long timestampMillis = ((OrderCompletedEvent) orderEvent).getTimestampMillis();
-                            String action = ((OrderCompletedEvent) orderEvent).getType();
-                            orderID = order.getOrderID();
-                            oqo = orderActionDAO.getByOrderId(orderID);
-                            if (oqo.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqo.get();
-                            	orderActionItem.orderCompleted(order);
-                            	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateOrder(orderAction);
-                            	orderActionDAO.orderHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                            }
+                    }
+                    break;
+                case OrderEvent.TYPE_COMPLETED:
+                    synchronized (lock) {
+                        Order order = ((OrderCompletedEvent) orderEvent).getPayload();
+                        long timestampMillis = ((OrderCompletedEvent) orderEvent).getTimestampMillis();
+                        String action = ((OrderCompletedEvent) orderEvent).getType();
+                        orderID = order.getOrderID();
+                        oqo = orderActionDAO.getByOrderId(orderID);
+                        if (oqo.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqo.get();
+                        	orderActionItem.orderCompleted(order);
+                        	OrderAction orderAction = OrderAction.newFromOrder(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateOrder(orderAction);
+                        	orderActionDAO.orderHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                         }
-                        break;
-                    default:
-                        logger.warn("Unknown event type: " + orderEvent);
                     }
+                    break;
+                default:
+                    logger.warn("Unknown event type: " + orderEvent);
+                    return;
                 }
-        	}
-        	else{
-        		ContainerEvent containerEvent = (ContainerEvent) event;
-                if(containerEvent!=null){
-                	System.out.println("@@@@ in handle container" + new Gson().toJson(containerEvent));
-                    switch (containerEvent.getType()) {
-                    case ContainerEvent.TYPE_CONTAINER_ADDED:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerAddedEvent) containerEvent).getPayload();
-                            long timestampMillis = ((ContainerAddedEvent) containerEvent).getTimestampMillis();
-                            String action = ((ContainerAddedEvent) containerEvent).getType();
-                            OrderActionInfo orderActionItem = OrderActionInfo.newFromContainer(container);
-                            OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            orderActionDAO.addContainer(orderAction);
-                            orderActionDAO.containerHistory(orderAction);
-                        }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_REMOVED:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerRemovedEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerRemovedEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerRemovedEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerRemoved(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                notifyChange(orderEvent.getOrderID(), orderEvent);
+            }
+    	}
+    	else{
+    		ContainerEvent containerEvent = (ContainerEvent) event;
+            if(containerEvent!=null){
+                Object lock = containerLocks.lockFor(containerEvent.getContainerID());
+                switch (containerEvent.getType()) {
+                case ContainerEvent.TYPE_CONTAINER_ADDED:
+                    synchronized (lock) {
+                    	Container container = ((ContainerAddedEvent) containerEvent).getPayload();
+                        long timestampMillis = ((ContainerAddedEvent) containerEvent).getTimestampMillis();
+                        String action = ((ContainerAddedEvent) containerEvent).getType();
+                        OrderActionInfo orderActionItem = OrderActionInfo.newFromContainer(container);
+                        OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        orderActionDAO.addContainer(orderAction);
+                        orderActionDAO.containerHistory(orderAction);
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_REMOVED:
+                    synchronized (lock) {
+                    	Container container = ((ContainerRemovedEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerRemovedEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerRemovedEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerRemoved(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_AT_LOCATION:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerAtLocationEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerAtLocationEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerAtLocationEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerAtLocation(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_AT_LOCATION:
+                    synchronized (lock) {
+                    	Container container = ((ContainerAtLocationEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerAtLocationEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerAtLocationEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerAtLocation(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_ON_MAINTENANCE:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOnMaintainanceEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOnMaintainanceEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOnMaintainanceEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOnMaintainance(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_ON_MAINTENANCE:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOnMaintainanceEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOnMaintainanceEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOnMaintainanceEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOnMaintainance(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_OFF_MAINTENANCE:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOffMaintainanceEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOffMaintainanceEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOffMaintainanceEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOffMaintainance(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_OFF_MAINTENANCE:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOffMaintainanceEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOffMaintainanceEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOffMaintainanceEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOffMaintainance(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_ORDER_ASSIGNED:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOrderAssignedEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOrderAssignedEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOrderAssignedEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOrderAssignment(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_ORDER_ASSIGNED:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOrderAssignedEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOrderAssignedEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOrderAssignedEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOrderAssignment(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_ORDER_RELEASED:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOrderReleasedEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOrderReleasedEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOrderReleasedEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOrderReleased(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_ORDER_RELEASED:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOrderReleasedEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOrderReleasedEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOrderReleasedEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOrderReleased(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_GOODS_LOADED:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerGoodsLoadedEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerGoodsLoadedEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerGoodsLoadedEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerGoodsLoaded(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_GOODS_LOADED:
+                    synchronized (lock) {
+                    	Container container = ((ContainerGoodsLoadedEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerGoodsLoadedEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerGoodsLoadedEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerGoodsLoaded(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_GOOD_UNLOADED:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerGoodsUnLoadedEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerGoodsUnLoadedEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerGoodsUnLoadedEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerGoodsUnloaded(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_GOOD_UNLOADED:
+                    synchronized (lock) {
+                    	Container container = ((ContainerGoodsUnLoadedEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerGoodsUnLoadedEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerGoodsUnLoadedEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerGoodsUnloaded(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_ON_SHIP:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOnShipEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOnShipEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOnShipEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOnShip(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_ON_SHIP:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOnShipEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOnShipEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOnShipEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOnShip(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_OFF_SHIP:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOffShipEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOffShipEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOffShipEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOffShip(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_OFF_SHIP:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOffShipEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOffShipEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOffShipEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOffShip(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_ON_TRUCK:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOnTruckEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOnTruckEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOnTruckEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOnTruck(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_ON_TRUCK:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOnTruckEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOnTruckEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOnTruckEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOnTruck(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    case ContainerEvent.TYPE_CONTAINER_OFF_TRUCK:
-                        synchronized (orderActionDAO) {
-                        	Container container = ((ContainerOffTruckEvent) containerEvent).getPayload();
-                        	long timestampMillis = ((ContainerOffTruckEvent) containerEvent).getTimestampMillis();
-                        	String action = ((ContainerOffTruckEvent) containerEvent).getType();
-                            containerID = container.getContainerID();
-                            oqc = orderActionDAO.getByContainerId(containerID);
-                            if (oqc.isPresent()) {
-                            	OrderActionInfo orderActionItem = oqc.get();
-                            	orderActionItem.containerOffTruck(container);
-                            	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
-                            	orderActionDAO.updateContainer(orderAction);
-                            	orderActionDAO.containerHistory(orderAction);
-                            } else {
-                                throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
-                            }
+                    }
+                    break;
+                case ContainerEvent.TYPE_CONTAINER_OFF_TRUCK:
+                    synchronized (lock) {
+                    	Container container = ((ContainerOffTruckEvent) containerEvent).getPayload();
+                    	long timestampMillis = ((ContainerOffTruckEvent) containerEvent).getTimestampMillis();
+                    	String action = ((ContainerOffTruckEvent) containerEvent).getType();
+                        containerID = container.getContainerID();
+                        oqc = orderActionDAO.getByContainerId(containerID);
+                        if (oqc.isPresent()) {
+                        	OrderActionInfo orderActionItem = oqc.get();
+                        	orderActionItem.containerOffTruck(container);
+                        	OrderAction orderAction = OrderAction.newFromContainer(orderActionItem, timestampMillis, action);
+                        	orderActionDAO.updateContainer(orderAction);
+                        	orderActionDAO.containerHistory(orderAction);
+                        } else {
+                            throw new IllegalStateException("Cannot update - Unknown order Id " + containerID);
                         }
-                        break;
-                    default:
-                        logger.warn("Unknown event type: " + containerEvent);
                     }
+                    break;
+                default:
+                    logger.warn("Unknown event type: " + containerEvent);
+                    return;
                 }
-        	}
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-        }
-		
+                for (String allocatedOrderID : orderActionDAO.getOrdersOfContainer(containerEvent.getContainerID())) {
+                	notifyChange(allocatedOrderID, containerEvent);
+                }
+            }
+    	}
+	}
+
+	// an action was added to the history of the order
+	private void notifyChange(String orderID, Event event) {
+		if (!notifier.hasSubscribers()) {
+			return;
+		}
+		String customerID = orderActionDAO.getByOrderId(orderID).map(OrderActionInfo::getCustomerID).orElse(null);
+		notifier.publish(OrderChange.ofHistory(orderID, customerID, orderActionDAO.getOrderStatusVersion(orderID), event));
 	}
 
 }
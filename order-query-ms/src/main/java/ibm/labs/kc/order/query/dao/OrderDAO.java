@@ -1,14 +1,37 @@
 package ibm.labs.kc.order.query.dao;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 
 public interface OrderDAO {
 
     public Optional<QueryOrder> getById(String orderId);
+    /**
+     * @return the known orders among orderIds, in the same order
+     */
+    public List<QueryOrder> getByIds(Collection<String> orderIds);
+    /**
+     * @return the version of the order, incremented by every update, 0 for an unknown order.
+     * Read it before the order: the order is then at least as recent as the version.
+     */
+    public long getVersion(String orderId);
     public void add(QueryOrder o);
     public void update(QueryOrder order);
     public Collection<QueryOrder> getByManuf(String manuf);
     public Collection<QueryOrder> getByStatus(String status);
+    /**
+     * @param after an order ID, null to start from the first order
+     * @return the orders of the manufacturer with a greater ID, by ascending ID, read as they are iterated
+     */
+    public Iterator<QueryOrder> iterateByManuf(String manuf, String after);
+    /**
+     * @param after an order ID, null to start from the first order
+     * @return the orders in the status with a greater ID, by ascending ID, read as they are iterated
+     */
+    public Iterator<QueryOrder> iterateByStatus(String status, String after);
+    public Collection<QueryOrder> getAll();
+    public void addAll(Collection<QueryOrder> orders);
     
 }
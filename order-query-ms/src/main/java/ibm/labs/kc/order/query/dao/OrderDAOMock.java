@@ -3,19 +3,45 @@ package ibm.labs.kc.order.query.dao;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * Orders kept in memory, with secondary indexes by customer ID and by status.
+ *
+ * The indexes are updated in the same atomic map operation as the order they reference.
+ * QueryOrder instances are updated in place, so the indexed values of each order are kept aside
+ * to know which entries to move on update(), with the version of the order.
+ */
 public class OrderDAOMock implements OrderDAO {
     private static final Logger logger = LoggerFactory.getLogger(OrderDAOMock.class);
 
+    private static class IndexedFields {
+        private final String customerID;
+        private final String status;
+        private final long version;
+
+        private IndexedFields(QueryOrder order, long version) {
+            this.customerID = order.getCustomerID();
+            this.status = order.getStatus();
+            this.version = version;
+        }
+    }
+
     private final Map<String, QueryOrder> orders;
+    private final Map<String, IndexedFields> indexedFields;
+    private final OrderIndex byCustomer;
+    private final OrderIndex byStatus;
 
     private static OrderDAOMock instance;
 
@@ -29,6 +55,9 @@ public class OrderDAOMock implements OrderDAO {
     // for testing
     public OrderDAOMock() {
         orders = new ConcurrentHashMap<>();
+        indexedFields = new ConcurrentHashMap<>();
+        byCustomer = new OrderIndex();
+        byStatus = new OrderIndex();
     }
 
     // Getting the order based on orderID
@@ -38,51 +67,114 @@ public class OrderDAOMock implements OrderDAO {
         return Optional.ofNullable(o);
     }
 
+    @Override
+    public List<QueryOrder> getByIds(Collection<String> orderIds) {
+        List<QueryOrder> result = new ArrayList<>(orderIds.size());
+        for (String orderId : orderIds) {
+            QueryOrder o = orderId == null ? null : orders.get(orderId);
+            if (o != null) {
+                result.add(o);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getVersion(String orderId) {
+        IndexedFields fields = orderId == null ? null : indexedFields.get(orderId);
+        return fields == null ? 0 : fields.version;
+    }
+
     // Storing the orders
     @Override
     public void add(QueryOrder order) {
         logger.info("Adding order id " + order.getOrderID());
-        if (orders.putIfAbsent(order.getOrderID(), order) != null) {
-            throw new IllegalStateException("order already exists " + order.getOrderID());
-        }
+        insert(order);
     }
 
     // Updating the orders based on the recent status
     @Override
     public void update(QueryOrder order) {
     	logger.info("Updating order id " + order.getOrderID());
-        if (orders.replace(order.getOrderID(), order) == null) {
-            throw new IllegalStateException("order does not already exist " + order.getOrderID());
-        }
+        orders.compute(order.getOrderID(), (orderID, existing) -> {
+            if (existing == null) {
+                throw new IllegalStateException("order does not already exist " + orderID);
+            }
+            IndexedFields previous = indexedFields.get(orderID);
+            indexedFields.put(orderID, new IndexedFields(order, previous == null ? 1 : previous.version + 1));
+            if (previous == null || !Objects.equals(previous.customerID, order.getCustomerID())) {
+                byCustomer.remove(previous == null ? null : previous.customerID, orderID);
+                byCustomer.add(order.getCustomerID(), orderID);
+            }
+            if (previous == null || !Objects.equals(previous.status, order.getStatus())) {
+                byStatus.remove(previous == null ? null : previous.status, orderID);
+                byStatus.add(order.getStatus(), orderID);
+            }
+            return order;
+        });
     }
 
     // Getting the order based on the Manufacturer
     @Override
     public Collection<QueryOrder> getByManuf(String manuf) {
-        // DEMO: check manuf against customerID
-        Collection<QueryOrder> result = new ArrayList<>();
-
-        // It's safe to iterate over the values even if modified concurrently
-        for (QueryOrder order : orders.values()) {
-            if (Objects.equals(manuf, order.getCustomerID())) {
-                result.add(order);
-            }
-        }
-        return Collections.unmodifiableCollection(result);
+        return collect(iterateByManuf(manuf, null));
     }
 
     // Getting the order based on the status
     @Override
     public Collection<QueryOrder> getByStatus(String status) {
+        return collect(iterateByStatus(status, null));
+    }
+
+    @Override
+    public Iterator<QueryOrder> iterateByManuf(String manuf, String after) {
+        // DEMO: check manuf against customerID
+        return lookup(byCustomer.get(manuf, after), order -> Objects.equals(manuf, order.getCustomerID()));
+    }
+
+    @Override
+    public Iterator<QueryOrder> iterateByStatus(String status, String after) {
+        return lookup(byStatus.get(status, after), order -> Objects.equals(status, order.getStatus()));
+    }
+
+    /**
+     * It's safe to iterate over the index even if modified concurrently,
+     * orders are checked again as they may be moving to another key
+     */
+    private Iterator<QueryOrder> lookup(Set<String> orderIDs, Predicate<QueryOrder> indexed) {
+        return orderIDs.stream().map(orders::get).filter(order -> order != null && indexed.test(order)).iterator();
+    }
+
+    private static Collection<QueryOrder> collect(Iterator<QueryOrder> orders) {
         Collection<QueryOrder> result = new ArrayList<>();
+        orders.forEachRemaining(result::add);
+        return Collections.unmodifiableCollection(result);
+    }
 
-        for (QueryOrder order : orders.values()) {
-        	logger.info("Getting by status "+order.getCustomerID()+" "+order.getOrderID()+" "+order.getStatus());
-            if (status.equals(order.getStatus())) {
-                result.add(order);
-            }
+    @Override
+    public Collection<QueryOrder> getAll() {
+        return Collections.unmodifiableCollection(orders.values());
+    }
+
+    // Storing the orders restored from a snapshot
+    @Override
+    public void addAll(Collection<QueryOrder> all) {
+        logger.info("Adding " + all.size() + " orders");
+        for (QueryOrder order : all) {
+            insert(order);
         }
-        return Collections.unmodifiableCollection(result);
+    }
+
+    private void insert(QueryOrder order) {
+        orders.compute(order.getOrderID(), (orderID, existing) -> {
+            if (existing != null) {
+                throw new IllegalStateException("order already exists " + orderID);
+            }
+            indexedFields.put(orderID, new IndexedFields(order, 1));
+            byCustomer.add(order.getCustomerID(), orderID);
+            byStatus.add(order.getStatus(), orderID);
+            return order;
+        });
     }
 
 }
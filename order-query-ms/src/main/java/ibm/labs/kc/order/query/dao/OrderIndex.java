@@ -0,0 +1,54 @@
+package ibm.labs.kc.order.query.dao;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Order IDs grouped by the value of one order field, such as the customer ID or the status.
+ * The owner keeps it in line with its orders, see OrderDAOMock.
+ * The IDs of one key are sorted, so the orders of a key can be read by pages of ascending ID.
+ */
+class OrderIndex {
+
+    private final Map<String, NavigableSet<String>> orderIDs = new ConcurrentHashMap<>();
+
+    void add(String key, String orderID) {
+        if (key == null) {
+            return;
+        }
+        orderIDs.compute(key, (k, ids) -> {
+            if (ids == null) {
+                ids = new ConcurrentSkipListSet<>();
+            }
+            ids.add(orderID);
+            return ids;
+        });
+    }
+
+    void remove(String key, String orderID) {
+        if (key == null) {
+            return;
+        }
+        orderIDs.computeIfPresent(key, (k, ids) -> {
+            ids.remove(orderID);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * @param after an order ID, null for all the IDs of the key
+     * @return a live view of the order IDs indexed under key greater than after, in ascending order,
+     * safe to iterate while modified
+     */
+    NavigableSet<String> get(String key, String after) {
+        NavigableSet<String> ids = key == null ? null : orderIDs.get(key);
+        if (ids == null) {
+            return Collections.emptyNavigableSet();
+        }
+        return Collections.unmodifiableNavigableSet(after == null ? ids : ids.tailSet(after, false));
+    }
+
+}
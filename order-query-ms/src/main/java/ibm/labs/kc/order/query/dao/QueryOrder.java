@@ -201,4 +201,8 @@ public class QueryOrder {
 	public void setVoyageID(String voyageID) {
 		this.voyageID = voyageID;
 	}
+
+	public void setReason(String reason) {
+		this.reason = reason;
+	}
 }
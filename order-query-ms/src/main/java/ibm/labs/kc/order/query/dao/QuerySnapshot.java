@@ -0,0 +1,416 @@
+package ibm.labs.kc.order.query.dao;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibm.labs.kc.order.query.action.OrderAction;
+import ibm.labs.kc.order.query.action.OrderActionDAO;
+import ibm.labs.kc.order.query.action.OrderActionInfo;
+import ibm.labs.kc.order.query.model.Address;
+
+/**
+ * Point in time copy of the query read models, the orders and the order actions with their history,
+ * with the offset of the next event to apply on each partition of each topic.
+ * Restoring a snapshot and replaying the topics from its offsets gives the same state
+ * as replaying the whole topics.
+ *
+ * The file is a binary format: magic, version, offsets, orders then order actions.
+ * The order action details shared between the current actions and the history are written once.
+ * The file is written to a temporary file then moved in place, and read through a memory mapping.
+ */
+public class QuerySnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(QuerySnapshot.class);
+
+    private static final int MAGIC = 0x4b435153;
+    private static final int VERSION = 1;
+
+    private final Map<String, Map<Integer, Long>> offsets;
+    private final Collection<QueryOrder> orders;
+    private final Map<String, OrderAction> orderActions;
+    private final Map<String, OrderAction> containerActions;
+    private final List<OrderAction> orderHistory;
+    private final List<OrderAction> containerHistory;
+
+    private QuerySnapshot(Map<String, Map<Integer, Long>> offsets, Collection<QueryOrder> orders,
+            Map<String, OrderAction> orderActions, Map<String, OrderAction> containerActions,
+            List<OrderAction> orderHistory, List<OrderAction> containerHistory) {
+        this.offsets = offsets;
+        this.orders = orders;
+        this.orderActions = orderActions;
+        this.containerActions = containerActions;
+        this.orderHistory = orderHistory;
+        this.containerHistory = containerHistory;
+    }
+
+    /**
+     * Copies the state, field by field since the handlers update the orders and the action details in place.
+     * Nothing may update the state during the copy, the copy can then be written while the events are applied.
+     *
+     * @param offsets next offset to apply per partition number, per topic
+     */
+    public static QuerySnapshot capture(Map<String, Map<Integer, Long>> offsets, OrderDAO orderDAO,
+            OrderActionDAO orderActionDAO) {
+        Map<String, Map<Integer, Long>> offsetsCopy = new HashMap<>();
+        for (Map.Entry<String, Map<Integer, Long>> topic : offsets.entrySet()) {
+            offsetsCopy.put(topic.getKey(), new HashMap<>(topic.getValue()));
+        }
+        Collection<QueryOrder> live = orderDAO.getAll();
+        List<QueryOrder> orders = new ArrayList<>(live.size());
+        for (QueryOrder order : live) {
+            orders.add(copyOf(order));
+        }
+        // the details shared between the actions and the history stay shared in the copy
+        Map<OrderActionInfo, OrderActionInfo> infos = new IdentityHashMap<>();
+        return new QuerySnapshot(offsetsCopy, orders,
+                copyOf(orderActionDAO.getOrderActions(), infos), copyOf(orderActionDAO.getContainerActions(), infos),
+                copyOf(orderActionDAO.getOrderHistory(), infos), copyOf(orderActionDAO.getContainerHistory(), infos));
+    }
+
+    /**
+     * @return next offset to apply per partition number, empty if the topic is unknown
+     */
+    public Map<Integer, Long> getOffsets(String topic) {
+        return Collections.unmodifiableMap(offsets.getOrDefault(topic, Collections.emptyMap()));
+    }
+
+    public void restore(OrderDAO orderDAO, OrderActionDAO orderActionDAO) {
+        orderDAO.addAll(orders);
+        orderActionDAO.restore(orderActions, containerActions, orderHistory, containerHistory);
+    }
+
+    public void writeTo(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(offsets.size());
+            for (Map.Entry<String, Map<Integer, Long>> topic : offsets.entrySet()) {
+                writeString(out, topic.getKey());
+                out.writeInt(topic.getValue().size());
+                for (Map.Entry<Integer, Long> offset : topic.getValue().entrySet()) {
+                    out.writeInt(offset.getKey());
+                    out.writeLong(offset.getValue());
+                }
+            }
+
+            out.writeInt(orders.size());
+            for (QueryOrder order : orders) {
+                writeOrder(out, order);
+            }
+
+            // each action detail once, then the actions refer to them by index
+            Map<OrderActionInfo, Integer> infos = new IdentityHashMap<>();
+            List<OrderActionInfo> infoList = new ArrayList<>();
+            for (Collection<OrderAction> actions : Arrays.asList(orderActions.values(), containerActions.values(),
+                    orderHistory, containerHistory)) {
+                for (OrderAction action : actions) {
+                    OrderActionInfo info = action.getOrderActionItem();
+                    if (info != null && !infos.containsKey(info)) {
+                        infos.put(info, infoList.size());
+                        infoList.add(info);
+                    }
+                }
+            }
+            out.writeInt(infoList.size());
+            for (OrderActionInfo info : infoList) {
+                writeInfo(out, info);
+            }
+            writeActions(out, orderActions, infos);
+            writeActions(out, containerActions, infos);
+            writeActions(out, orderHistory, infos);
+            writeActions(out, containerHistory, infos);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Snapshot of " + orders.size() + " orders written to " + file + " at offsets " + offsets);
+    }
+
+    /**
+     * @return the snapshot, empty when there is no snapshot file or when it cannot be read
+     */
+    public static Optional<QuerySnapshot> readFrom(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 8 || in.getInt() != MAGIC) {
+                logger.warn("Ignoring snapshot " + file + ": not a snapshot file");
+                return Optional.empty();
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                logger.warn("Ignoring snapshot " + file + ": unsupported version " + version);
+                return Optional.empty();
+            }
+
+            Map<String, Map<Integer, Long>> offsets = new HashMap<>();
+            int topics = readCount(in);
+            for (int i = 0; i < topics; i++) {
+                String topic = readString(in);
+                int partitions = readCount(in);
+                Map<Integer, Long> topicOffsets = new HashMap<>();
+                for (int j = 0; j < partitions; j++) {
+                    topicOffsets.put(in.getInt(), in.getLong());
+                }
+                offsets.put(topic, topicOffsets);
+            }
+
+            int count = readCount(in);
+            List<QueryOrder> orders = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                orders.add(readOrder(in));
+            }
+
+            int infoCount = readCount(in);
+            List<OrderActionInfo> infos = new ArrayList<>(infoCount);
+            for (int i = 0; i < infoCount; i++) {
+                infos.add(readInfo(in));
+            }
+            Map<String, OrderAction> orderActions = readActionMap(in, infos);
+            Map<String, OrderAction> containerActions = readActionMap(in, infos);
+            List<OrderAction> orderHistory = readActionList(in, infos);
+            List<OrderAction> containerHistory = readActionList(in, infos);
+
+            logger.info("Snapshot of " + count + " orders read from " + file + " at offsets " + offsets);
+            return Optional.of(new QuerySnapshot(offsets, orders, orderActions, containerActions,
+                    orderHistory, containerHistory));
+        } catch (NoSuchFileException e) {
+            logger.info("No snapshot found at " + file);
+            return Optional.empty();
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            logger.warn("Ignoring unreadable snapshot " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    private static QueryOrder copyOf(QueryOrder order) {
+        QueryOrder copy = new QueryOrder(order.getOrderID(), order.getProductID(), order.getCustomerID(),
+                order.getQuantity(), order.getPickupAddress(), order.getPickupDate(), order.getDestinationAddress(),
+                order.getExpectedDeliveryDate(), order.getStatus(), order.getVoyageID(), order.getContainerID());
+        copy.setReason(order.getReason());
+        return copy;
+    }
+
+    private static Map<String, OrderAction> copyOf(Map<String, OrderAction> actions,
+            Map<OrderActionInfo, OrderActionInfo> infos) {
+        Map<String, OrderAction> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, OrderAction> action : actions.entrySet()) {
+            copy.put(action.getKey(), copyOf(action.getValue(), infos));
+        }
+        return copy;
+    }
+
+    private static List<OrderAction> copyOf(List<OrderAction> actions, Map<OrderActionInfo, OrderActionInfo> infos) {
+        List<OrderAction> copy = new ArrayList<>(actions.size());
+        for (OrderAction action : actions) {
+            copy.add(copyOf(action, infos));
+        }
+        return copy;
+    }
+
+    private static OrderAction copyOf(OrderAction action, Map<OrderActionInfo, OrderActionInfo> infos) {
+        OrderActionInfo info = action.getOrderActionItem();
+        if (info == null) {
+            return new OrderAction(action.getTimestampMillis(), action.getAction(), action.getType());
+        }
+        return new OrderAction(infos.computeIfAbsent(info, QuerySnapshot::copyOf), action.getTimestampMillis(),
+                action.getAction(), action.getType());
+    }
+
+    private static OrderActionInfo copyOf(OrderActionInfo info) {
+        OrderActionInfo copy = new OrderActionInfo(info.getOrderID(), info.getProductID(), info.getCustomerID(),
+                info.getQuantity(), info.getPickupAddress(), info.getPickupDate(), info.getDestinationAddress(),
+                info.getExpectedDeliveryDate(), info.getStatus(), info.getVoyageID(), info.getContainerID());
+        copy.setReason(info.getReason());
+        copy.setBrand(info.getBrand());
+        copy.setType(info.getType());
+        copy.setCapacity(info.getCapacity());
+        copy.setLatitude(info.getLatitude());
+        copy.setLongitude(info.getLongitude());
+        return copy;
+    }
+
+    private static void writeOrder(DataOutputStream out, QueryOrder order) throws IOException {
+        writeString(out, order.getOrderID());
+        writeString(out, order.getProductID());
+        writeString(out, order.getCustomerID());
+        out.writeInt(order.getQuantity());
+        writeAddress(out, order.getPickupAddress());
+        writeString(out, order.getPickupDate());
+        writeAddress(out, order.getDestinationAddress());
+        writeString(out, order.getExpectedDeliveryDate());
+        writeString(out, order.getStatus());
+        writeString(out, order.getVoyageID());
+        writeString(out, order.getContainerID());
+        writeString(out, order.getReason());
+    }
+
+    private static QueryOrder readOrder(ByteBuffer in) {
+        QueryOrder order = new QueryOrder(readString(in), readString(in), readString(in), in.getInt(),
+                readAddress(in), readString(in), readAddress(in), readString(in), readString(in),
+                readString(in), readString(in));
+        order.setReason(readString(in));
+        return order;
+    }
+
+    private static void writeInfo(DataOutputStream out, OrderActionInfo info) throws IOException {
+        writeString(out, info.getOrderID());
+        writeString(out, info.getProductID());
+        writeString(out, info.getCustomerID());
+        out.writeInt(info.getQuantity());
+        writeAddress(out, info.getPickupAddress());
+        writeString(out, info.getPickupDate());
+        writeAddress(out, info.getDestinationAddress());
+        writeString(out, info.getExpectedDeliveryDate());
+        writeString(out, info.getStatus());
+        writeString(out, info.getVoyageID());
+        writeString(out, info.getContainerID());
+        writeString(out, info.getReason());
+        writeString(out, info.getBrand());
+        writeString(out, info.getType());
+        out.writeInt(info.getCapacity());
+        out.writeDouble(info.getLatitude());
+        out.writeDouble(info.getLongitude());
+    }
+
+    private static OrderActionInfo readInfo(ByteBuffer in) {
+        OrderActionInfo info = new OrderActionInfo(readString(in), readString(in), readString(in), in.getInt(),
+                readAddress(in), readString(in), readAddress(in), readString(in), readString(in),
+                readString(in), readString(in));
+        info.setReason(readString(in));
+        info.setBrand(readString(in));
+        info.setType(readString(in));
+        info.setCapacity(in.getInt());
+        info.setLatitude(in.getDouble());
+        info.setLongitude(in.getDouble());
+        return info;
+    }
+
+    private static void writeActions(DataOutputStream out, Map<String, OrderAction> actions,
+            Map<OrderActionInfo, Integer> infos) throws IOException {
+        out.writeInt(actions.size());
+        for (Map.Entry<String, OrderAction> action : actions.entrySet()) {
+            writeString(out, action.getKey());
+            writeAction(out, action.getValue(), infos);
+        }
+    }
+
+    private static void writeActions(DataOutputStream out, List<OrderAction> actions,
+            Map<OrderActionInfo, Integer> infos) throws IOException {
+        out.writeInt(actions.size());
+        for (OrderAction action : actions) {
+            writeAction(out, action, infos);
+        }
+    }
+
+    private static void writeAction(DataOutputStream out, OrderAction action,
+            Map<OrderActionInfo, Integer> infos) throws IOException {
+        OrderActionInfo info = action.getOrderActionItem();
+        out.writeInt(info == null ? -1 : infos.get(info));
+        out.writeLong(action.getTimestampMillis());
+        writeString(out, action.getAction());
+        writeString(out, action.getType());
+    }
+
+    private static Map<String, OrderAction> readActionMap(ByteBuffer in, List<OrderActionInfo> infos) {
+        int count = readCount(in);
+        Map<String, OrderAction> actions = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            actions.put(readString(in), readAction(in, infos));
+        }
+        return actions;
+    }
+
+    private static List<OrderAction> readActionList(ByteBuffer in, List<OrderActionInfo> infos) {
+        int count = readCount(in);
+        List<OrderAction> actions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            actions.add(readAction(in, infos));
+        }
+        return actions;
+    }
+
+    private static OrderAction readAction(ByteBuffer in, List<OrderActionInfo> infos) {
+        int info = in.getInt();
+        long timestampMillis = in.getLong();
+        String action = readString(in);
+        String type = readString(in);
+        if (info < 0) {
+            return new OrderAction(timestampMillis, action, type);
+        }
+        return new OrderAction(infos.get(info), timestampMillis, action, type);
+    }
+
+    private static void writeAddress(DataOutputStream out, Address address) throws IOException {
+        out.writeBoolean(address != null);
+        if (address != null) {
+            writeString(out, address.getStreet());
+            writeString(out, address.getCity());
+            writeString(out, address.getCountry());
+            writeString(out, address.getState());
+            writeString(out, address.getZipcode());
+        }
+    }
+
+    private static Address readAddress(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        return new Address(readString(in), readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    // every element takes at least one byte, a larger count means the file is corrupted
+    private static int readCount(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Invalid element count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,44 @@
+package ibm.labs.kc.order.query.dto;
+
+import java.util.List;
+
+/**
+ * Body of POST /orders/batch: the IDs of the orders to read and, optionally, the fields of the
+ * orders to return.
+ */
+public class OrderBatchRequest {
+
+    public static final int MAX_ORDER_IDS = 1000;
+
+    private List<String> orderIDs;
+    private List<String> fields;
+
+    public static void validate(OrderBatchRequest request) {
+        if (request == null || request.getOrderIDs() == null || request.getOrderIDs().isEmpty()) {
+            throw new IllegalArgumentException("orderIDs is empty");
+        }
+        if (request.getOrderIDs().size() > MAX_ORDER_IDS) {
+            throw new IllegalArgumentException("orderIDs must not contain more than " + MAX_ORDER_IDS + " IDs");
+        }
+        if (request.getFields() != null && request.getFields().isEmpty()) {
+            throw new IllegalArgumentException("fields is empty, leave it out to get all the fields");
+        }
+    }
+
+    public List<String> getOrderIDs() {
+        return orderIDs;
+    }
+
+    public void setOrderIDs(List<String> orderIDs) {
+        this.orderIDs = orderIDs;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+}
@@ -1,13 +1,13 @@
 package ibm.labs.kc.order.query.kafka;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
-import java.util.Properties;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
@@ -15,98 +15,162 @@ import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ibm.labs.kc.order.query.model.events.ContainerEvent;
-
 public class ContainerConsumer {
 	
 	private static final Logger logger = LoggerFactory.getLogger(ContainerConsumer.class.getName());
-    private final KafkaConsumer<String, String> kafkaConsumer;
-    private final KafkaConsumer<String, String> reloadConsumer;
+    private final Consumer<String, byte[]> kafkaConsumer;
+    private final Consumer<String, byte[]> reloadConsumer;
 
-    private boolean initDone = false;
-    private OffsetAndMetadata reloadLimit;
-    private boolean reloadCompleted = false;
+    private PartitionReloader reloader;
+    // next offset to apply per partition, for the events already reflected in the state
+    private final Map<TopicPartition, Long> appliedOffsets = new ConcurrentHashMap<>();
 
     public ContainerConsumer() {
-        Properties properties = ApplicationConfig.getContainerConsumerProperties("orderquery-container-consumer");
-        kafkaConsumer = new KafkaConsumer<>(properties);
-
-        Properties reloadProperties = ApplicationConfig.getContainerConsumerReloadProperties("orderquery-container-reload-consumer\"");
-        reloadConsumer = new KafkaConsumer<String, String>(reloadProperties);
+        this(new KafkaConsumer<>(ApplicationConfig.getContainerConsumerProperties("orderquery-container-consumer")),
+                new KafkaConsumer<>(ApplicationConfig.getContainerConsumerReloadProperties("orderquery-container-reload-consumer\"")));
     }
 
-    public List<ContainerEvent> pollForReload() {
-        if (!initDone) {
-            reloadConsumer.subscribe(
-                    Collections.singletonList(ApplicationConfig.CONTAINER_TOPIC),
-                    new ConsumerRebalanceListener() {
+    /**
+     * @param kafkaConsumer consumer of the main group, subscribed to the topic on the first reload
+     * @param reloadConsumer consumer replaying the topic, its partitions are assigned manually
+     */
+    public ContainerConsumer(Consumer<String, byte[]> kafkaConsumer, Consumer<String, byte[]> reloadConsumer) {
+        this.kafkaConsumer = kafkaConsumer;
+        this.reloadConsumer = reloadConsumer;
+    }
 
-                        @Override
-                        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
-                            logger.info("Partitions revoked " + partitions);
+    /**
+     * Prepare the reload of the topic, from the offsets of a snapshot when there is one.
+     * This is a blocking call.
+     *
+     * @param snapshotOffsets next offset to apply per partition, empty to replay the whole topic
+     * @return false when the snapshot offsets do not match the topic and the whole topic will be replayed
+     */
+    public boolean initReload(Map<Integer, Long> snapshotOffsets) {
+        kafkaConsumer.subscribe(
+                Collections.singletonList(ApplicationConfig.CONTAINER_TOPIC),
+                new ConsumerRebalanceListener() {
+
+                    @Override
+                    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                        logger.info("Partitions revoked " + partitions);
+                        // called from poll(), the previous batch is applied: the next owner starts after it
+                        commitSync(partitions);
+                    }
+
+                    @Override
+                    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                        logger.info("Partitions assigned " + partitions);
+                        // the state may be ahead of the committed offsets, never apply an event twice
+                        for (TopicPartition partition : partitions) {
+                            Long applied = appliedOffsets.get(partition);
+                            if (applied != null && applied > kafkaConsumer.position(partition)) {
+                                logger.info("Skipping " + partition + " to offset " + applied);
+                                kafkaConsumer.seek(partition, applied);
+                            }
                         }
+                    }
+                });
 
-                        @Override
-                        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-                            logger.info("Partitions assigned " + partitions);
-                        }
-                    });
+        Map<TopicPartition, Long> startOffsets = new HashMap<>();
+        for (Map.Entry<Integer, Long> offset : snapshotOffsets.entrySet()) {
+            startOffsets.put(new TopicPartition(ApplicationConfig.CONTAINER_TOPIC, offset.getKey()), offset.getValue());
+        }
+        reloader = new PartitionReloader(ApplicationConfig.CONTAINER_TOPIC, kafkaConsumer, reloadConsumer, startOffsets);
+        appliedOffsets.clear();
+        appliedOffsets.putAll(reloader.getReloadedOffsets());
+        return reloader.startOffsetsAccepted();
+    }
 
-            kafkaConsumer.subscribe(
-                    Collections.singletonList(ApplicationConfig.CONTAINER_TOPIC),
-                    new ConsumerRebalanceListener() {
+    /**
+     * Replay the topic up to the offsets committed by the main consumer, on all partitions.
+     *
+     * @return the next records to replay
+     */
+    public ConsumerRecords<String, byte[]> pollForReload() {
+        if (reloader == null) {
+            // blocking call !
+            initReload(Collections.emptyMap());
+        }
+        return reloader.poll();
+    }
 
-                        @Override
-                        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
-                            logger.info("Partitions revoked " + partitions);
-                        }
+    /**
+     * Forget the prepared reload, the whole topic will be replayed
+     */
+    public void resetReload() {
+        reloader = null;
+        appliedOffsets.clear();
+    }
 
-                        @Override
-                        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-                            logger.info("Partitions assigned " + partitions);
-                        }
-                    });
+    public boolean reloadCompleted() {
+        return reloader != null && reloader.completed();
+    }
 
-            // blocking call !
-            // TODO - need to handle multiple partitions
-            reloadLimit = kafkaConsumer.committed(new TopicPartition(ApplicationConfig.CONTAINER_TOPIC, 0));
-            logger.info("Reload limit " + reloadLimit);
-            initDone = true;
-        }
+    public ConsumerRecords<String, byte[]> poll() {
+        return kafkaConsumer.poll(ApplicationConfig.CONSUMER_POLL_TIMEOUT);
+    }
 
-        List<ContainerEvent> result = new ArrayList<>();
-
-        if (reloadLimit==null) {
-            // no prior commits found
-            reloadCompleted = true;
-        } else {
-            ConsumerRecords<String, String> recs = reloadConsumer.poll(ApplicationConfig.CONSUMER_POLL_TIMEOUT);
-            for (ConsumerRecord<String, String> rec : recs) {
-                if (rec.offset() <= reloadLimit.offset()) {
-                    ContainerEvent event = ContainerEvent.deserialize(rec.value());
-                    result.add(event);
-                } else {
-                    logger.info("Reload Completed");
-                    reloadCompleted = true;
-                    break;
-                }
+    /**
+     * Commit the offsets of records that have been applied, without waiting for the result:
+     * a failed commit is superseded by the commit of the next batch, or by commitSync() on shutdown.
+     *
+     * @param offsets next offset to consume, per partition
+     */
+    public void commit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        if (!offsets.isEmpty()) {
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> offset : offsets.entrySet()) {
+                appliedOffsets.put(offset.getKey(), offset.getValue().offset());
             }
+            kafkaConsumer.commitAsync(offsets, (committed, e) -> {
+                if (e != null) {
+                    logger.warn("Failed committing offsets " + committed, e);
+                }
+            });
         }
-        return result;
     }
 
-    public boolean reloadCompleted() {
-        return reloadCompleted;
+    /**
+     * Commit the offsets of all the records applied on the assigned partitions and wait for the result.
+     * Called on shutdown, failures are logged.
+     */
+    public void commitSync() {
+        commitSync(kafkaConsumer.assignment());
+    }
+
+    private void commitSync(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            Long applied = appliedOffsets.get(partition);
+            if (applied != null) {
+                offsets.put(partition, new OffsetAndMetadata(applied));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        // the loop thread is interrupted on shutdown, which would abort the commit
+        boolean interrupted = Thread.interrupted();
+        try {
+            kafkaConsumer.commitSync(offsets, ApplicationConfig.CONSUMER_CLOSE_TIMEOUT);
+        } catch (Exception e) {
+            logger.warn("Failed committing offsets " + offsets, e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
-    public List<ContainerEvent> poll() {
-        ConsumerRecords<String, String> recs = kafkaConsumer.poll(ApplicationConfig.CONSUMER_POLL_TIMEOUT);
-        List<ContainerEvent> result = new ArrayList<>();
-        for (ConsumerRecord<String, String> rec : recs) {
-            ContainerEvent event = ContainerEvent.deserialize(rec.value());
-            result.add(event);
+    /**
+     * @return next offset to apply per partition number, for the events reflected in the state
+     */
+    public Map<Integer, Long> getAppliedOffsets() {
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, Long> offset : appliedOffsets.entrySet()) {
+            offsets.put(offset.getKey().partition(), offset.getValue());
         }
-        return result;
+        return offsets;
     }
 
     public void safeReloadClose() {
@@ -12,8 +12,6 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-
 import ibm.labs.kc.order.query.model.events.ErrorEvent;
 import ibm.labs.kc.order.query.model.events.Event;
 import ibm.labs.kc.order.query.model.events.EventEmitter;
@@ -32,7 +30,7 @@ public class ErrorProducer implements EventEmitter {
     @Override
     public void emit(Event event) throws InterruptedException, ExecutionException, TimeoutException {
         ErrorEvent errorEvent = (ErrorEvent) event;
-        String value = new Gson().toJson(errorEvent);
+        String value = ErrorEvent.serialize(errorEvent);
 
         ProducerRecord<String, String> record = new ProducerRecord<>(ApplicationConfig.ERROR_TOPIC, value);
 
@@ -0,0 +1,39 @@
+package ibm.labs.kc.order.query.kafka;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import ibm.labs.kc.order.query.model.events.EventFormat;
+
+/**
+ * Writes the events of one family in the format configured for the topic
+ */
+public class EventSerializer<T> implements Serializer<T> {
+
+    private final BiFunction<T, EventFormat, byte[]> writer;
+    private final EventFormat format;
+
+    /**
+     * @param writer the serialize method of the event family, OrderEvent::serialize
+     */
+    public EventSerializer(BiFunction<T, EventFormat, byte[]> writer, EventFormat format) {
+        this.writer = writer;
+        this.format = format;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(String topic, T event) {
+        return event == null ? null : writer.apply(event, format);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
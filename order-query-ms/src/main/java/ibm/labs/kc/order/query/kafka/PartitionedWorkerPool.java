@@ -0,0 +1,155 @@
+package ibm.labs.kc.order.query.kafka;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the records returned by one poll() on a fixed set of single threaded lanes.
+ *
+ * Each record is routed to a lane by the key of the entity it applies to (order ID, container ID),
+ * or by its partition when no key is known, so the events of one entity are applied in sequence
+ * while independent entities are applied in parallel.
+ * process() returns once the whole batch is applied, with the offsets that can then be committed.
+ * processBatch() hands each lane its share of the batch at once, for listeners applying events in bulk.
+ */
+public class PartitionedWorkerPool<E> {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedWorkerPool.class.getName());
+
+    private final ExecutorService[] lanes;
+
+    public PartitionedWorkerPool(String name, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Worker pool size must be positive");
+        }
+        lanes = new ExecutorService[size];
+        for (int i = 0; i < size; i++) {
+            String threadName = name + "-worker-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Deserialize and apply all the records of the batch, blocking until every handler call is done.
+     *
+     * @param records the batch returned by poll()
+     * @param deserializer record to event, may return null for events to skip
+     * @param keyMapper event to entity key, may return null to fall back on the partition
+     * @param handler applies one event, called on a lane thread
+     * @return for each partition of the batch, the offset of the next record to consume
+     * @throws InterruptedException if interrupted while waiting for the lanes
+     */
+    public Map<TopicPartition, OffsetAndMetadata> process(ConsumerRecords<String, byte[]> records,
+            Deserializer<E> deserializer, Function<E, String> keyMapper, Consumer<E> handler)
+            throws InterruptedException {
+        return processBatch(records, deserializer, keyMapper, events -> {
+            for (E event : events) {
+                try {
+                    handler.accept(event);
+                } catch (RuntimeException e) {
+                    logger.error("Failed applying event " + event, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Same as process(), but each lane gets all its events of the batch in one handler call,
+     * in the order of their partition, so the handler can apply the events of one entity together.
+     *
+     * @param batchHandler applies the events of one lane, called once per lane having events
+     */
+    public Map<TopicPartition, OffsetAndMetadata> processBatch(ConsumerRecords<String, byte[]> records,
+            Deserializer<E> deserializer, Function<E, String> keyMapper, Consumer<List<E>> batchHandler)
+            throws InterruptedException {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        if (records.isEmpty()) {
+            return offsets;
+        }
+
+        List<List<E>> laneEvents = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            laneEvents.add(new ArrayList<>());
+        }
+        for (TopicPartition partition : records.partitions()) {
+            List<ConsumerRecord<String, byte[]>> partitionRecords = records.records(partition);
+            for (ConsumerRecord<String, byte[]> rec : partitionRecords) {
+                E event = deserializer.deserialize(rec.topic(), rec.headers(), rec.value());
+                if (event != null) {
+                    laneEvents.get(laneFor(keyMapper.apply(event), partition)).add(event);
+                }
+            }
+            long lastOffset = partitionRecords.get(partitionRecords.size() - 1).offset();
+            offsets.put(partition, new OffsetAndMetadata(lastOffset + 1));
+        }
+
+        int busyLanes = 0;
+        for (List<E> events : laneEvents) {
+            if (!events.isEmpty()) {
+                busyLanes++;
+            }
+        }
+        CountDownLatch applied = new CountDownLatch(busyLanes);
+        for (int i = 0; i < lanes.length; i++) {
+            List<E> events = laneEvents.get(i);
+            if (events.isEmpty()) {
+                continue;
+            }
+            lanes[i].execute(() -> {
+                try {
+                    batchHandler.accept(events);
+                } catch (RuntimeException e) {
+                    logger.error("Failed applying a batch of " + events.size() + " events", e);
+                } finally {
+                    applied.countDown();
+                }
+            });
+        }
+        applied.await();
+        return offsets;
+    }
+
+    private int laneFor(String key, TopicPartition partition) {
+        int hash = key != null ? key.hashCode() : partition.partition();
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    public int size() {
+        return lanes.length;
+    }
+
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+        for (ExecutorService lane : lanes) {
+            try {
+                lane.awaitTermination(ApplicationConfig.TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            } catch (InterruptedException ie) {
+                logger.warn("awaitTermination( interrupted", ie);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+}
@@ -23,6 +23,11 @@ public class AssignContainerEvent extends OrderEvent{
 	public void setPayload(ContainerAssignment payload) {
 		this.payload = payload;
 	}
+
+	@Override
+	public String getOrderID() {
+		return payload == null ? null : payload.getOrderID();
+	}
 	
 	
 }
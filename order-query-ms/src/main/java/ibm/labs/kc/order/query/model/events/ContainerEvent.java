@@ -1,6 +1,8 @@
 package ibm.labs.kc.order.query.model.events;
 
-import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+
+import ibm.labs.kc.order.query.model.Container;
 
 public class ContainerEvent extends AbstractEvent {
 	
@@ -18,7 +20,37 @@ public class ContainerEvent extends AbstractEvent {
 	public static final String TYPE_CONTAINER_ON_TRUCK = "ContainerOnTruck";
 	public static final String TYPE_CONTAINER_OFF_TRUCK = "ContainerOffTruck";
     
-    private static final Gson gson = new Gson();
+    // registered in the Gson of EventJson
+    static final EventTypeAdapterFactory<ContainerEvent> adapterFactory = new EventTypeAdapterFactory<>(ContainerEvent.class)
+            .register(TYPE_CONTAINER_ADDED, Container.class, ContainerAddedEvent::new)
+            .register(TYPE_CONTAINER_REMOVED, Container.class, ContainerRemovedEvent::new)
+            .register(TYPE_CONTAINER_AT_LOCATION, Container.class, ContainerAtLocationEvent::new)
+            .register(TYPE_CONTAINER_ON_MAINTENANCE, Container.class, ContainerOnMaintainanceEvent::new)
+            .register(TYPE_CONTAINER_OFF_MAINTENANCE, Container.class, ContainerOffMaintainanceEvent::new)
+            .register(TYPE_CONTAINER_ORDER_ASSIGNED, Container.class, ContainerOrderAssignedEvent::new)
+            .register(TYPE_CONTAINER_ORDER_RELEASED, Container.class, ContainerOrderReleasedEvent::new)
+            .register(TYPE_GOODS_LOADED, Container.class, ContainerGoodsLoadedEvent::new)
+            .register(TYPE_CONTAINER_GOOD_UNLOADED, Container.class, ContainerGoodsUnLoadedEvent::new)
+            .register(TYPE_CONTAINER_ON_SHIP, Container.class, ContainerOnShipEvent::new)
+            .register(TYPE_CONTAINER_OFF_SHIP, Container.class, ContainerOffShipEvent::new)
+            .register(TYPE_CONTAINER_ON_TRUCK, Container.class, ContainerOnTruckEvent::new)
+            .register(TYPE_CONTAINER_OFF_TRUCK, Container.class, ContainerOffTruckEvent::new);
+    private static final EventBinaryCodec<ContainerEvent> binaryCodec = new EventBinaryCodec<ContainerEvent>()
+            .register(TYPE_CONTAINER_ADDED, EventBinary.CONTAINER, ContainerAddedEvent::new)
+            .register(TYPE_CONTAINER_REMOVED, EventBinary.CONTAINER, ContainerRemovedEvent::new)
+            .register(TYPE_CONTAINER_AT_LOCATION, EventBinary.CONTAINER, ContainerAtLocationEvent::new)
+            .register(TYPE_CONTAINER_ON_MAINTENANCE, EventBinary.CONTAINER, ContainerOnMaintainanceEvent::new)
+            .register(TYPE_CONTAINER_OFF_MAINTENANCE, EventBinary.CONTAINER, ContainerOffMaintainanceEvent::new)
+            .register(TYPE_CONTAINER_ORDER_ASSIGNED, EventBinary.CONTAINER, ContainerOrderAssignedEvent::new)
+            .register(TYPE_CONTAINER_ORDER_RELEASED, EventBinary.CONTAINER, ContainerOrderReleasedEvent::new)
+            .register(TYPE_GOODS_LOADED, EventBinary.CONTAINER, ContainerGoodsLoadedEvent::new)
+            .register(TYPE_CONTAINER_GOOD_UNLOADED, EventBinary.CONTAINER, ContainerGoodsUnLoadedEvent::new)
+            .register(TYPE_CONTAINER_ON_SHIP, EventBinary.CONTAINER, ContainerOnShipEvent::new)
+            .register(TYPE_CONTAINER_OFF_SHIP, EventBinary.CONTAINER, ContainerOffShipEvent::new)
+            .register(TYPE_CONTAINER_ON_TRUCK, EventBinary.CONTAINER, ContainerOnTruckEvent::new)
+            .register(TYPE_CONTAINER_OFF_TRUCK, EventBinary.CONTAINER, ContainerOffTruckEvent::new);
+    // the types skipped by deserialize(byte[]) before decoding
+    private static final EventTypeFilter typeFilter = new EventTypeFilter(binaryCodec.types());
     
     public ContainerEvent() {}
 
@@ -27,40 +59,42 @@ public class ContainerEvent extends AbstractEvent {
     }
     
     public static ContainerEvent deserialize(String json) {
-        // ContainerEvent is a concrete class just to find the type of the event
-        // We could do a "normal" JSON deserialization instead
-    	ContainerEvent containerEvent = gson.fromJson(json, ContainerEvent.class);
-        switch (containerEvent.type) {
-        case TYPE_CONTAINER_ADDED:
-            return gson.fromJson(json, ContainerAddedEvent.class);
-        case TYPE_CONTAINER_REMOVED:
-            return gson.fromJson(json, ContainerRemovedEvent.class);
-        case TYPE_CONTAINER_AT_LOCATION:
-            return gson.fromJson(json, ContainerAtLocationEvent.class);
-        case TYPE_CONTAINER_ON_MAINTENANCE:
-            return gson.fromJson(json, ContainerOnMaintainanceEvent.class);
-        case TYPE_CONTAINER_OFF_MAINTENANCE:
-            return gson.fromJson(json, ContainerOffMaintainanceEvent.class);
-        case TYPE_CONTAINER_ORDER_ASSIGNED:
-            return gson.fromJson(json, ContainerOrderAssignedEvent.class);
-        case TYPE_CONTAINER_ORDER_RELEASED:
-            return gson.fromJson(json, ContainerOrderReleasedEvent.class);
-        case TYPE_GOODS_LOADED:
-            return gson.fromJson(json, ContainerGoodsLoadedEvent.class);
-        case TYPE_CONTAINER_GOOD_UNLOADED:
-        	return gson.fromJson(json, ContainerGoodsUnLoadedEvent.class);
-        case TYPE_CONTAINER_ON_SHIP:
-        	return gson.fromJson(json, ContainerOnShipEvent.class);
-        case TYPE_CONTAINER_OFF_SHIP:
-        	return gson.fromJson(json, ContainerOffShipEvent.class);
-        case TYPE_CONTAINER_ON_TRUCK:
-        	return gson.fromJson(json, ContainerOnTruckEvent.class);
-        case TYPE_CONTAINER_OFF_TRUCK:
-        	return gson.fromJson(json, ContainerOffTruckEvent.class);
-        default:
-            //TODO handle
+        return EventJson.gson().fromJson(json, ContainerEvent.class);
+    }
+
+    /**
+     * @return the event as JSON, with its header fields before the payload
+     */
+    public static String serialize(ContainerEvent event) {
+        return EventJson.gson().toJson(event, ContainerEvent.class);
+    }
+
+    /**
+     * @param data a record value, in either format
+     * @return null for the types not registered, most of them skipped without decoding the record
+     */
+    public static ContainerEvent deserialize(byte[] data) {
+        if (!typeFilter.accepts(data)) {
             return null;
         }
+        if (EventBinary.isBinary(data)) {
+            return binaryCodec.read(data);
+        }
+        return data == null ? null : deserialize(new String(data, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the filter of the types read by deserialize(byte[])
+     */
+    public static EventTypeFilter typeFilter() {
+        return typeFilter;
+    }
+
+    public static byte[] serialize(ContainerEvent event, EventFormat format) {
+        if (format == EventFormat.BINARY) {
+            return binaryCodec.write(event);
+        }
+        return serialize(event).getBytes(StandardCharsets.UTF_8);
     }
 
 	@Override
@@ -68,4 +102,13 @@ public class ContainerEvent extends AbstractEvent {
 		return null;
 	}
 
+	/**
+	 * @return the ID of the container this event applies to, null when unknown.
+	 * Events sharing a container ID must be applied in sequence.
+	 */
+	public String getContainerID() {
+		Object payload = getPayload();
+		return payload instanceof Container ? ((Container) payload).getContainerID() : null;
+	}
+
 }
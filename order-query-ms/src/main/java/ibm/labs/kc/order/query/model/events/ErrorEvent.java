@@ -17,6 +17,13 @@ public class ErrorEvent extends AbstractEvent {
         this.errorMessage = errorMessage;
     }
 
+    /**
+     * @return the error as JSON, the failed event written with the adapter of its family
+     */
+    public static String serialize(ErrorEvent event) {
+        return EventJson.gson().toJson(event, ErrorEvent.class);
+    }
+
     @Override
     public Event getPayload() {
         return payload;
@@ -1,7 +1,25 @@
 package ibm.labs.kc.order.query.model.events;
 
+import java.util.List;
+import java.util.function.BiConsumer;
+
 public interface EventListener {
 
     public void handle(Event event, String event_type);
 
+    /**
+     * Apply the events of one poll, in sequence for the events of one entity.
+     * Listeners override it to apply the events of one order or container under a single lock.
+     * An event which fails is passed to failed, with its exception, and the next events are still applied.
+     */
+    public default void handleBatch(List<? extends Event> events, String event_type, BiConsumer<Event, Exception> failed) {
+        for (Event event : events) {
+            try {
+                handle(event, event_type);
+            } catch (Exception e) {
+                failed.accept(event, e);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,171 @@
+package ibm.labs.kc.order.query.model.events;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Finds the type of an event in its record value, JSON or binary, without decoding the record,
+ * so that the consumers skip the events they ignore before allocating anything for them.
+ *
+ * The type of a binary event is at a fixed offset. In JSON the top level "type" field is looked
+ * for in the bytes, skipping the strings and nested values, whatever the field order. When the
+ * type cannot be read this way (escaped characters, null, malformed record) the record is
+ * accepted and left to the full deserialization.
+ */
+public class EventTypeFilter {
+
+    private static final byte[] TYPE_FIELD = "type".getBytes(StandardCharsets.UTF_8);
+    // magic, format version and the two bytes of the length of the type
+    private static final int BINARY_TYPE_OFFSET = 4;
+
+    private final byte[][] types;
+
+    /**
+     * @param types the event types to accept, as registered in the codecs of the family
+     */
+    public EventTypeFilter(Collection<String> types) {
+        this.types = new byte[types.size()][];
+        int i = 0;
+        for (String type : types) {
+            this.types[i++] = type.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param data a record value
+     * @return false when the record is an event of a type which is not accepted
+     */
+    public boolean accepts(byte[] data) {
+        if (data == null || data.length == 0) {
+            return true;
+        }
+        return EventBinary.isBinary(data) ? acceptsBinary(data) : acceptsJson(data);
+    }
+
+    /**
+     * @param type the UTF-8 bytes of an event type, from a record header
+     */
+    public boolean acceptsType(byte[] type) {
+        return isAccepted(type, 0, type.length);
+    }
+
+    private boolean acceptsBinary(byte[] data) {
+        if (data.length < BINARY_TYPE_OFFSET || data[1] != EventBinary.FORMAT_VERSION) {
+            return true;
+        }
+        // the type is written by DataOutput.writeUTF, the same bytes as UTF-8 for the type names
+        int length = ((data[2] & 0xff) << 8) | (data[3] & 0xff);
+        int end = BINARY_TYPE_OFFSET + length;
+        return end > data.length || isAccepted(data, BINARY_TYPE_OFFSET, end);
+    }
+
+    private boolean acceptsJson(byte[] data) {
+        int i = skipWhitespace(data, 0);
+        if (i >= data.length || data[i] != '{') {
+            return true;
+        }
+        int depth = 0;
+        // true when the next string of the top level object is a field name
+        boolean nameNext = false;
+        for (; i < data.length; i++) {
+            switch (data[i]) {
+            case '"':
+                int end = endOfString(data, i + 1);
+                if (end < 0) {
+                    return true;
+                }
+                if (depth == 1 && nameNext) {
+                    if (regionEquals(data, i + 1, end, TYPE_FIELD)) {
+                        return acceptsJsonValue(data, end + 1);
+                    }
+                    nameNext = false;
+                }
+                i = end;
+                break;
+            case '{':
+            case '[':
+                depth++;
+                nameNext = depth == 1;
+                break;
+            case '}':
+            case ']':
+                depth--;
+                break;
+            case ',':
+                nameNext = depth == 1;
+                break;
+            default:
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param from the index following the "type" field name
+     */
+    private boolean acceptsJsonValue(byte[] data, int from) {
+        int i = skipWhitespace(data, from);
+        if (i >= data.length || data[i] != ':') {
+            return true;
+        }
+        i = skipWhitespace(data, i + 1);
+        if (i >= data.length || data[i] != '"') {
+            return true;
+        }
+        int end = endOfString(data, i + 1);
+        if (end < 0) {
+            return true;
+        }
+        for (int j = i + 1; j < end; j++) {
+            if (data[j] == '\\') {
+                return true;
+            }
+        }
+        return isAccepted(data, i + 1, end);
+    }
+
+    private boolean isAccepted(byte[] data, int from, int to) {
+        for (byte[] type : types) {
+            if (regionEquals(data, from, to, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(byte[] data, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param from the index following the opening quote
+     * @return the index of the closing quote, -1 when the string is not terminated
+     */
+    private static int endOfString(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == '\\') {
+                i++;
+            } else if (data[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] data, int from) {
+        int i = from;
+        while (i < data.length && (data[i] == ' ' || data[i] == '\t' || data[i] == '\n' || data[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+}
@@ -1,6 +1,12 @@
 package ibm.labs.kc.order.query.model.events;
 
-import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+
+import ibm.labs.kc.order.query.model.Cancellation;
+import ibm.labs.kc.order.query.model.ContainerAssignment;
+import ibm.labs.kc.order.query.model.Order;
+import ibm.labs.kc.order.query.model.Rejection;
+import ibm.labs.kc.order.query.model.VoyageAssignment;
 
 public class OrderEvent extends AbstractEvent {
 
@@ -17,7 +23,27 @@ public class OrderEvent extends AbstractEvent {
     public static final String TYPE_FULL_CONTAINER_VOYAGE_READY = "FullContainerVoyageReady";
     public static final String TYPE_CONTAINER_DELIVERED = "ContainerDelivered";   
 
-    private static final Gson gson = new Gson();
+    // registered in the Gson of EventJson
+    static final EventTypeAdapterFactory<OrderEvent> adapterFactory = new EventTypeAdapterFactory<>(OrderEvent.class)
+            .register(TYPE_CREATED, Order.class, CreateOrderEvent::new)
+            .register(TYPE_ASSIGNED, VoyageAssignment.class, AssignOrderEvent::new)
+            .register(TYPE_REJECTED, Rejection.class, RejectOrderEvent::new)
+            .register(TYPE_CONTAINER_ALLOCATED, ContainerAssignment.class, AssignContainerEvent::new)
+            .register(TYPE_CONTAINER_DELIVERED, ContainerAssignment.class, ContainerDeliveredEvent::new)
+            .register(TYPE_UPDATED, Order.class, UpdateOrderEvent::new)
+            .register(TYPE_CANCELLED, Cancellation.class, CancelOrderEvent::new)
+            .register(TYPE_COMPLETED, Order.class, OrderCompletedEvent::new);
+    private static final EventBinaryCodec<OrderEvent> binaryCodec = new EventBinaryCodec<OrderEvent>()
+            .register(TYPE_CREATED, EventBinary.ORDER, CreateOrderEvent::new)
+            .register(TYPE_ASSIGNED, EventBinary.VOYAGE_ASSIGNMENT, AssignOrderEvent::new)
+            .register(TYPE_REJECTED, EventBinary.REJECTION, RejectOrderEvent::new)
+            .register(TYPE_CONTAINER_ALLOCATED, EventBinary.CONTAINER_ASSIGNMENT, AssignContainerEvent::new)
+            .register(TYPE_CONTAINER_DELIVERED, EventBinary.CONTAINER_ASSIGNMENT, ContainerDeliveredEvent::new)
+            .register(TYPE_UPDATED, EventBinary.ORDER, UpdateOrderEvent::new)
+            .register(TYPE_CANCELLED, EventBinary.CANCELLATION, CancelOrderEvent::new)
+            .register(TYPE_COMPLETED, EventBinary.ORDER, OrderCompletedEvent::new);
+    // the types skipped by deserialize(byte[]) before decoding
+    private static final EventTypeFilter typeFilter = new EventTypeFilter(binaryCodec.types());
 
     public OrderEvent(long timestampMillis, String type, String version) {
         super(timestampMillis, type, version);
@@ -26,30 +52,42 @@ public class OrderEvent extends AbstractEvent {
     public OrderEvent() {}
 
     public static OrderEvent deserialize(String json) {
-        // OrderEvent is a concrete class just to find the type of the event
-        // We could do a "normal" JSON deserialization instead
-        OrderEvent orderEvent = gson.fromJson(json, OrderEvent.class);
-        switch (orderEvent.type) {
-        case TYPE_CREATED:
-            return gson.fromJson(json, CreateOrderEvent.class);
-        case TYPE_ASSIGNED:
-            return gson.fromJson(json, AssignOrderEvent.class);
-        case TYPE_REJECTED:
-        	return gson.fromJson(json, RejectOrderEvent.class);
-        case TYPE_CONTAINER_ALLOCATED:
-        	return gson.fromJson(json, AssignContainerEvent.class);
-        case TYPE_CONTAINER_DELIVERED:
-        	return gson.fromJson(json, ContainerDeliveredEvent.class);
-        case TYPE_UPDATED:
-            return gson.fromJson(json, UpdateOrderEvent.class);
-        case TYPE_CANCELLED:
-            return gson.fromJson(json, CancelOrderEvent.class);
-        case TYPE_COMPLETED:
-        	return gson.fromJson(json, OrderCompletedEvent.class);
-        default:
-            //TODO handle
+        return EventJson.gson().fromJson(json, OrderEvent.class);
+    }
+
+    /**
+     * @return the event as JSON, with its header fields before the payload
+     */
+    public static String serialize(OrderEvent event) {
+        return EventJson.gson().toJson(event, OrderEvent.class);
+    }
+
+    /**
+     * @param data a record value, in either format
+     * @return null for the types not registered, most of them skipped without decoding the record
+     */
+    public static OrderEvent deserialize(byte[] data) {
+        if (!typeFilter.accepts(data)) {
             return null;
         }
+        if (EventBinary.isBinary(data)) {
+            return binaryCodec.read(data);
+        }
+        return data == null ? null : deserialize(new String(data, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the filter of the types read by deserialize(byte[])
+     */
+    public static EventTypeFilter typeFilter() {
+        return typeFilter;
+    }
+
+    public static byte[] serialize(OrderEvent event, EventFormat format) {
+        if (format == EventFormat.BINARY) {
+            return binaryCodec.write(event);
+        }
+        return serialize(event).getBytes(StandardCharsets.UTF_8);
     }
 
     @Override
@@ -57,4 +95,12 @@ public class OrderEvent extends AbstractEvent {
         return null;
     }
 
+    /**
+     * @return the ID of the order this event applies to, null when unknown.
+     * Events sharing an order ID must be applied in sequence.
+     */
+    public String getOrderID() {
+        return null;
+    }
+
 }
@@ -0,0 +1,26 @@
+package ibm.labs.kc.order.query.rest;
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Entity tags of the resources derived from a version counter.
+ *
+ * The counters are held in memory and restart from 1 with the service, the tags are prefixed by
+ * the start time of this instance so that a tag from another instance or an earlier run never
+ * matches.
+ */
+public final class ETags {
+
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private ETags() {
+    }
+
+    /**
+     * @return the strong tag of the given version of a resource
+     */
+    public static EntityTag of(long version) {
+        return new EntityTag(EPOCH + "-" + version);
+    }
+
+}
@@ -0,0 +1,14 @@
+package ibm.labs.kc.order.query.rest;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+@Provider
+public class IllegalArgumentExceptionHandler implements ExceptionMapper<IllegalArgumentException> {
+    @Override
+    public Response toResponse(IllegalArgumentException exception) {
+        return Response.status(Status.BAD_REQUEST).entity(exception.getMessage()).build();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package ibm.labs.kc.order.query.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import ibm.labs.kc.order.query.service.OrderResponseCache;
+
+/**
+ * Size and hit, miss and eviction counts of the order response cache, see OrderResponseCache
+ */
+@Path("qcache")
+public class ResponseCacheEndpoint {
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response stats() {
+        return Response.ok(OrderResponseCache.instance().statsAsJson()).build();
+    }
+
+}
@@ -0,0 +1,23 @@
+package ibm.labs.kc.order.query.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import ibm.labs.kc.order.query.model.events.EventTracer;
+
+/**
+ * Sample of the last events handled, see EventTracer
+ */
+@Path("qtrace")
+public class TraceEndpoint {
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response recentEvents() {
+        return Response.ok(EventTracer.instance().recentAsJson()).build();
+    }
+
+}
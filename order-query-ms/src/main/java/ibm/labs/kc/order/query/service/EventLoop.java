@@ -1,24 +1,44 @@
 package ibm.labs.kc.order.query.service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ibm.labs.kc.order.query.action.OrderActionDAOImpl;
 import ibm.labs.kc.order.query.action.OrderActionService;
+import ibm.labs.kc.order.query.dao.OrderDAOMock;
+import ibm.labs.kc.order.query.dao.QuerySnapshot;
 import ibm.labs.kc.order.query.kafka.ApplicationConfig;
 import ibm.labs.kc.order.query.kafka.ContainerConsumer;
 import ibm.labs.kc.order.query.kafka.ErrorProducer;
+import ibm.labs.kc.order.query.kafka.EventDeserializer;
 import ibm.labs.kc.order.query.kafka.OrderConsumer;
+import ibm.labs.kc.order.query.kafka.PartitionedWorkerPool;
 import ibm.labs.kc.order.query.model.events.ContainerEvent;
 import ibm.labs.kc.order.query.model.events.ErrorEvent;
+import ibm.labs.kc.order.query.model.events.Event;
 import ibm.labs.kc.order.query.model.events.EventEmitter;
 import ibm.labs.kc.order.query.model.events.EventListener;
 import ibm.labs.kc.order.query.model.events.OrderEvent;
@@ -28,24 +48,107 @@ public class EventLoop implements ServletContextListener {
 	static final Logger logger = LoggerFactory.getLogger(EventLoop.class);
 
     private boolean running = true;
+    private final Supplier<OrderConsumer> orderConsumers;
+    private final Supplier<ContainerConsumer> containerConsumers;
+    private final Supplier<EventEmitter> errorEmitters;
     private OrderConsumer orderConsumer;
     private ContainerConsumer containerConsumer;
     private ExecutorService orderExecutor;
     private ExecutorService containerExecutor;
+    private PartitionedWorkerPool<OrderEvent> orderWorkers;
+    private PartitionedWorkerPool<ContainerEvent> containerWorkers;
+    private final EventDeserializer<OrderEvent> orderDeserializer = new EventDeserializer<>(OrderEvent::deserialize,
+            OrderEvent.typeFilter());
+    private final EventDeserializer<ContainerEvent> containerDeserializer = new EventDeserializer<>(
+            ContainerEvent::deserialize, ContainerEvent.typeFilter());
+
+    private Optional<Path> snapshotFile;
+    private QuerySnapshot snapshot;
+    private ScheduledExecutorService snapshotExecutor;
+    // batches are applied under the read lock, snapshots are taken under the write lock
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final CompletableFuture<Void> restored = new CompletableFuture<>();
+    private volatile boolean orderReloaded = false;
+    private volatile boolean containerReloaded = false;
+
+    public EventLoop() {
+        this(OrderConsumer::new, ContainerConsumer::new, ErrorProducer::new);
+    }
+
+    /**
+     * Event loop on other Kafka clients than the ones configured by ApplicationConfig,
+     * run outside of the servlet container with start() and stop()
+     */
+    public EventLoop(Supplier<OrderConsumer> orderConsumers, Supplier<ContainerConsumer> containerConsumers,
+            Supplier<EventEmitter> errorEmitters) {
+        this.orderConsumers = orderConsumers;
+        this.containerConsumers = containerConsumers;
+        this.errorEmitters = errorEmitters;
+    }
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         logger.info("ConsumerLoop contextInitialized");
+        start();
+    }
+
+    public void start() {
+        snapshotFile = ApplicationConfig.getSnapshotFile();
+        snapshot = snapshotFile.flatMap(QuerySnapshot::readFrom).orElse(null);
+
+        int workers = ApplicationConfig.getConsumerWorkers();
+        logger.info("Applying events with " + workers + " workers per topic");
+        orderWorkers = new PartitionedWorkerPool<>("order", workers);
+        containerWorkers = new PartitionedWorkerPool<>("container", workers);
+
+        orderConsumer = orderConsumers.get();
+        containerConsumer = containerConsumers.get();
 
-        orderConsumer = new OrderConsumer();
         orderExecutor = Executors.newFixedThreadPool(1);
+        orderExecutor.execute(newRestoreRunnable());
         orderExecutor.execute(newReloadOrderRunnable());
         orderExecutor.execute(newOrderRunnable());
         
-        containerConsumer = new ContainerConsumer();
         containerExecutor = Executors.newFixedThreadPool(1);
         containerExecutor.execute(newReloadContainerRunnable());
         containerExecutor.execute(newContainerRunnable());
+
+        long interval = ApplicationConfig.getSnapshotIntervalSec();
+        if (snapshotFile.isPresent() && interval > 0) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor();
+            snapshotExecutor.scheduleWithFixedDelay(() -> saveSnapshot(snapshotFile.get()),
+                    interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    private Runnable newRestoreRunnable() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (snapshot != null) {
+                        // both read models mix orders and containers, so both topics restart from the snapshot or none
+                        boolean accepted = orderConsumer.initReload(snapshot.getOffsets(ApplicationConfig.ORDER_TOPIC));
+                        accepted = containerConsumer.initReload(snapshot.getOffsets(ApplicationConfig.CONTAINER_TOPIC))
+                                && accepted;
+                        if (accepted) {
+                            snapshot.restore(OrderDAOMock.instance(), OrderActionDAOImpl.instance());
+                            logger.info("State restored from snapshot");
+                        } else {
+                            orderConsumer.resetReload();
+                            containerConsumer.resetReload();
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("Failed restoring snapshot, replaying the topics", e);
+                    orderConsumer.resetReload();
+                    containerConsumer.resetReload();
+                } finally {
+                    snapshot = null;
+                    restored.complete(null);
+                }
+            }
+        };
     }
 
     private Runnable newReloadOrderRunnable() {
@@ -56,22 +159,22 @@ public class EventLoop implements ServletContextListener {
                 EventListener queryServiceListener = new QueryService();
                 EventListener orderActionServicelistener = new OrderActionService();
 
-                while (!orderConsumer.reloadCompleted()) {
-                    List<OrderEvent> events = orderConsumer.pollForReload();
-                    for (OrderEvent event : events) {
-                        try {
-                        	queryServiceListener.handle(event, "order");
-                        	orderActionServicelistener.handle(event, "order");
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            // TODO fail to restart would be the correct handling
-                            // mark the app as unhealthy
-                        }
+                try {
+                    while (!orderConsumer.reloadCompleted()) {
+                        // all partitions are replayed together, the batch is applied on the worker lanes
+                        orderWorkers.processBatch(orderConsumer.pollForReload(),
+                                orderDeserializer, OrderEvent::getOrderID,
+                                events -> handleBatch(events, "order", EventLoop::reloadFailed,
+                                        queryServiceListener, orderActionServicelistener));
                     }
+                } catch (InterruptedException ie) {
+                    logger.warn("ReloadState order interrupted");
+                    Thread.currentThread().interrupt();
                 }
                 
                 logger.info("ReloadState order completed");
                 orderConsumer.safeReloadClose();
+                orderReloaded = true;
                 
             }
         };
@@ -84,20 +187,22 @@ public class EventLoop implements ServletContextListener {
                 logger.info("ReloadState started");
                 EventListener orderActionServicelistener = new OrderActionService();
 
-                while (!containerConsumer.reloadCompleted()) {
-                    List<ContainerEvent> events = containerConsumer.pollForReload();
-                    for (ContainerEvent event : events) {
-                        try {
-                        	orderActionServicelistener.handle(event, "container");
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            // TODO fail to restart would be the correct handling
-                            // mark the app as unhealthy
-                        }
+                try {
+                    restored.join();
+                    while (!containerConsumer.reloadCompleted()) {
+                        // all partitions are replayed together, the batch is applied on the worker lanes
+                        containerWorkers.processBatch(containerConsumer.pollForReload(),
+                                containerDeserializer, ContainerEvent::getContainerID,
+                                events -> handleBatch(events, "container", EventLoop::reloadFailed,
+                                        orderActionServicelistener));
                     }
+                } catch (InterruptedException ie) {
+                    logger.warn("ReloadState container interrupted");
+                    Thread.currentThread().interrupt();
                 }
                 logger.info("ReloadState completed");
                 containerConsumer.safeReloadClose();
+                containerReloaded = true;
             }
         };
     }
@@ -110,28 +215,28 @@ public class EventLoop implements ServletContextListener {
                 EventListener queryServiceListener = new QueryService();
                 EventListener orderActionServicelistener = new OrderActionService();
                 
-                EventEmitter emitter = new ErrorProducer();
+                EventEmitter emitter = errorEmitters.get();
                 boolean ok = true;
                 try {
                     while (running && ok) {
                         try {
-                            List<OrderEvent> ordEvents = orderConsumer.poll();
-                            for (OrderEvent event : ordEvents) {
-                                try {
-                                	queryServiceListener.handle(event, "order");
-                                	orderActionServicelistener.handle(event, "order");
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                    ErrorEvent errorEvent = new ErrorEvent(System.currentTimeMillis(),
-                                            ErrorEvent.TYPE_ERROR, "1", event, e.getMessage());
-                                    try {
-                                        emitter.emit(errorEvent);
-                                    } catch (Exception e1) {
-                                        logger.error("Failed emitting Error event " + errorEvent, e1);
-                                    }
-                                }
+                            ConsumerRecords<String, byte[]> records = orderConsumer.poll();
+                            snapshotLock.readLock().lock();
+                            try {
+                                // each lane applies its events at once, each order locked once
+                                Map<TopicPartition, OffsetAndMetadata> offsets = orderWorkers.processBatch(records,
+                                        orderDeserializer, OrderEvent::getOrderID,
+                                        events -> handleBatch(events, "order",
+                                                (event, e) -> emitError(emitter, event, e),
+                                                queryServiceListener, orderActionServicelistener));
+                                orderConsumer.commit(offsets);
+                            } finally {
+                                snapshotLock.readLock().unlock();
                             }
-                            
+                        } catch (InterruptedException ie) {
+                            // the loop is being shut down
+                            ok = false;
+                            Thread.currentThread().interrupt();
                         } catch (Exception ke) {
                             ke.printStackTrace();
                             // Treat a Kafka exception as unrecoverable
@@ -142,6 +247,7 @@ public class EventLoop implements ServletContextListener {
                         }
                     }
                 } finally {
+                    orderConsumer.commitSync();
                 	orderConsumer.safeClose();
                     emitter.safeClose();
                 }
@@ -155,26 +261,27 @@ public class EventLoop implements ServletContextListener {
             public void run() {
                 logger.info("ConsumerLoop thread started");
                 EventListener orderActionServicelistener = new OrderActionService();
-                EventEmitter emitter = new ErrorProducer();
+                EventEmitter emitter = errorEmitters.get();
                 boolean ok = true;
                 try {
                     while (running && ok) {
                         try {
-                            List<ContainerEvent> contEvents = containerConsumer.poll();
-                            for (ContainerEvent event : contEvents) {
-                                try {
-                                	orderActionServicelistener.handle(event, "container");
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                    ErrorEvent errorEvent = new ErrorEvent(System.currentTimeMillis(),
-                                            ErrorEvent.TYPE_ERROR, "1", event, e.getMessage());
-                                    try {
-                                        emitter.emit(errorEvent);
-                                    } catch (Exception e1) {
-                                        logger.error("Failed emitting Error event " + errorEvent, e1);
-                                    }
-                                }
+                            ConsumerRecords<String, byte[]> records = containerConsumer.poll();
+                            snapshotLock.readLock().lock();
+                            try {
+                                Map<TopicPartition, OffsetAndMetadata> offsets = containerWorkers.processBatch(records,
+                                        containerDeserializer, ContainerEvent::getContainerID,
+                                        events -> handleBatch(events, "container",
+                                                (event, e) -> emitError(emitter, event, e),
+                                                orderActionServicelistener));
+                                containerConsumer.commit(offsets);
+                            } finally {
+                                snapshotLock.readLock().unlock();
                             }
+                        } catch (InterruptedException ie) {
+                            // the loop is being shut down
+                            ok = false;
+                            Thread.currentThread().interrupt();
                         } catch (Exception ke) {
                             ke.printStackTrace();
                             // Treat a Kafka exception as unrecoverable
@@ -185,6 +292,7 @@ public class EventLoop implements ServletContextListener {
                         }
                     }
                 } finally {
+                    containerConsumer.commitSync();
                 	containerConsumer.safeClose();
                     emitter.safeClose();
                 }
@@ -192,10 +300,78 @@ public class EventLoop implements ServletContextListener {
         };
     }
 
+    /**
+     * Each listener applies the events on its own: a listener failing the whole batch does not stop
+     * the others. The events a listener fails to apply are passed to failed, the others are applied.
+     */
+    private static void handleBatch(List<? extends Event> events, String eventType,
+            BiConsumer<Event, Exception> failed, EventListener... listeners) {
+        for (EventListener listener : listeners) {
+            try {
+                listener.handleBatch(events, eventType, failed);
+            } catch (RuntimeException e) {
+                logger.error("Failed applying a batch of " + events.size() + " " + eventType + " events", e);
+            }
+        }
+    }
+
+    private static void reloadFailed(Event event, Exception e) {
+        logger.error("Failed reloading event " + event, e);
+        // TODO fail to restart would be the correct handling
+        // mark the app as unhealthy
+    }
+
+    private void emitError(EventEmitter emitter, Event event, Exception e) {
+        ErrorEvent errorEvent = new ErrorEvent(System.currentTimeMillis(),
+                ErrorEvent.TYPE_ERROR, "1", event, e.getMessage());
+        try {
+            emitter.emit(errorEvent);
+        } catch (Exception e1) {
+            logger.error("Failed emitting Error event " + errorEvent, e1);
+        }
+    }
+
+    /**
+     * Waits for the batches being applied and copies the read models, so they match the applied offsets
+     * of both topics. The copy is written once the events are applied again.
+     * Synchronized as the snapshot on stop may overlap a periodic one writing the same file.
+     */
+    private synchronized void saveSnapshot(Path file) {
+        if (!orderReloaded || !containerReloaded) {
+            return;
+        }
+        QuerySnapshot copy;
+        snapshotLock.writeLock().lock();
+        try {
+            Map<String, Map<Integer, Long>> offsets = new HashMap<>();
+            offsets.put(ApplicationConfig.ORDER_TOPIC, orderConsumer.getAppliedOffsets());
+            offsets.put(ApplicationConfig.CONTAINER_TOPIC, containerConsumer.getAppliedOffsets());
+            copy = QuerySnapshot.capture(offsets, OrderDAOMock.instance(), OrderActionDAOImpl.instance());
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        try {
+            copy.writeTo(file);
+        } catch (IOException e) {
+            logger.warn("Failed writing snapshot " + file, e);
+        }
+    }
+
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         logger.info("ConsumerLoop contextDestroyed");
+        stop();
+    }
+
+    public void stop() {
         running = false;
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+        }
+        if (snapshotFile.isPresent()) {
+            // taken before interrupting the loops, so no batch is left half applied
+            saveSnapshot(snapshotFile.get());
+        }
         orderExecutor.shutdownNow();
         try {
         	orderExecutor.awaitTermination(ApplicationConfig.TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
@@ -208,5 +384,7 @@ public class EventLoop implements ServletContextListener {
         } catch (InterruptedException ie) {
             logger.warn("awaitTermination( interrupted", ie);
         }
+        orderWorkers.shutdown();
+        containerWorkers.shutdown();
     }
 }
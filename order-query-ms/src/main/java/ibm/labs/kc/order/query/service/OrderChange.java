@@ -0,0 +1,87 @@
+package ibm.labs.kc.order.query.service;
+
+import ibm.labs.kc.order.query.dao.QueryOrder;
+import ibm.labs.kc.order.query.model.events.Event;
+import ibm.labs.kc.order.query.model.events.EventJson;
+
+/**
+ * A change of an order or of its history, pushed to the subscribers of the order and of its customer.
+ *
+ * The fields are copied when the event is applied. The JSON is only written when the change is first
+ * sent, once whatever the number of subscribers.
+ */
+public class OrderChange {
+    public static final String KIND_ORDER = "order";
+    public static final String KIND_HISTORY = "history";
+
+    private final String kind;
+    private final String orderID;
+    private final String customerID;
+    private final String status;
+    // the event applied
+    private final String type;
+    private final long timestampMillis;
+    // the version of the order or of the history, as in their ETag
+    private final long version;
+    private transient volatile String json;
+
+    public OrderChange(String kind, String orderID, String customerID, String status, String type,
+            long timestampMillis, long version) {
+        this.kind = kind;
+        this.orderID = orderID;
+        this.customerID = customerID;
+        this.status = status;
+        this.type = type;
+        this.timestampMillis = timestampMillis;
+        this.version = version;
+    }
+
+    public static OrderChange ofOrder(QueryOrder order, long version, Event event) {
+        return new OrderChange(KIND_ORDER, order.getOrderID(), order.getCustomerID(), order.getStatus(),
+                event.getType(), event.getTimestampMillis(), version);
+    }
+
+    public static OrderChange ofHistory(String orderID, String customerID, long version, Event event) {
+        return new OrderChange(KIND_HISTORY, orderID, customerID, null, event.getType(), event.getTimestampMillis(),
+                version);
+    }
+
+    public String toJson() {
+        String result = json;
+        if (result == null) {
+            // racing senders write the same string
+            result = EventJson.gson().toJson(this);
+            json = result;
+        }
+        return result;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getOrderID() {
+        return orderID;
+    }
+
+    public String getCustomerID() {
+        return customerID;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+}
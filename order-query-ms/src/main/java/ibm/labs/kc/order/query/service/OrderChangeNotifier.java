@@ -0,0 +1,230 @@
+package ibm.labs.kc.order.query.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibm.labs.kc.order.query.kafka.ApplicationConfig;
+
+/**
+ * Pushes the changes of the orders to the subscribers of an order or of a customer, for the
+ * server-sent events endpoints.
+ *
+ * publish() is called by the event handlers as the events are applied: it only offers the change
+ * to the buffer of each subscriber and returns. The sender threads send the changes of a
+ * subscriber one at a time, the next one once the previous is written.
+ * The buffers are bounded: a subscriber which falls behind by more than bufferSize changes is
+ * sent an overflow event and closed, it reconnects and reads the current state with a GET.
+ * Idle subscribers are sent a keep alive, which also finds the closed connections.
+ */
+public class OrderChangeNotifier {
+    private static final Logger logger = LoggerFactory.getLogger(OrderChangeNotifier.class);
+
+    /**
+     * The connection of a subscriber
+     */
+    public interface Sink {
+        CompletionStage<?> send(OrderChange change);
+
+        // the subscriber fell behind and is closed
+        CompletionStage<?> sendOverflow();
+
+        CompletionStage<?> sendKeepAlive();
+
+        boolean isClosed();
+
+        void close();
+    }
+
+    private static OrderChangeNotifier instance;
+
+    private final int bufferSize;
+    private final Executor senders;
+    private final Map<String, Set<Subscriber>> byOrder = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscriber>> byCustomer = new ConcurrentHashMap<>();
+
+    public synchronized static OrderChangeNotifier instance() {
+        if (instance == null) {
+            ScheduledExecutorService senders = Executors.newScheduledThreadPool(
+                    Runtime.getRuntime().availableProcessors(), r -> {
+                        Thread t = new Thread(r, "order-change-sender");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            OrderChangeNotifier notifier = new OrderChangeNotifier(ApplicationConfig.getSseBufferSize(), senders);
+            long keepAliveSec = ApplicationConfig.getSseKeepAliveSec();
+            if (keepAliveSec > 0) {
+                senders.scheduleWithFixedDelay(notifier::keepAlive, keepAliveSec, keepAliveSec, TimeUnit.SECONDS);
+            }
+            // only published once set up, a failure is retried by the next call
+            instance = notifier;
+        }
+        return instance;
+    }
+
+    OrderChangeNotifier(int bufferSize, Executor senders) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid change buffer size " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.senders = senders;
+    }
+
+    public void subscribeOrder(String orderID, Sink sink) {
+        subscribe(byOrder, orderID, sink);
+    }
+
+    public void subscribeCustomer(String customerID, Sink sink) {
+        subscribe(byCustomer, customerID, sink);
+    }
+
+    /**
+     * @return false when nobody listens, the handlers then do not even build the changes
+     */
+    public boolean hasSubscribers() {
+        return !byOrder.isEmpty() || !byCustomer.isEmpty();
+    }
+
+    public void publish(OrderChange change) {
+        offer(byOrder, change.getOrderID(), change);
+        offer(byCustomer, change.getCustomerID(), change);
+    }
+
+    // sends a keep alive to the subscribers with nothing to send
+    void keepAlive() {
+        try {
+            keepAlive(byOrder);
+            keepAlive(byCustomer);
+        } catch (RuntimeException e) {
+            logger.warn("Failed sending keep alives", e);
+        }
+    }
+
+    private static void keepAlive(Map<String, Set<Subscriber>> subscriptions) {
+        for (Set<Subscriber> subscribers : subscriptions.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.keepAlive();
+            }
+        }
+    }
+
+    private void subscribe(Map<String, Set<Subscriber>> subscriptions, String key, Sink sink) {
+        Subscriber subscriber = new Subscriber(subscriptions, key, sink);
+        subscriptions.compute(key, (k, subscribers) -> {
+            Set<Subscriber> result = subscribers == null ? ConcurrentHashMap.newKeySet() : subscribers;
+            result.add(subscriber);
+            return result;
+        });
+    }
+
+    private static void offer(Map<String, Set<Subscriber>> subscriptions, String key, OrderChange change) {
+        Set<Subscriber> subscribers = key == null ? null : subscriptions.get(key);
+        if (subscribers != null) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(change);
+            }
+        }
+    }
+
+    private class Subscriber {
+        private final Map<String, Set<Subscriber>> subscriptions;
+        private final String key;
+        private final Sink sink;
+        private final BlockingQueue<OrderChange> buffer;
+        // true while a sender sends for this subscriber, at most one does
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean overflowed;
+        private volatile boolean keepAlivePending;
+
+        private Subscriber(Map<String, Set<Subscriber>> subscriptions, String key, Sink sink) {
+            this.subscriptions = subscriptions;
+            this.key = key;
+            this.sink = sink;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private void offer(OrderChange change) {
+            if (!overflowed && !buffer.offer(change)) {
+                overflowed = true;
+            }
+            schedule();
+        }
+
+        private void keepAlive() {
+            if (buffer.isEmpty()) {
+                keepAlivePending = true;
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (sending.compareAndSet(false, true)) {
+                senders.execute(this::sendNext);
+            }
+        }
+
+        private void sendNext() {
+            try {
+                if (sink.isClosed()) {
+                    close();
+                    return;
+                }
+                if (overflowed) {
+                    logger.info("Closing the change events of " + key + ", more than " + bufferSize + " changes behind");
+                    sink.sendOverflow().whenComplete((result, error) -> close());
+                    return;
+                }
+                OrderChange change = buffer.poll();
+                CompletionStage<?> sent;
+                if (change != null) {
+                    sent = sink.send(change);
+                } else if (keepAlivePending) {
+                    keepAlivePending = false;
+                    sent = sink.sendKeepAlive();
+                } else {
+                    sending.set(false);
+                    // offered after the poll, before the flag was reset
+                    if (!buffer.isEmpty() || overflowed || keepAlivePending) {
+                        schedule();
+                    }
+                    return;
+                }
+                sent.whenComplete((result, error) -> {
+                    if (error != null) {
+                        close();
+                    } else {
+                        senders.execute(this::sendNext);
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.warn("Failed sending the change events of " + key, e);
+                close();
+            }
+        }
+
+        private void close() {
+            subscriptions.computeIfPresent(key, (k, subscribers) -> {
+                subscribers.remove(this);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+            buffer.clear();
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                logger.debug("Failed closing the change events of " + key, e);
+            }
+        }
+    }
+
+}
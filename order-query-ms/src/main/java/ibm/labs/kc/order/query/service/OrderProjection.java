@@ -0,0 +1,77 @@
+package ibm.labs.kc.order.query.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.google.gson.stream.JsonWriter;
+
+import ibm.labs.kc.order.query.dao.QueryOrder;
+import ibm.labs.kc.order.query.model.events.EventJson;
+
+/**
+ * Writes the selected fields of the orders, named as in the full JSON of an order, straight from
+ * their getters without writing the other fields.
+ */
+public class OrderProjection {
+
+    private static final Map<String, Function<QueryOrder, Object>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("orderID", QueryOrder::getOrderID);
+        FIELDS.put("productID", QueryOrder::getProductID);
+        FIELDS.put("customerID", QueryOrder::getCustomerID);
+        FIELDS.put("quantity", QueryOrder::getQuantity);
+        FIELDS.put("pickupAddress", QueryOrder::getPickupAddress);
+        FIELDS.put("pickupDate", QueryOrder::getPickupDate);
+        FIELDS.put("destinationAddress", QueryOrder::getDestinationAddress);
+        FIELDS.put("expectedDeliveryDate", QueryOrder::getExpectedDeliveryDate);
+        FIELDS.put("status", QueryOrder::getStatus);
+        FIELDS.put("voyageID", QueryOrder::getVoyageID);
+        FIELDS.put("containerID", QueryOrder::getContainerID);
+        FIELDS.put("reason", QueryOrder::getReason);
+    }
+
+    private final List<String> names;
+    private final List<Function<QueryOrder, Object>> getters;
+
+    private OrderProjection(List<String> names) {
+        this.names = names;
+        this.getters = new ArrayList<>(names.size());
+        for (String name : names) {
+            getters.add(FIELDS.get(name));
+        }
+    }
+
+    /**
+     * @param fields the names of the fields to write, written once each in the given order
+     */
+    public static OrderProjection of(List<String> fields) {
+        for (String field : fields) {
+            if (!FIELDS.containsKey(field)) {
+                throw new IllegalArgumentException("Unknown order field " + field + ", expected one of " + FIELDS.keySet());
+            }
+        }
+        return new OrderProjection(new ArrayList<>(new LinkedHashSet<>(fields)));
+    }
+
+    /**
+     * Writes the fields as a JSON object, null values left out like in the full JSON of an order
+     */
+    public void write(QueryOrder order, JsonWriter writer) throws IOException {
+        writer.beginObject();
+        for (int i = 0; i < getters.size(); i++) {
+            Object value = getters.get(i).apply(order);
+            if (value != null) {
+                writer.name(names.get(i));
+                EventJson.gson().toJson(value, value.getClass(), writer);
+            }
+        }
+        writer.endObject();
+    }
+
+}
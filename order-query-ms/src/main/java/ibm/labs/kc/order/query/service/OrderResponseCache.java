@@ -0,0 +1,147 @@
+package ibm.labs.kc.order.query.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import ibm.labs.kc.order.query.kafka.ApplicationConfig;
+
+/**
+ * UTF-8 JSON of the orders recently read by ID, so that the hot orders are not serialized per request.
+ *
+ * An entry keeps the version of the order it was written from and is only served for that version,
+ * whatever the order of the reads and the updates. The event handlers also invalidate the entry of the
+ * orders they update, so that stale entries do not take the room of the others.
+ * The entries are split in segments, each an LRU map under its own lock, so that the reads of different
+ * orders seldom wait on each other. A capacity of 0 disables the cache.
+ */
+public class OrderResponseCache {
+    private static final int SEGMENTS = 16;
+
+    private static OrderResponseCache instance;
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public synchronized static OrderResponseCache instance() {
+        if (instance == null) {
+            instance = new OrderResponseCache(ApplicationConfig.getOrderResponseCacheSize());
+        }
+        return instance;
+    }
+
+    OrderResponseCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid response cache size " + capacity);
+        }
+        this.capacity = capacity;
+        int count = Math.min(SEGMENTS, capacity);
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // the first segments take the remainder
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @param encoder writes the JSON of the order at version or later, null when it is unknown
+     * @return the JSON of the order, null when the encoder returns null
+     */
+    public byte[] get(String orderID, long version, Supplier<byte[]> encoder) {
+        Segment segment = segmentFor(orderID);
+        Cached entry;
+        synchronized (segment) {
+            entry = segment.get(orderID);
+        }
+        if (entry != null && entry.version == version) {
+            hits.increment();
+            return entry.json;
+        }
+        misses.increment();
+        // encoded outside the lock, racing misses of the same order encode it twice
+        byte[] json = encoder.get();
+        if (json != null) {
+            synchronized (segment) {
+                Cached current = segment.get(orderID);
+                if (current == null || current.version <= version) {
+                    segment.put(orderID, new Cached(version, json));
+                }
+            }
+        }
+        return json;
+    }
+
+    public void invalidate(String orderID) {
+        if (!isEnabled()) {
+            return;
+        }
+        Segment segment = segmentFor(orderID);
+        synchronized (segment) {
+            segment.remove(orderID);
+        }
+    }
+
+    /**
+     * @return the size and the hit, miss and eviction counts as a JSON object
+     */
+    public String statsAsJson() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        return "{\"capacity\":" + capacity + ",\"size\":" + size + ",\"hits\":" + hitCount + ",\"misses\":" + missCount
+                + ",\"evictions\":" + evictions.sum() + ",\"hitRatio\":" + (lookups == 0 ? 0.0 : (double) hitCount / lookups)
+                + "}";
+    }
+
+    private Segment segmentFor(String orderID) {
+        int hash = orderID.hashCode();
+        // spread the high bits like HashMap does
+        hash ^= (hash >>> 16);
+        return segments[Math.floorMod(hash, segments.length)];
+    }
+
+    private static class Cached {
+        private final long version;
+        private final byte[] json;
+
+        private Cached(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+    // access ordered, only used holding its monitor
+    private class Segment extends LinkedHashMap<String, Cached> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
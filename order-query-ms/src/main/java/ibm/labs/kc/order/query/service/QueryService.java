@@ -1,15 +1,34 @@
 package ibm.labs.kc.order.query.service;
 
-import java.util.Collection;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
 
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
@@ -18,15 +37,18 @@ import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
 import ibm.labs.kc.order.query.dao.OrderDAO;
 import ibm.labs.kc.order.query.dao.OrderDAOMock;
 import ibm.labs.kc.order.query.dao.QueryOrder;
+import ibm.labs.kc.order.query.dao.StripedLocks;
+import ibm.labs.kc.order.query.dto.OrderBatchRequest;
 import ibm.labs.kc.order.query.model.Cancellation;
 import ibm.labs.kc.order.query.model.ContainerAssignment;
 import ibm.labs.kc.order.query.model.Order;
 import ibm.labs.kc.order.query.model.Rejection;
+import ibm.labs.kc.order.query.rest.ETags;
 import ibm.labs.kc.order.query.model.VoyageAssignment;
 import ibm.labs.kc.order.query.model.events.AssignContainerEvent;
 import ibm.labs.kc.order.query.model.events.AssignOrderEvent;
@@ -36,7 +58,10 @@ import ibm.labs.kc.order.query.model.events.ContainerOffShipEvent;
 import ibm.labs.kc.order.query.model.events.ContainerOnShipEvent;
 import ibm.labs.kc.order.query.model.events.CreateOrderEvent;
 import ibm.labs.kc.order.query.model.events.Event;
+import ibm.labs.kc.order.query.model.events.EventBatches;
+import ibm.labs.kc.order.query.model.events.EventJson;
 import ibm.labs.kc.order.query.model.events.EventListener;
+import ibm.labs.kc.order.query.model.events.EventTracer;
 import ibm.labs.kc.order.query.model.events.OrderCompletedEvent;
 import ibm.labs.kc.order.query.model.events.OrderEvent;
 import ibm.labs.kc.order.query.model.events.RejectOrderEvent;
@@ -45,11 +70,23 @@ import ibm.labs.kc.order.query.model.events.UpdateOrderEvent;
 @Path("orders")
 public class QueryService implements EventListener {
     static final Logger logger = LoggerFactory.getLogger(QueryService.class);
+    // shared by all the instances, events of different orders are applied in parallel
+    private static final StripedLocks orderLocks = new StripedLocks();
+    static final String NDJSON = "application/x-ndjson";
+    // response header of a full page, the ID to pass as the after parameter of the next page
+    static final String NEXT_AFTER_HEADER = "X-Next-After";
+    static final int MAX_LIMIT = 1000;
 
     private OrderDAO orderDAO;
+    private EventTracer tracer;
+    private OrderChangeNotifier notifier;
+    private OrderResponseCache responseCache;
 
     public QueryService() {
         orderDAO = OrderDAOMock.instance();
+        tracer = EventTracer.instance();
+        notifier = OrderChangeNotifier.instance();
+        responseCache = OrderResponseCache.instance();
     }
 
     @GET
@@ -58,164 +95,370 @@ public class QueryService implements EventListener {
     @Operation(summary = "Query an order by id", description = "")
     @APIResponses(value = {
             @APIResponse(responseCode = "404", description = "Order not found", content = @Content(mediaType = "text/plain")),
+            @APIResponse(responseCode = "304", description = "Order not modified since the If-None-Match ETag"),
             @APIResponse(responseCode = "200", description = "Order found", content = @Content(mediaType = "application/json")) })
-    public Response getById(@PathParam("Id") String orderId) {
+    public Response getById(@PathParam("Id") String orderId, @Context Request request) {
         logger.info("QueryService.getById(" + orderId + ")");
 
+        // the version is read first, an update in between only makes the tag older than the order
+        long version = orderDAO.getVersion(orderId);
+        if (version == 0) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        EntityTag tag = ETags.of(version);
+        ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        if (responseCache.isEnabled()) {
+            byte[] json = responseCache.get(orderId, version,
+                    () -> orderDAO.getById(orderId).map(QueryService::toJsonBytes).orElse(null));
+            if (json == null) {
+                return Response.status(Status.NOT_FOUND).build();
+            }
+            return Response.ok(json).tag(tag).build();
+        }
         Optional<QueryOrder> oo = orderDAO.getById(orderId);
-        if (oo.isPresent()) {
-            return Response.ok().entity(oo.get()).build();
-        } else {
+        if (!oo.isPresent()) {
             return Response.status(Status.NOT_FOUND).build();
         }
+        return Response.ok().entity(oo.get()).tag(tag).build();
     }
 
     @GET
     @Path("byManuf/{manuf}")
     @Produces(MediaType.APPLICATION_JSON)
-    @Operation(summary = "Query orders by manuf", description = "")
+    @Operation(summary = "Query orders by manuf, all of them or one page by ascending ID", description = "")
     @APIResponses(value = {
+            @APIResponse(responseCode = "400", description = "Invalid limit", content = @Content(mediaType = "text/plain")),
             @APIResponse(responseCode = "200", description = "Orders found", content = @Content(mediaType = "application/json")) })
-    public Response getByManuf(@PathParam("manuf") String manuf) {
-        logger.info("QueryService.getByManuf(" + manuf + ")");
+    public Response getByManuf(@PathParam("manuf") String manuf, @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after) {
+        logger.info("QueryService.getByManuf(" + manuf + ", " + limit + ", " + after + ")");
+
+        return jsonResponse(orderDAO.iterateByManuf(manuf, after), limit, after);
+    }
+
+    @GET
+    @Path("byManuf/{manuf}")
+    @Produces(NDJSON)
+    @Operation(summary = "Stream the orders of a manuf by ascending ID, one JSON document per line", description = "")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "400", description = "Invalid limit", content = @Content(mediaType = "text/plain")),
+            @APIResponse(responseCode = "200", description = "Orders found", content = @Content(mediaType = NDJSON)) })
+    public Response streamByManuf(@PathParam("manuf") String manuf, @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after) {
+        logger.info("QueryService.streamByManuf(" + manuf + ", " + limit + ", " + after + ")");
 
-        Collection<QueryOrder> orders = orderDAO.getByManuf(manuf);
-        return Response.ok().entity(orders).build();
+        return ndjsonResponse(orderDAO.iterateByManuf(manuf, after), limit);
     }
 
     @GET
     @Path("byStatus/{status}")
     @Produces(MediaType.APPLICATION_JSON)
-    @Operation(summary = "Query orders by status", description = "")
+    @Operation(summary = "Query orders by status, all of them or one page by ascending ID", description = "")
     @APIResponses(value = {
+            @APIResponse(responseCode = "400", description = "Invalid limit", content = @Content(mediaType = "text/plain")),
             @APIResponse(responseCode = "200", description = "Orders found", content = @Content(mediaType = "application/json")) })
-    public Response getByStatus(@PathParam("status") String status) {
-        logger.info("QueryService.getByStatus(" + status + ")");
+    public Response getByStatus(@PathParam("status") String status, @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after) {
+        logger.info("QueryService.getByStatus(" + status + ", " + limit + ", " + after + ")");
+
+        return jsonResponse(orderDAO.iterateByStatus(status, after), limit, after);
+    }
+
+    @GET
+    @Path("byStatus/{status}")
+    @Produces(NDJSON)
+    @Operation(summary = "Stream the orders in a status by ascending ID, one JSON document per line", description = "")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "400", description = "Invalid limit", content = @Content(mediaType = "text/plain")),
+            @APIResponse(responseCode = "200", description = "Orders found", content = @Content(mediaType = NDJSON)) })
+    public Response streamByStatus(@PathParam("status") String status, @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after) {
+        logger.info("QueryService.streamByStatus(" + status + ", " + limit + ", " + after + ")");
+
+        return ndjsonResponse(orderDAO.iterateByStatus(status, after), limit);
+    }
+
+    @POST
+    @Path("batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Query many orders by id in one request, optionally only some of their fields", description = "")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "400", description = "Bad batch request", content = @Content(mediaType = "text/plain")),
+            @APIResponse(responseCode = "200", description = "The orders found, in the order of the IDs", content = @Content(mediaType = "application/json")) })
+    public Response getByIds(OrderBatchRequest batch) {
+        OrderBatchRequest.validate(batch);
+        logger.info("QueryService.getByIds(" + batch.getOrderIDs().size() + " IDs, " + batch.getFields() + ")");
 
-        Collection<QueryOrder> orders = orderDAO.getByStatus(status);
-        return Response.ok().entity(orders).build();
+        OrderProjection projection = batch.getFields() == null ? null : OrderProjection.of(batch.getFields());
+        // an ID given twice is returned once
+        List<QueryOrder> orders = orderDAO.getByIds(new LinkedHashSet<>(batch.getOrderIDs()));
+        StreamingOutput stream = out -> {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            writer.beginArray();
+            for (QueryOrder order : orders) {
+                if (projection == null) {
+                    EventJson.gson().toJson(order, QueryOrder.class, writer);
+                } else {
+                    projection.write(order, writer);
+                }
+            }
+            writer.endArray();
+            writer.flush();
+        };
+        return Response.ok(stream).build();
+    }
+
+    @GET
+    @Path("changes/{Id}")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @Operation(summary = "Push the changes of an order and of its history as server-sent events", description = "")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Change events, named order, history or overflow",
+                    content = @Content(mediaType = MediaType.SERVER_SENT_EVENTS)) })
+    public void orderChanges(@PathParam("Id") String orderId, @Context SseEventSink eventSink, @Context Sse sse) {
+        logger.info("QueryService.orderChanges(" + orderId + ")");
+
+        notifier.subscribeOrder(orderId, new SseSink(eventSink, sse));
+    }
+
+    @GET
+    @Path("changes/byManuf/{manuf}")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @Operation(summary = "Push the changes of the orders of a manuf and of their histories as server-sent events", description = "")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Change events, named order, history or overflow",
+                    content = @Content(mediaType = MediaType.SERVER_SENT_EVENTS)) })
+    public void manufChanges(@PathParam("manuf") String manuf, @Context SseEventSink eventSink, @Context Sse sse) {
+        logger.info("QueryService.manufChanges(" + manuf + ")");
+
+        notifier.subscribeCustomer(manuf, new SseSink(eventSink, sse));
+    }
+
+    /**
+     * Without limit nor after, all the orders as a JSON array written as they are iterated.
+     * Otherwise one page, with the after parameter of the next page in a header when the page is full.
+     */
+    private static Response jsonResponse(Iterator<QueryOrder> orders, Integer limit, String after) {
+        if (limit == null && after == null) {
+            StreamingOutput stream = out -> {
+                JsonWriter writer = new JsonWriter(
+                        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+                writer.beginArray();
+                while (orders.hasNext()) {
+                    EventJson.gson().toJson(orders.next(), QueryOrder.class, writer);
+                }
+                writer.endArray();
+                writer.flush();
+            };
+            return Response.ok(stream).build();
+        }
+        int pageSize = checkLimit(limit == null ? MAX_LIMIT : limit);
+        List<QueryOrder> page = new ArrayList<>(Math.min(pageSize, 64));
+        while (page.size() < pageSize && orders.hasNext()) {
+            page.add(orders.next());
+        }
+        ResponseBuilder response = Response.ok().entity(page);
+        if (page.size() == pageSize) {
+            response.header(NEXT_AFTER_HEADER, page.get(pageSize - 1).getOrderID());
+        }
+        return response.build();
+    }
+
+    private static Response ndjsonResponse(Iterator<QueryOrder> orders, Integer limit) {
+        long max = limit == null ? Long.MAX_VALUE : checkLimit(limit);
+        StreamingOutput stream = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (long count = 0; count < max && orders.hasNext(); count++) {
+                EventJson.gson().toJson(orders.next(), QueryOrder.class, writer);
+                writer.write('\n');
+            }
+            writer.flush();
+        };
+        return Response.ok(stream).build();
+    }
+
+    private static byte[] toJsonBytes(QueryOrder order) {
+        return EventJson.gson().toJson(order, QueryOrder.class).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
     }
 
     @Override
     public void handle(Event event, String event_type) {
-        String orderID;
-        Optional<QueryOrder> oqo;
         try {
-            OrderEvent orderEvent = (OrderEvent) event;
-            if(orderEvent!=null){
-            	System.out.println("@@@@ in handle " + new Gson().toJson(orderEvent));
-                switch (orderEvent.getType()) {
-                case OrderEvent.TYPE_CREATED:
-                    synchronized (orderDAO) {
-                        Order o1 = ((CreateOrderEvent) orderEvent).getPayload();
-                        QueryOrder qo = QueryOrder.newFromOrder(o1);
-                        orderDAO.add(qo);
-                    }
-                    break;
-                case OrderEvent.TYPE_UPDATED:
-                    synchronized (orderDAO) {
-                        Order o2 = ((UpdateOrderEvent) orderEvent).getPayload();
-                        orderID = o2.getOrderID();
-                        oqo = orderDAO.getById(orderID);
-                        if (oqo.isPresent()) {
-                            QueryOrder qo = oqo.get();
-                            qo.update(o2);
-                            orderDAO.update(qo);
-                        } else {
-                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
+            apply(event);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The events of each order are applied holding the order lock once, successive updates merged.
+     * The lock blocks of apply() then only re-enter the monitor held.
+     */
+    @Override
+    public void handleBatch(List<? extends Event> events, String event_type, BiConsumer<Event, Exception> failed) {
+        List<OrderEvent> orderEvents = new ArrayList<>(events.size());
+        for (Event event : events) {
+            orderEvents.add((OrderEvent) event);
+        }
+        for (Map.Entry<String, List<OrderEvent>> order : EventBatches.groupBy(orderEvents, OrderEvent::getOrderID).entrySet()) {
+            synchronized (orderLocks.lockFor(order.getKey())) {
+                for (List<OrderEvent> run : UpdateOrderEvent.runs(order.getValue())) {
+                    try {
+                        apply(UpdateOrderEvent.merge(run));
+                    } catch (Exception e) {
+                        // the merged updates failed together
+                        for (OrderEvent event : run) {
+                            failed.accept(event, e);
                         }
                     }
-                    break;
-                case OrderEvent.TYPE_ASSIGNED:
-                    synchronized (orderDAO) {
-                        VoyageAssignment voyageAssignment = ((AssignOrderEvent) orderEvent).getPayload();
-                        orderID = voyageAssignment.getOrderID();
-                        oqo = orderDAO.getById(orderID);
-                        if (oqo.isPresent()) {
-                            QueryOrder qo = oqo.get();
-                            qo.assign(voyageAssignment);
-                            orderDAO.update(qo);
-                        } else {
-                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                        }
+                }
+            }
+        }
+    }
+
+    // throws when the event cannot be applied: handle() logs it, handleBatch() reports it
+    private void apply(Event event) {
+        String orderID;
+        Optional<QueryOrder> oqo;
+        tracer.trace("QueryService", event);
+        OrderEvent orderEvent = (OrderEvent) event;
+        if(orderEvent!=null){
+            Object lock = orderLocks.lockFor(orderEvent.getOrderID());
+            switch (orderEvent.getType()) {
+            case OrderEvent.TYPE_CREATED:
+                synchronized (lock) {
+                    Order o1 = ((CreateOrderEvent) orderEvent).getPayload();
+                    QueryOrder qo = QueryOrder.newFromOrder(o1);
+                    orderDAO.add(qo);
+                }
+                break;
+            case OrderEvent.TYPE_UPDATED:
+                synchronized (lock) {
+                    Order o2 = ((UpdateOrderEvent) orderEvent).getPayload();
+                    orderID = o2.getOrderID();
+                    oqo = orderDAO.getById(orderID);
+                    if (oqo.isPresent()) {
+                        QueryOrder qo = oqo.get();
+                        qo.update(o2);
+                        orderDAO.update(qo);
+                    } else {
+                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                     }
-                    break;
-                case OrderEvent.TYPE_REJECTED:
-                    synchronized (orderDAO) {
-                        Rejection rejection = ((RejectOrderEvent) orderEvent).getPayload();
-                        orderID = rejection.getOrderID();
-                        oqo = orderDAO.getById(orderID);
-                        if (oqo.isPresent()) {
-                            QueryOrder qo = oqo.get();
-                            qo.reject(rejection);
-                            orderDAO.update(qo);
-                        } else {
-                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                        }
+                }
+                break;
+            case OrderEvent.TYPE_ASSIGNED:
+                synchronized (lock) {
+                    VoyageAssignment voyageAssignment = ((AssignOrderEvent) orderEvent).getPayload();
+                    orderID = voyageAssignment.getOrderID();
+                    oqo = orderDAO.getById(orderID);
+                    if (oqo.isPresent()) {
+                        QueryOrder qo = oqo.get();
+                        qo.assign(voyageAssignment);
+                        orderDAO.update(qo);
+                    } else {
+                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                     }
-                    break;
-                case OrderEvent.TYPE_CONTAINER_ALLOCATED:
-                    synchronized (orderDAO) {
-                    	ContainerAssignment container = ((AssignContainerEvent) orderEvent).getPayload();
-                        orderID = container.getOrderID();
-                        oqo = orderDAO.getById(orderID);
-                        if (oqo.isPresent()) {
-                            QueryOrder qo = oqo.get();
-                            qo.assignContainer(container);
-                            orderDAO.update(qo);
-                        } else {
-                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                        }
+                }
+                break;
+            case OrderEvent.TYPE_REJECTED:
+                synchronized (lock) {
+                    Rejection rejection = ((RejectOrderEvent) orderEvent).getPayload();
+                    orderID = rejection.getOrderID();
+                    oqo = orderDAO.getById(orderID);
+                    if (oqo.isPresent()) {
+                        QueryOrder qo = oqo.get();
+                        qo.reject(rejection);
+                        orderDAO.update(qo);
+                    } else {
+                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                     }
-                    break;
-                case OrderEvent.TYPE_CONTAINER_DELIVERED:
-                    synchronized (orderDAO) {
-                    	ContainerAssignment container = ((ContainerDeliveredEvent) orderEvent).getPayload();
-                        orderID = container.getOrderID();
-                        oqo = orderDAO.getById(orderID);
-                        if (oqo.isPresent()) {
-                            QueryOrder qo = oqo.get();
-                            qo.containerDelivered(container);
-                            orderDAO.update(qo);
-                        } else {
-                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                        }
+                }
+                break;
+            case OrderEvent.TYPE_CONTAINER_ALLOCATED:
+                synchronized (lock) {
+                	ContainerAssignment container = ((AssignContainerEvent) orderEvent).getPayload();
+                    orderID = container.getOrderID();
+                    oqo = orderDAO.getById(orderID);
+                    if (oqo.isPresent()) {
+                        QueryOrder qo = oqo.get();
+                        qo.assignContainer(container);
+                        orderDAO.update(qo);
+                    } else {
+                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                     }
-                    break;
-                case OrderEvent.TYPE_CANCELLED:
-                    synchronized (orderDAO) {
-                        Cancellation cancellation = ((CancelOrderEvent) orderEvent).getPayload();
-                        orderID = cancellation.getOrderID();
-                        oqo = orderDAO.getById(orderID);
-                        if (oqo.isPresent()) {
-                            QueryOrder qo = oqo.get();
-                            qo.cancel(cancellation);
-                            orderDAO.update(qo);
-                        } else {
-                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                        }
+                }
+                break;
+            case OrderEvent.TYPE_CONTAINER_DELIVERED:
+                synchronized (lock) {
+                	ContainerAssignment container = ((ContainerDeliveredEvent) orderEvent).getPayload();
+                    orderID = container.getOrderID();
+                    oqo = orderDAO.getById(orderID);
+                    if (oqo.isPresent()) {
+                        QueryOrder qo = oqo.get();
+                        qo.containerDelivered(container);
+                        orderDAO.update(qo);
+                    } else {
+                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                     }
-                    break;
-                case OrderEvent.TYPE_COMPLETED:
-                    synchronized (orderDAO) {
-                        Order order = ((OrderCompletedEvent) orderEvent).getPayload();
-                        orderID = order.getOrderID();
-                        oqo = orderDAO.getById(orderID);
-                        if (oqo.isPresent()) {
-                            QueryOrder qo = oqo.get();
-                            qo.orderCompleted(order);
-                            orderDAO.update(qo);
-                        } else {
-                            throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
-                        }
+                }
+                break;
+            case OrderEvent.TYPE_CANCELLED:
+                synchronized (lock) {
+                    Cancellation cancellation = ((CancelOrderEvent) orderEvent).getPayload();
+                    orderID = cancellation.getOrderID();
+                    oqo = orderDAO.getById(orderID);
+                    if (oqo.isPresent()) {
+                        QueryOrder qo = oqo.get();
+                        qo.cancel(cancellation);
+                        orderDAO.update(qo);
+                    } else {
+                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
                     }
-                    break;
-                default:
-                    logger.warn("Unknown event type: " + orderEvent);
                 }
+                break;
+            case OrderEvent.TYPE_COMPLETED:
+                synchronized (lock) {
+                    Order order = ((OrderCompletedEvent) orderEvent).getPayload();
+                    orderID = order.getOrderID();
+                    oqo = orderDAO.getById(orderID);
+                    if (oqo.isPresent()) {
+                        QueryOrder qo = oqo.get();
+                        qo.orderCompleted(order);
+                        orderDAO.update(qo);
+                    } else {
+                        throw new IllegalStateException("Cannot update - Unknown order Id " + orderID);
+                    }
+                }
+                break;
+            default:
+                logger.warn("Unknown event type: " + orderEvent);
+                return;
             }
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
+            responseCache.invalidate(orderEvent.getOrderID());
+            notifyChange(orderEvent, lock);
+        }
+    }
+
+    // the change is read holding the order lock, before the next event of the order is applied
+    private void notifyChange(OrderEvent orderEvent, Object lock) {
+        if (!notifier.hasSubscribers()) {
+            return;
+        }
+        String orderID = orderEvent.getOrderID();
+        synchronized (lock) {
+            orderDAO.getById(orderID).ifPresent(
+                    order -> notifier.publish(OrderChange.ofOrder(order, orderDAO.getVersion(orderID), orderEvent)));
         }
     }
 
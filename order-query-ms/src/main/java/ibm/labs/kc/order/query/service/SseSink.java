@@ -0,0 +1,52 @@
+package ibm.labs.kc.order.query.service;
+
+import java.util.concurrent.CompletionStage;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+/**
+ * Writes the order changes to a server-sent events connection, the event name is the kind of change.
+ */
+class SseSink implements OrderChangeNotifier.Sink {
+    static final String OVERFLOW_EVENT = "overflow";
+
+    private final SseEventSink eventSink;
+    private final Sse sse;
+
+    SseSink(SseEventSink eventSink, Sse sse) {
+        this.eventSink = eventSink;
+        this.sse = sse;
+    }
+
+    @Override
+    public CompletionStage<?> send(OrderChange change) {
+        return eventSink.send(sse.newEventBuilder()
+                .name(change.getKind())
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(String.class, change.toJson())
+                .build());
+    }
+
+    @Override
+    public CompletionStage<?> sendOverflow() {
+        return eventSink.send(sse.newEvent(OVERFLOW_EVENT, "too many changes behind, read the current state"));
+    }
+
+    @Override
+    public CompletionStage<?> sendKeepAlive() {
+        return eventSink.send(sse.newEventBuilder().comment("keep alive").build());
+    }
+
+    @Override
+    public boolean isClosed() {
+        return eventSink.isClosed();
+    }
+
+    @Override
+    public void close() {
+        eventSink.close();
+    }
+
+}
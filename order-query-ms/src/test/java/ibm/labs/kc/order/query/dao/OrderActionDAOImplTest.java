@@ -4,14 +4,18 @@ import ibm.labs.kc.order.query.action.OrderAction;
 import ibm.labs.kc.order.query.action.OrderActionDAOImpl;
 import ibm.labs.kc.order.query.action.OrderActionInfo;
 import ibm.labs.kc.order.query.model.Address;
+import ibm.labs.kc.order.query.model.Container;
+import ibm.labs.kc.order.query.model.ContainerAssignment;
 import ibm.labs.kc.order.query.model.Order;
 import ibm.labs.kc.order.query.model.VoyageAssignment;
 import ibm.labs.kc.order.query.model.events.AssignOrderEvent;
+import ibm.labs.kc.order.query.model.events.ContainerEvent;
 import ibm.labs.kc.order.query.model.events.OrderEvent;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -62,4 +66,95 @@ public class OrderActionDAOImplTest {
         assertArrayEquals(Collections.unmodifiableCollection(expected).toArray(),byStatus.toArray());
     }
 
+    @Test
+    public void testOrderHistoryMergesContainerHistory() {
+        OrderActionDAOImpl orderActionDAO = new OrderActionDAOImpl();
+        Address addr = new Address("myStreet", "myCity", "myCountry", "myState", "myZipcode");
+
+        OrderActionInfo order = OrderActionInfo.newFromOrder(new Order("orderID1", "productId", "custId1", 2,
+                addr, "2019-01-10T13:30Z",
+                addr, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+        OrderAction created = OrderAction.newFromOrder(order, 100, OrderEvent.TYPE_CREATED);
+        orderActionDAO.addOrder(created);
+        orderActionDAO.orderHistory(created);
+
+        OrderActionInfo container = OrderActionInfo.newFromContainer(new Container("c1", "brand", "Reefer", 20, 1.0, 2.0, "atDock"));
+        OrderAction added = OrderAction.newFromContainer(container, 50, ContainerEvent.TYPE_CONTAINER_ADDED);
+        orderActionDAO.addContainer(added);
+        orderActionDAO.containerHistory(added);
+        // replayed twice, kept once
+        orderActionDAO.containerHistory(added);
+
+        order.assignContainer(new ContainerAssignment("orderID1", "c1"));
+        OrderAction allocated = OrderAction.newFromOrder(order, 300, OrderEvent.TYPE_CONTAINER_ALLOCATED);
+        orderActionDAO.updateOrder(allocated);
+        orderActionDAO.orderHistory(allocated);
+
+        // out of order event
+        OrderAction atLocation = OrderAction.newFromContainer(container, 200, ContainerEvent.TYPE_CONTAINER_AT_LOCATION);
+        orderActionDAO.updateContainer(atLocation);
+        orderActionDAO.containerHistory(atLocation);
+        OrderAction onShip = OrderAction.newFromContainer(container, 400, ContainerEvent.TYPE_CONTAINER_ON_SHIP);
+        orderActionDAO.updateContainer(onShip);
+        orderActionDAO.containerHistory(onShip);
+
+        Object[] expected = new Object[] {
+                new OrderAction(50, ContainerEvent.TYPE_CONTAINER_ADDED, "container"),
+                new OrderAction(100, OrderEvent.TYPE_CREATED, "order"),
+                new OrderAction(200, ContainerEvent.TYPE_CONTAINER_AT_LOCATION, "container"),
+                new OrderAction(300, OrderEvent.TYPE_CONTAINER_ALLOCATED, "order"),
+                new OrderAction(400, ContainerEvent.TYPE_CONTAINER_ON_SHIP, "container") };
+        assertArrayEquals(expected, orderActionDAO.getOrderStatus("orderID1").toArray());
+        assertEquals(3, orderActionDAO.getContainerHistory().size());
+        assertTrue(orderActionDAO.getOrderStatus("unknown").isEmpty());
+        assertEquals(expected.length, orderActionDAO.getOrderStatusVersion("orderID1"));
+        assertEquals(0, orderActionDAO.getOrderStatusVersion("unknown"));
+        assertEquals(Collections.singletonList("orderID1"), new ArrayList<>(orderActionDAO.getOrdersOfContainer("c1")));
+    }
+
+    private final OrderActionInfo container = OrderActionInfo.newFromContainer(
+            new Container("c1", "brand", "Reefer", 20, 1.0, 2.0, "atDock"));
+
+    // the container handlers update the current action then append it to the history
+    private static void applyContainerEvent(OrderActionDAOImpl orderActionDAO, OrderAction orderAction) {
+        orderActionDAO.updateContainer(orderAction);
+        orderActionDAO.containerHistory(orderAction);
+    }
+
+    private OrderActionDAOImpl containerOnShipAt100() {
+        OrderActionDAOImpl orderActionDAO = new OrderActionDAOImpl();
+        OrderAction added = OrderAction.newFromContainer(container, 50, ContainerEvent.TYPE_CONTAINER_ADDED);
+        orderActionDAO.addContainer(added);
+        orderActionDAO.containerHistory(added);
+        applyContainerEvent(orderActionDAO, OrderAction.newFromContainer(container, 100, ContainerEvent.TYPE_CONTAINER_ON_SHIP));
+        return orderActionDAO;
+    }
+
+    @Test
+    public void testRedeliveredContainerEventIsDropped() {
+        OrderActionDAOImpl orderActionDAO = containerOnShipAt100();
+        applyContainerEvent(orderActionDAO, OrderAction.newFromContainer(container, 100, ContainerEvent.TYPE_CONTAINER_ON_SHIP));
+        assertEquals(2, orderActionDAO.getContainerHistory().size());
+    }
+
+    @Test
+    public void testOtherContainerEventAtTheSameTimeIsKept() {
+        OrderActionDAOImpl orderActionDAO = containerOnShipAt100();
+        applyContainerEvent(orderActionDAO, OrderAction.newFromContainer(container, 100, ContainerEvent.TYPE_CONTAINER_ON_TRUCK));
+        assertEquals(3, orderActionDAO.getContainerHistory().size());
+    }
+
+    @Test
+    public void testRedeliveredContainerEventIsDroppedAfterRestore() {
+        OrderActionDAOImpl orderActionDAO = containerOnShipAt100();
+        OrderActionDAOImpl restored = new OrderActionDAOImpl();
+        restored.restore(new HashMap<>(orderActionDAO.getOrderActions()), new HashMap<>(orderActionDAO.getContainerActions()),
+                new ArrayList<>(orderActionDAO.getOrderHistory()), new ArrayList<>(orderActionDAO.getContainerHistory()));
+
+        applyContainerEvent(restored, OrderAction.newFromContainer(container, 100, ContainerEvent.TYPE_CONTAINER_ON_SHIP));
+        assertEquals(2, restored.getContainerHistory().size());
+        applyContainerEvent(restored, OrderAction.newFromContainer(container, 200, ContainerEvent.TYPE_CONTAINER_OFF_SHIP));
+        assertEquals(3, restored.getContainerHistory().size());
+    }
+
 }
@@ -2,8 +2,13 @@ package ibm.labs.kc.order.query.dao;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -11,6 +16,7 @@ import org.junit.Test;
 
 import ibm.labs.kc.order.query.model.Address;
 import ibm.labs.kc.order.query.model.Order;
+import ibm.labs.kc.order.query.model.VoyageAssignment;
 
 public class OrderDAOMockTest {
 	
@@ -84,4 +90,78 @@ public class OrderDAOMockTest {
         assertEquals(expected, new HashSet<QueryOrder>(byStatus));
     }
 
+    @Test
+    public void testIndexesFollowUpdates() {
+        OrderDAOMock dao = new OrderDAOMock();
+        Address addr = new Address("myStreet", "myCity", "myCountry", "myState", "myZipcode");
+        QueryOrder o1 = QueryOrder.newFromOrder(new Order("orderID1", "productId", "custId1", 2,
+                addr, "2019-01-10T13:30Z",
+                addr, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+        QueryOrder o2 = QueryOrder.newFromOrder(new Order("orderID2", "productId", "custId1", 2,
+                addr, "2019-01-10T13:30Z",
+                addr, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+        dao.add(o1);
+        dao.add(o2);
+
+        o1.assign(new VoyageAssignment("orderID1", "voyageID"));
+        dao.update(o1);
+        o2.update(new Order("orderID2", "productId", "custId2", 4,
+                addr, "2019-01-10T13:30Z",
+                addr, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+        dao.update(o2);
+
+        assertEquals(Collections.singleton(o2), new HashSet<>(dao.getByStatus(Order.PENDING_STATUS)));
+        assertEquals(Collections.singleton(o1), new HashSet<>(dao.getByStatus(Order.ASSIGNED_STATUS)));
+        assertEquals(Collections.singleton(o1), new HashSet<>(dao.getByManuf("custId1")));
+        assertEquals(Collections.singleton(o2), new HashSet<>(dao.getByManuf("custId2")));
+        assertTrue(dao.getByStatus(Order.CANCELLED_STATUS).isEmpty());
+    }
+
+    @Test
+    public void testIterateByStatusPages() {
+        OrderDAOMock dao = new OrderDAOMock();
+        for (String orderID : new String[] { "c", "a", "e", "b", "d" }) {
+            dao.add(QueryOrder.newFromOrder(new Order(orderID, "productId", "custId1", 2,
+                    null, "2019-01-10T13:30Z", null, "2019-01-10T13:30Z", Order.PENDING_STATUS)));
+        }
+        QueryOrder moved = dao.getById("d").get();
+        moved.assign(new VoyageAssignment("d", "voyageID"));
+        dao.update(moved);
+
+        assertEquals(Arrays.asList("a", "b", "c", "e"), ids(dao.iterateByStatus(Order.PENDING_STATUS, null)));
+        assertEquals(Arrays.asList("c", "e"), ids(dao.iterateByStatus(Order.PENDING_STATUS, "b")));
+        assertEquals(Arrays.asList("d", "e"), ids(dao.iterateByManuf("custId1", "c")));
+        assertFalse(dao.iterateByManuf("custId2", null).hasNext());
+    }
+
+    @Test
+    public void testVersionIsIncrementedByUpdate() {
+        OrderDAOMock dao = new OrderDAOMock();
+        QueryOrder order = QueryOrder.newFromOrder(new Order("orderID", "productId", "custId1", 2,
+                null, "2019-01-10T13:30Z", null, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+        assertEquals(0, dao.getVersion("orderID"));
+        dao.add(order);
+        assertEquals(1, dao.getVersion("orderID"));
+        order.assign(new VoyageAssignment("orderID", "voyageID"));
+        dao.update(order);
+        dao.update(order);
+        assertEquals(3, dao.getVersion("orderID"));
+    }
+
+    @Test
+    public void testGetByIdsKeepsTheOrderOfTheIDs() {
+        OrderDAOMock dao = new OrderDAOMock();
+        for (String orderID : new String[] { "a", "b", "c" }) {
+            dao.add(QueryOrder.newFromOrder(new Order(orderID, "productId", "custId1", 2,
+                    null, "2019-01-10T13:30Z", null, "2019-01-10T13:30Z", Order.PENDING_STATUS)));
+        }
+        assertEquals(Arrays.asList("c", "a"), ids(dao.getByIds(Arrays.asList("c", "unknown", "a")).iterator()));
+    }
+
+    private static List<String> ids(Iterator<QueryOrder> orders) {
+        List<String> ids = new ArrayList<>();
+        orders.forEachRemaining(order -> ids.add(order.getOrderID()));
+        return ids;
+    }
+
 }
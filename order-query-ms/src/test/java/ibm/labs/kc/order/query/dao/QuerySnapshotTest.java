@@ -0,0 +1,153 @@
+package ibm.labs.kc.order.query.dao;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ibm.labs.kc.order.query.action.OrderAction;
+import ibm.labs.kc.order.query.action.OrderActionDAOImpl;
+import ibm.labs.kc.order.query.action.OrderActionInfo;
+import ibm.labs.kc.order.query.model.Address;
+import ibm.labs.kc.order.query.model.Cancellation;
+import ibm.labs.kc.order.query.model.Container;
+import ibm.labs.kc.order.query.model.ContainerAssignment;
+import ibm.labs.kc.order.query.model.Order;
+import ibm.labs.kc.order.query.model.VoyageAssignment;
+
+public class QuerySnapshotTest {
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void createDir() throws Exception {
+        dir = Files.createTempDirectory("snapshot");
+        file = dir.resolve("query.snapshot");
+    }
+
+    @After
+    public void deleteDir() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void testWriteAndRestore() throws Exception {
+        Address addr = new Address("myStreet", "myCity", "myCountry", "myState", "myZipcode");
+        OrderDAOMock orderDAO = new OrderDAOMock();
+        OrderActionDAOImpl orderActionDAO = new OrderActionDAOImpl();
+
+        QueryOrder o1 = QueryOrder.newFromOrder(new Order("orderID1", "productId", "custId1", 2,
+                addr, "2019-01-10T13:30Z",
+                null, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+        o1.cancel(new Cancellation("orderID1", "too late"));
+        orderDAO.add(o1);
+        QueryOrder o2 = QueryOrder.newFromOrder(new Order("orderID2", null, "custId2", 0,
+                null, null, addr, null, Order.PENDING_STATUS));
+        o2.assign(new VoyageAssignment("orderID2", "myVoyage"));
+        orderDAO.add(o2);
+
+        OrderActionInfo info1 = OrderActionInfo.newFromOrder(new Order("orderID1", "productId", "custId1", 2,
+                addr, "2019-01-10T13:30Z",
+                addr, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+        OrderAction created = OrderAction.newFromOrder(info1, 1000, "OrderCreated");
+        orderActionDAO.addOrder(created);
+        orderActionDAO.orderHistory(created);
+        info1.assignContainer(new ContainerAssignment("orderID1", "c1"));
+        OrderAction allocated = OrderAction.newFromOrder(info1, 3000, "ContainerAllocated");
+        orderActionDAO.updateOrder(allocated);
+        orderActionDAO.orderHistory(allocated);
+
+        OrderActionInfo containerInfo = OrderActionInfo.newFromContainer(
+                new Container("c1", "brand", "Reefer", 100, 37.8, -122.25, Container.AT_LOCATION_STATUS));
+        OrderAction added = OrderAction.newFromContainer(containerInfo, 2000, "ContainerAdded");
+        orderActionDAO.addContainer(added);
+        orderActionDAO.containerHistory(added);
+
+        Map<String, Map<Integer, Long>> offsets = new HashMap<>();
+        Map<Integer, Long> orderOffsets = new HashMap<>();
+        orderOffsets.put(0, 12L);
+        orderOffsets.put(1, 3L);
+        offsets.put("orders", orderOffsets);
+        offsets.put("containers", new HashMap<>());
+
+        QuerySnapshot.capture(offsets, orderDAO, orderActionDAO).writeTo(file);
+        Optional<QuerySnapshot> read = QuerySnapshot.readFrom(file);
+        assertTrue(read.isPresent());
+        assertEquals(orderOffsets, read.get().getOffsets("orders"));
+        assertTrue(read.get().getOffsets("containers").isEmpty());
+        assertTrue(read.get().getOffsets("unknown").isEmpty());
+
+        OrderDAOMock restoredOrders = new OrderDAOMock();
+        OrderActionDAOImpl restoredActions = new OrderActionDAOImpl();
+        read.get().restore(restoredOrders, restoredActions);
+
+        assertEquals(o1, restoredOrders.getById("orderID1").get());
+        assertEquals("too late", restoredOrders.getById("orderID1").get().getReason());
+        assertEquals(o2, restoredOrders.getById("orderID2").get());
+        assertEquals(orderActionDAO.getByOrderId("orderID1").get(), restoredActions.getByOrderId("orderID1").get());
+        assertEquals(orderActionDAO.getByContainerId("c1").get(), restoredActions.getByContainerId("c1").get());
+        assertArrayEquals(orderActionDAO.getOrderStatus("orderID1").toArray(),
+                restoredActions.getOrderStatus("orderID1").toArray());
+        assertEquals(3, restoredActions.getOrderStatus("orderID1").size());
+
+        // the current action and the history still share their details
+        OrderActionInfo current = restoredActions.getOrderActions().get("orderID1").getOrderActionItem();
+        assertSame(current, restoredActions.getOrderHistory().get(0).getOrderActionItem());
+    }
+
+    @Test
+    public void testCaptureIsNotChangedByLaterUpdates() throws Exception {
+        OrderDAOMock orderDAO = new OrderDAOMock();
+        OrderActionDAOImpl orderActionDAO = new OrderActionDAOImpl();
+        QueryOrder order = QueryOrder.newFromOrder(new Order("orderID1", "productId", "custId1", 2,
+                null, null, null, null, Order.PENDING_STATUS));
+        orderDAO.add(order);
+        OrderActionInfo info = OrderActionInfo.newFromOrder(new Order("orderID1", "productId", "custId1", 2,
+                null, null, null, null, Order.PENDING_STATUS));
+        OrderAction created = OrderAction.newFromOrder(info, 1000, "OrderCreated");
+        orderActionDAO.addOrder(created);
+        orderActionDAO.orderHistory(created);
+
+        QuerySnapshot snapshot = QuerySnapshot.capture(new HashMap<>(), orderDAO, orderActionDAO);
+        // applied while the copy is written
+        order.assign(new VoyageAssignment("orderID1", "myVoyage"));
+        info.assignContainer(new ContainerAssignment("orderID1", "c1"));
+        orderDAO.add(QueryOrder.newFromOrder(new Order("orderID2", null, "custId2", 0,
+                null, null, null, null, Order.PENDING_STATUS)));
+        snapshot.writeTo(file);
+
+        OrderDAOMock restoredOrders = new OrderDAOMock();
+        OrderActionDAOImpl restoredActions = new OrderActionDAOImpl();
+        QuerySnapshot.readFrom(file).get().restore(restoredOrders, restoredActions);
+        assertNull(restoredOrders.getById("orderID1").get().getVoyageID());
+        assertFalse(restoredOrders.getById("orderID2").isPresent());
+        OrderActionInfo current = restoredActions.getOrderActions().get("orderID1").getOrderActionItem();
+        assertNull(current.getContainerID());
+        assertSame(current, restoredActions.getOrderHistory().get(0).getOrderActionItem());
+    }
+
+    @Test
+    public void testMissingOrInvalidSnapshot() throws Exception {
+        assertFalse(QuerySnapshot.readFrom(file).isPresent());
+
+        Files.write(file, "not a snapshot".getBytes("UTF-8"));
+        assertFalse(QuerySnapshot.readFrom(file).isPresent());
+
+        QuerySnapshot.capture(new HashMap<>(), new OrderDAOMock(), new OrderActionDAOImpl()).writeTo(file);
+        assertTrue(QuerySnapshot.readFrom(file).isPresent());
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 2));
+        assertFalse(QuerySnapshot.readFrom(file).isPresent());
+    }
+
+}
@@ -0,0 +1,66 @@
+package ibm.labs.kc.order.query.kafka;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OrderConsumerTest {
+
+    private final TopicPartition p0 = new TopicPartition(ApplicationConfig.ORDER_TOPIC, 0);
+    private final TopicPartition p1 = new TopicPartition(ApplicationConfig.ORDER_TOPIC, 1);
+
+    private MockConsumer<String, byte[]> mainConsumer;
+    private OrderConsumer consumer;
+
+    @Before
+    public void setup() {
+        mainConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        MockConsumer<String, byte[]> reloadConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        mainConsumer.updatePartitions(ApplicationConfig.ORDER_TOPIC, Arrays.asList(
+                new PartitionInfo(ApplicationConfig.ORDER_TOPIC, 0, null, null, null),
+                new PartitionInfo(ApplicationConfig.ORDER_TOPIC, 1, null, null, null)));
+        reloadConsumer.updateEndOffsets(Collections.singletonMap(p0, 0L));
+        reloadConsumer.updateEndOffsets(Collections.singletonMap(p1, 0L));
+
+        consumer = new OrderConsumer(mainConsumer, reloadConsumer);
+        consumer.initReload(Collections.emptyMap());
+        assertTrue(consumer.reloadCompleted());
+        mainConsumer.rebalance(Arrays.asList(p0, p1));
+    }
+
+    @Test
+    public void testBatchOffsetsAreCommitted() {
+        consumer.commit(Collections.singletonMap(p0, new OffsetAndMetadata(5)));
+        consumer.commit(Collections.singletonMap(p1, new OffsetAndMetadata(3)));
+
+        assertEquals(5, mainConsumer.committed(p0).offset());
+        assertEquals(3, mainConsumer.committed(p1).offset());
+        assertEquals(Long.valueOf(5), consumer.getAppliedOffsets().get(0));
+    }
+
+    @Test
+    public void testCommitSyncWhenInterrupted() {
+        consumer.commit(Collections.singletonMap(p0, new OffsetAndMetadata(7)));
+        mainConsumer.commitSync(Collections.singletonMap(p0, new OffsetAndMetadata(2)));
+
+        // the event loop commits on shutdown from its interrupted thread
+        Thread.currentThread().interrupt();
+        try {
+            consumer.commitSync();
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(7, mainConsumer.committed(p0).offset());
+    }
+
+}
@@ -0,0 +1,101 @@
+package ibm.labs.kc.order.query.kafka;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Test;
+
+public class PartitionedWorkerPoolTest {
+
+    private final PartitionedWorkerPool<String> pool = new PartitionedWorkerPool<>("test", 4);
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testEventsOfOneKeyAreAppliedInOrder() throws Exception {
+        // values are "key:sequence", spread over two partitions
+        TopicPartition p0 = new TopicPartition("orders", 0);
+        TopicPartition p1 = new TopicPartition("orders", 1);
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> batch = new HashMap<>();
+        batch.put(p0, new ArrayList<>());
+        batch.put(p1, new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            String key = "order" + (i % 10);
+            TopicPartition p = (i % 10) < 5 ? p0 : p1;
+            List<ConsumerRecord<String, byte[]>> recs = batch.get(p);
+            recs.add(new ConsumerRecord<>(p.topic(), p.partition(), 10 + recs.size(), key, bytes(key + ":" + i)));
+        }
+
+        Map<String, List<Integer>> applied = new ConcurrentHashMap<>();
+        Map<TopicPartition, OffsetAndMetadata> offsets = pool.process(new ConsumerRecords<>(batch),
+                new EventDeserializer<>(PartitionedWorkerPoolTest::string), v -> v.split(":")[0], v -> {
+                    String[] parts = v.split(":");
+                    applied.computeIfAbsent(parts[0], k -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(Integer.valueOf(parts[1]));
+                });
+
+        assertEquals(10, applied.size());
+        for (List<Integer> sequence : applied.values()) {
+            assertEquals(10, sequence.size());
+            List<Integer> sorted = new ArrayList<>(sequence);
+            Collections.sort(sorted);
+            assertEquals(sorted, sequence);
+        }
+        assertEquals(60, offsets.get(p0).offset());
+        assertEquals(60, offsets.get(p1).offset());
+    }
+
+    @Test
+    public void testSkippedAndFailingEventsStillCommit() throws Exception {
+        TopicPartition p0 = new TopicPartition("orders", 0);
+        List<ConsumerRecord<String, byte[]>> recs = new ArrayList<>();
+        recs.add(new ConsumerRecord<>(p0.topic(), 0, 5, null, bytes("skip")));
+        recs.add(new ConsumerRecord<>(p0.topic(), 0, 6, null, bytes("fail")));
+        recs.add(new ConsumerRecord<>(p0.topic(), 0, 7, null, bytes("ok")));
+        Map<TopicPartition, List<ConsumerRecord<String, byte[]>>> batch = new HashMap<>();
+        batch.put(p0, recs);
+
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        Map<TopicPartition, OffsetAndMetadata> offsets = pool.process(new ConsumerRecords<>(batch),
+                new EventDeserializer<>(v -> "skip".equals(string(v)) ? null : string(v)), v -> null, v -> {
+                    if ("fail".equals(v)) {
+                        throw new IllegalStateException("boom");
+                    }
+                    applied.add(v);
+                });
+
+        assertEquals(Collections.singletonList("ok"), applied);
+        assertEquals(8, offsets.get(p0).offset());
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        Map<TopicPartition, OffsetAndMetadata> offsets = pool.process(new ConsumerRecords<>(new HashMap<>()),
+                new EventDeserializer<>(PartitionedWorkerPoolTest::string), v -> v, v -> fail("nothing to apply"));
+        assertTrue(offsets.isEmpty());
+    }
+
+}
@@ -0,0 +1,141 @@
+package ibm.labs.kc.order.query.model.events;
+
+import static org.junit.Assert.*;
+
+import java.util.Base64;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import ibm.labs.kc.order.query.model.Address;
+import ibm.labs.kc.order.query.model.Cancellation;
+import ibm.labs.kc.order.query.model.Container;
+import ibm.labs.kc.order.query.model.Order;
+import ibm.labs.kc.order.query.model.Rejection;
+
+public class EventDeserializationTest {
+
+    private final Address addr = new Address("myStreet", "myCity", "myCountry", "myState", "myZipcode");
+
+    @Test
+    public void testPayloadBeforeType() {
+        // plain Gson writes the subclass payload before the header fields
+        Order order = new Order("orderID", "productId", "custId", 2, addr, "2019-01-10T13:30Z",
+                addr, "2019-01-10T13:30Z", Order.PENDING_STATUS);
+        String json = new Gson().toJson(new CreateOrderEvent(1234L, "1", order));
+        assertTrue(json.indexOf("payload") < json.indexOf("type"));
+
+        OrderEvent event = OrderEvent.deserialize(json);
+        assertTrue(event instanceof CreateOrderEvent);
+        assertEquals(OrderEvent.TYPE_CREATED, event.getType());
+        assertEquals(1234L, event.getTimestampMillis());
+        assertEquals("1", event.getVersion());
+        assertEquals(order, event.getPayload());
+    }
+
+    @Test
+    public void testTypeBeforePayload() {
+        String json = "{\"timestampMillis\":99,\"type\":\"OrderCancelled\",\"version\":\"1\","
+                + "\"payload\":{\"orderID\":\"orderID\",\"reason\":\"too late\"},\"extra\":[1,{\"a\":2}]}";
+
+        OrderEvent event = OrderEvent.deserialize(json);
+        assertTrue(event instanceof CancelOrderEvent);
+        assertEquals(99L, event.getTimestampMillis());
+        Cancellation cancellation = ((CancelOrderEvent) event).getPayload();
+        assertEquals("orderID", cancellation.getOrderID());
+        assertEquals("too late", cancellation.getReason());
+        assertEquals("orderID", event.getOrderID());
+    }
+
+    @Test
+    public void testContainerEvent() {
+        Container container = new Container("c1", "brand", "Reefer", 20, 37.8, -122.3, "atDock");
+        String json = new Gson().toJson(new ContainerAtLocationEvent(55L, "1", container));
+
+        ContainerEvent event = ContainerEvent.deserialize(json);
+        assertTrue(event instanceof ContainerAtLocationEvent);
+        assertEquals(ContainerEvent.TYPE_CONTAINER_AT_LOCATION, event.getType());
+        assertEquals(container, event.getPayload());
+        assertEquals("c1", event.getContainerID());
+    }
+
+    @Test
+    public void testNestedTypeFieldAndWhitespace() {
+        // only the top level "type" field is the event type
+        String json = "{ \"payload\" : {\"orderID\":\"orderID\",\"reason\":\"too late\"},\n"
+                + "  \"type\" : \"OrderCancelled\", \"extra\" : {\"type\":\"OrderCreated\"} }";
+
+        OrderEvent event = OrderEvent.deserialize(json);
+        assertTrue(event instanceof CancelOrderEvent);
+        assertEquals("too late", ((CancelOrderEvent) event).getPayload().getReason());
+    }
+
+    @Test
+    public void testUnknownTypeIsSkipped() {
+        assertNull(OrderEvent.deserialize("{\"payload\":{\"orderID\":\"o\"},\"type\":\"OrderSomething\"}"));
+        assertNull(OrderEvent.deserialize("{\"type\":\"OrderSomething\",\"payload\":{\"orderID\":\"o\"}}"));
+        assertNull(ContainerEvent.deserialize("{\"timestampMillis\":1}"));
+    }
+
+    @Test
+    public void testHandWrittenAdaptersMatchGson() {
+        Order order = new Order("orderID", "productId", "custId", 2, addr, "2019-01-10T13:30Z",
+                null, "2019-01-10T13:30Z", Order.ASSIGNED_STATUS, "voyage1", "c1");
+        Container container = new Container("c1", "brand", "Reefer", 20, 37.8, -122.3, "atDock");
+        Gson gson = EventJson.gson();
+        assertEquals(new Gson().toJsonTree(order), new Gson().fromJson(gson.toJson(order), JsonObject.class));
+        assertEquals(new Gson().toJsonTree(container), new Gson().fromJson(gson.toJson(container), JsonObject.class));
+        assertEquals(order, gson.fromJson(new Gson().toJson(order), Order.class));
+        assertEquals(container, gson.fromJson(new Gson().toJson(container), Container.class));
+
+        ErrorEvent error = new ErrorEvent(1L, ErrorEvent.TYPE_ERROR, "1", new ContainerAtLocationEvent(55L, "1", container),
+                "failed");
+        ErrorEvent read = gson.fromJson(ErrorEvent.serialize(error), ErrorEvent.class);
+        assertTrue(read.getPayload() instanceof ContainerAtLocationEvent);
+        assertEquals(container, read.getPayload().getPayload());
+        assertEquals("failed", read.getErrorMessage());
+    }
+
+    @Test
+    public void testBinaryFormat() {
+        Order order = new Order("orderID", "productId", "custId", 2, addr, "2019-01-10T13:30Z",
+                null, "2019-01-10T13:30Z", Order.ASSIGNED_STATUS, "voyage1", "c1");
+        OrderEvent event = OrderEvent.deserialize(
+                OrderEvent.serialize(new OrderCompletedEvent(1234L, "1", order), EventFormat.BINARY));
+        assertTrue(event instanceof OrderCompletedEvent);
+        assertEquals(1234L, event.getTimestampMillis());
+        assertEquals(order, event.getPayload());
+
+        event = OrderEvent.deserialize(OrderEvent.serialize(
+                new RejectOrderEvent(1L, null, new Rejection("orderID", "custId")), EventFormat.BINARY));
+        assertNull(event.getVersion());
+        assertEquals("orderID", event.getOrderID());
+
+        Container container = new Container("c1", "brand", "Reefer", 20, 37.8, -122.3, "atDock");
+        byte[] data = ContainerEvent.serialize(new ContainerOnShipEvent(55L, "1", container), EventFormat.BINARY);
+        assertTrue(EventBinary.isBinary(data));
+        ContainerEvent containerEvent = ContainerEvent.deserialize(data);
+        assertTrue(containerEvent instanceof ContainerOnShipEvent);
+        assertEquals(container, containerEvent.getPayload());
+
+        assertTrue(ContainerEvent.deserialize(ContainerEvent.serialize(containerEvent, EventFormat.JSON))
+                instanceof ContainerOnShipEvent);
+    }
+
+    /**
+     * An OrderCreated written by the command service, see OrderEventTest.testBinaryWireFormat there
+     */
+    @Test
+    public void testBinaryFromCommandService() {
+        byte[] data = Base64.getDecoder().decode("AAIADE9yZGVyQ3JlYXRlZAAAAAAAAATSAQABMQEBAAdvcmRlcklEAQAJcHJvZHVjdElkAQAGY3VzdElkAAAAAgEBAAhteVN0cmVldAEABm15Q2l0eQEACW15Q291bnRyeQEAB215U3RhdGUBAAlteVppcGNvZGUBABEyMDE5LTAxLTEwVDEzOjMwWgABABEyMDE5LTAxLTEwVDEzOjMwWgEAB3BlbmRpbmcAAA==");
+        OrderEvent event = OrderEvent.deserialize(data);
+        assertTrue(event instanceof CreateOrderEvent);
+        assertEquals(1234L, event.getTimestampMillis());
+        assertEquals("1", event.getVersion());
+        assertEquals(new Order("orderID", "productId", "custId", 2, addr, "2019-01-10T13:30Z", null,
+                "2019-01-10T13:30Z", "pending"), event.getPayload());
+    }
+
+}
@@ -0,0 +1,107 @@
+package ibm.labs.kc.order.query.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.Test;
+
+public class OrderChangeNotifierTest {
+
+    // records what is sent, the sends complete when the test says so
+    private static class RecordingSink implements OrderChangeNotifier.Sink {
+        private final List<String> sent = new ArrayList<>();
+        private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+        private boolean closed;
+
+        @Override
+        public CompletionStage<?> send(OrderChange change) {
+            sent.add(change.getKind() + ":" + change.getOrderID() + ":" + change.getVersion());
+            return pending;
+        }
+
+        @Override
+        public CompletionStage<?> sendOverflow() {
+            sent.add("overflow");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<?> sendKeepAlive() {
+            sent.add("keepAlive");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static OrderChange change(String orderID, String customerID, long version) {
+        return new OrderChange(OrderChange.KIND_ORDER, orderID, customerID, "pending", "OrderUpdated", 1L, version);
+    }
+
+    @Test
+    public void testChangesGoToTheOrderAndCustomerSubscribers() {
+        OrderChangeNotifier notifier = new OrderChangeNotifier(4, Runnable::run);
+        RecordingSink order = new RecordingSink();
+        RecordingSink customer = new RecordingSink();
+        assertFalse(notifier.hasSubscribers());
+        notifier.subscribeOrder("o1", order);
+        notifier.subscribeCustomer("c1", customer);
+
+        notifier.publish(change("o1", "c1", 1));
+        notifier.publish(change("o2", "c1", 1));
+        notifier.publish(change("o3", "c2", 1));
+        notifier.keepAlive();
+
+        assertEquals(Arrays.asList("order:o1:1", "keepAlive"), order.sent);
+        assertEquals(Arrays.asList("order:o1:1", "order:o2:1", "keepAlive"), customer.sent);
+    }
+
+    @Test
+    public void testSlowSubscriberIsClosedWhenItsBufferIsFull() {
+        OrderChangeNotifier notifier = new OrderChangeNotifier(2, Runnable::run);
+        RecordingSink sink = new RecordingSink();
+        CompletableFuture<Void> firstSent = new CompletableFuture<>();
+        sink.pending = firstSent;
+        notifier.subscribeOrder("o1", sink);
+
+        // the first change is being sent, two are buffered, the fourth does not fit
+        for (long version = 1; version <= 4; version++) {
+            notifier.publish(change("o1", null, version));
+        }
+        assertEquals(Arrays.asList("order:o1:1"), sink.sent);
+        firstSent.complete(null);
+
+        assertEquals(Arrays.asList("order:o1:1", "overflow"), sink.sent);
+        assertTrue(sink.closed);
+        assertFalse(notifier.hasSubscribers());
+    }
+
+    @Test
+    public void testClosedSubscriberIsRemoved() {
+        OrderChangeNotifier notifier = new OrderChangeNotifier(2, Runnable::run);
+        RecordingSink sink = new RecordingSink();
+        notifier.subscribeCustomer("c1", sink);
+        sink.closed = true;
+
+        notifier.keepAlive();
+
+        assertTrue(sink.sent.isEmpty());
+        assertFalse(notifier.hasSubscribers());
+    }
+
+}
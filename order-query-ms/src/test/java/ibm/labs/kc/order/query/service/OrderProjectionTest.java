@@ -0,0 +1,44 @@
+package ibm.labs.kc.order.query.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.gson.stream.JsonWriter;
+
+import ibm.labs.kc.order.query.dao.QueryOrder;
+import ibm.labs.kc.order.query.model.Address;
+import ibm.labs.kc.order.query.model.Order;
+
+public class OrderProjectionTest {
+
+    private static String write(OrderProjection projection, QueryOrder order) throws IOException {
+        StringWriter out = new StringWriter();
+        projection.write(order, new JsonWriter(out));
+        return out.toString();
+    }
+
+    @Test
+    public void testOnlyTheSelectedFieldsAreWritten() throws IOException {
+        Address addr = new Address("myStreet", "myCity", "myCountry", "myState", "myZipcode");
+        QueryOrder order = QueryOrder.newFromOrder(new Order("orderID", "productId", "custId", 2,
+                addr, "2019-01-10T13:30Z", addr, "2019-01-10T13:30Z", Order.PENDING_STATUS));
+
+        assertEquals("{\"status\":\"pending\",\"quantity\":2,\"orderID\":\"orderID\"}",
+                write(OrderProjection.of(Arrays.asList("status", "quantity", "orderID", "status", "voyageID")), order));
+        assertEquals("{\"pickupAddress\":{\"street\":\"myStreet\",\"city\":\"myCity\",\"country\":\"myCountry\","
+                + "\"state\":\"myState\",\"zipcode\":\"myZipcode\"}}",
+                write(OrderProjection.of(Collections.singletonList("pickupAddress")), order));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFieldIsRejected() {
+        OrderProjection.of(Arrays.asList("orderID", "price"));
+    }
+
+}
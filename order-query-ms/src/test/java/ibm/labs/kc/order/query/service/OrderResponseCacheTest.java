@@ -0,0 +1,60 @@
+package ibm.labs.kc.order.query.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class OrderResponseCacheTest {
+
+    private final AtomicInteger encoded = new AtomicInteger();
+
+    private Supplier<byte[]> encoder(String json) {
+        return () -> {
+            encoded.incrementAndGet();
+            return json.getBytes(StandardCharsets.UTF_8);
+        };
+    }
+
+    @Test
+    public void testEntryIsServedForItsVersionOnly() {
+        OrderResponseCache cache = new OrderResponseCache(10);
+        cache.get("o1", 1, encoder("{\"v\":1}"));
+        assertArrayEquals("{\"v\":1}".getBytes(StandardCharsets.UTF_8), cache.get("o1", 1, encoder("other")));
+        assertEquals(1, encoded.get());
+
+        assertArrayEquals("{\"v\":2}".getBytes(StandardCharsets.UTF_8), cache.get("o1", 2, encoder("{\"v\":2}")));
+        cache.invalidate("o1");
+        cache.get("o1", 2, encoder("{\"v\":2}"));
+        assertEquals(3, encoded.get());
+        assertTrue(cache.statsAsJson().contains("\"hits\":1,\"misses\":3"));
+    }
+
+    @Test
+    public void testLeastRecentlyReadOrderIsEvicted() {
+        // a single segment
+        OrderResponseCache cache = new OrderResponseCache(1);
+        cache.get("o1", 1, encoder("1"));
+        cache.get("o2", 1, encoder("2"));
+        cache.get("o1", 1, encoder("1"));
+        assertEquals(3, encoded.get());
+        assertTrue(cache.statsAsJson().contains("\"size\":1"));
+        assertTrue(cache.statsAsJson().contains("\"evictions\":2"));
+    }
+
+    @Test
+    public void testUnknownOrderIsNotCached() {
+        OrderResponseCache cache = new OrderResponseCache(10);
+        assertNull(cache.get("o1", 1, () -> null));
+        assertTrue(cache.statsAsJson().contains("\"size\":0"));
+        assertFalse(new OrderResponseCache(0).isEnabled());
+    }
+
+}